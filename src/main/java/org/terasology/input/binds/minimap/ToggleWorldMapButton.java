@@ -0,0 +1,17 @@
+// Copyright 2021 The Terasology Foundation
+// SPDX-License-Identifier: Apache-2.0
+package org.terasology.input.binds.minimap;
+
+import org.terasology.engine.input.BindButtonEvent;
+import org.terasology.engine.input.DefaultBinding;
+import org.terasology.engine.input.RegisterBindButton;
+import org.terasology.input.InputType;
+import org.terasology.input.Keyboard;
+
+/**
+ * Registers a binding to open and close the full-screen world map.
+ */
+@RegisterBindButton(id = "toggleWorldMap", description = "Open/Close World Map")
+@DefaultBinding(type = InputType.KEY, id = Keyboard.KeyId.N)
+public class ToggleWorldMapButton extends BindButtonEvent {
+}
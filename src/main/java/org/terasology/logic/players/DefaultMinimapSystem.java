@@ -3,9 +3,12 @@
 
 package org.terasology.logic.players;
 
-import org.joml.RoundingMode;
+import org.joml.Vector3f;
 import org.joml.Vector3ic;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 import org.terasology.engine.core.modes.loadProcesses.AwaitedLocalCharacterSpawnEvent;
+import org.terasology.engine.core.module.SandboxFileManager;
 import org.terasology.engine.entitySystem.entity.EntityManager;
 import org.terasology.engine.entitySystem.entity.EntityRef;
 import org.terasology.engine.entitySystem.event.EventPriority;
@@ -13,28 +16,61 @@ import org.terasology.engine.entitySystem.event.Priority;
 import org.terasology.engine.entitySystem.systems.BaseComponentSystem;
 import org.terasology.engine.entitySystem.systems.RegisterMode;
 import org.terasology.engine.entitySystem.systems.RegisterSystem;
+import org.terasology.engine.game.Game;
 import org.terasology.engine.logic.characters.AliveCharacterComponent;
 import org.terasology.engine.logic.characters.CharacterComponent;
+import org.terasology.engine.logic.console.commandSystem.annotations.Command;
+import org.terasology.engine.logic.console.commandSystem.annotations.CommandParam;
 import org.terasology.engine.logic.health.BeforeDestroyEvent;
 import org.terasology.engine.logic.health.DoDestroyEvent;
 import org.terasology.engine.logic.location.LocationComponent;
+import org.terasology.engine.logic.permission.PermissionManager;
 import org.terasology.engine.logic.players.LocalPlayer;
 import org.terasology.engine.logic.players.PlayerCharacterComponent;
 import org.terasology.engine.logic.players.event.OnPlayerRespawnedEvent;
 import org.terasology.engine.logic.players.event.OnPlayerSpawnedEvent;
+import org.terasology.engine.network.ClientComponent;
+import org.terasology.engine.network.NetworkMode;
+import org.terasology.engine.network.NetworkSystem;
 import org.terasology.engine.registry.In;
 import org.terasology.engine.registry.Share;
 import org.terasology.engine.rendering.nui.NUIManager;
+import org.terasology.engine.world.WorldComponent;
 import org.terasology.engine.world.WorldProvider;
+import org.terasology.engine.world.block.BlockManager;
 import org.terasology.engine.world.block.entity.placement.PlaceBlocks;
+import org.terasology.engine.world.chunks.Chunk;
+import org.terasology.engine.world.chunks.ChunkProvider;
+import org.terasology.engine.world.chunks.event.BeforeChunkUnload;
+import org.terasology.engine.world.chunks.event.OnChunkLoaded;
 import org.terasology.engine.world.generator.WorldGenerator;
 import org.terasology.gestalt.entitysystem.event.ReceiveEvent;
 import org.terasology.input.binds.minimap.DecreaseZoomButton;
 import org.terasology.input.binds.minimap.IncreaseZoomButton;
 import org.terasology.input.binds.minimap.ToggleMinimapButton;
+import org.terasology.input.binds.minimap.ToggleWorldMapButton;
 import org.terasology.joml.geom.Rectanglef;
+import org.terasology.math.TeraMath;
+import org.terasology.minimap.network.MinimapColumnPatchEvent;
+import org.terasology.minimap.network.MinimapTileResponseEvent;
+import org.terasology.minimap.network.RemoteTileRequester;
 import org.terasology.minimap.overlays.MinimapOverlay;
+import org.terasology.minimap.rendering.MinimapTelemetry;
+import org.terasology.minimap.rendering.MinimapTileService;
+import org.terasology.minimap.rendering.OverlayLayerCache;
+import org.terasology.minimap.rendering.TileBuildScheduler;
+import org.terasology.minimap.rendering.TilePyramid;
+import org.terasology.minimap.rendering.TileTextureCache;
+import org.terasology.minimap.rendering.TileViewport;
 import org.terasology.minimap.rendering.nui.layers.MinimapHUDElement;
+import org.terasology.minimap.storage.SandboxFileNames;
+import org.terasology.minimap.storage.SurfaceTileStore;
+import org.terasology.minimap.surface.AsyncSurfaceScanner;
+import org.terasology.minimap.surface.BlockSource;
+import org.terasology.minimap.surface.ChunkSurface;
+import org.terasology.minimap.surface.ChunkSurfaceCache;
+import org.terasology.minimap.surface.ChunkSurfaceCodec;
+import org.terasology.minimap.surface.SurfaceScanner;
 import org.terasology.nui.databinding.ReadOnlyBinding;
 
 /**
@@ -46,8 +82,68 @@ public class DefaultMinimapSystem extends BaseComponentSystem implements Minimap
 
     public static final String HUD_ELEMENT_MAP_ID = "minimap";
 
+    public static final String WORLD_MAP_SCREEN_ID = "Minimap:worldMap";
+
+    private static final Logger logger = LoggerFactory.getLogger(DefaultMinimapSystem.class);
+
+    /**
+     * The number of background threads that scan chunk surfaces (one core is left for the main thread)
+     */
+    private static final int SCANNER_THREADS = Math.max(1, Runtime.getRuntime().availableProcessors() - 1);
+
+    /**
+     * The maximum memory in bytes for chunk surfaces kept in memory
+     */
+    private static final long SURFACE_CACHE_BYTES = 16 * 1024 * 1024;
+
+    /**
+     * The maximum number of chunk tile textures
+     */
+    private static final int TILE_CACHE_MAX_TILES = 512;
+
+    /**
+     * The maximum memory in bytes for chunk tile textures
+     */
+    private static final long TILE_CACHE_MAX_BYTES = 32 * 1024 * 1024;
+
+    /**
+     * The coarsest level of detail - a tile of this level covers 2^n x 2^n chunks
+     */
+    private static final int MAX_LOD_LEVEL = 4;
+
+    /**
+     * The maximum number of coarse tile textures per level of detail
+     */
+    private static final int LOD_MAX_TILES = 64;
+
+    /**
+     * The maximum number of coarse tiles that are (re-)built per frame of each map widget
+     */
+    private static final int LOD_MAX_BUILDS_PER_FRAME = 8;
+
+    /**
+     * The maximum time spent on rendering chunk tiles per frame in microseconds
+     */
+    private static final long TILE_BUILD_BUDGET_MICROS = 2000;
+
     private MinimapHUDElement minimapHUDElement;
 
+    private AsyncSurfaceScanner surfaceScanner;
+
+    private TileTextureCache tileCache;
+
+    private MinimapTileService tileService;
+
+    private TileViewport tileViewport;
+
+    private TileBuildScheduler tileScheduler;
+
+    private SurfaceTileStore surfaceStore;
+
+    private OverlayLayerCache overlayLayers;
+
+    private final Vector3f destroyedBlockPos = new Vector3f();
+
     @In
     private NUIManager nuiManager;
 
@@ -63,6 +159,18 @@ public class DefaultMinimapSystem extends BaseComponentSystem implements Minimap
     @In
     private EntityManager entityManager;
 
+    @In
+    private BlockManager blockManager;
+
+    @In
+    private ChunkProvider chunkProvider;
+
+    @In
+    private NetworkSystem networkSystem;
+
+    @In
+    private Game game;
+
     @Override
     public void initialise() {
         Rectanglef rc = new Rectanglef(0, 0, 1, 1);
@@ -77,9 +185,60 @@ public class DefaultMinimapSystem extends BaseComponentSystem implements Minimap
 
         // TODO: get the sea level height from elsewhere (WorldInfo/GameInfo/GameManifest?)
         int seaLevel = worldGenerator == null ? 10 : worldGenerator.getWorld().getSeaLevel();
-        minimapHUDElement.setHeightRange(seaLevel, seaLevel + 64);
-        minimapHUDElement.setWorldProvider(worldProvider);
+
+        surfaceScanner = new AsyncSurfaceScanner(new SurfaceScanner(BlockSource.of(worldProvider, chunkProvider)), SCANNER_THREADS);
+        tileCache = new TileTextureCache(MinimapTileService.getTileSize(), TILE_CACHE_MAX_TILES, TILE_CACHE_MAX_BYTES);
+        TilePyramid tilePyramid = new TilePyramid(MinimapTileService.getTileSize(), MAX_LOD_LEVEL, LOD_MAX_TILES,
+                LOD_MAX_BUILDS_PER_FRAME);
+        surfaceStore = new SurfaceTileStore(new SandboxFileManager(),
+                "minimap-" + SandboxFileNames.sanitize(game.getName(), "game"));
+
+        // all map widgets share the scanned surfaces and rendered tiles
+        tileService = new MinimapTileService(surfaceScanner, new ChunkSurfaceCache(SURFACE_CACHE_BYTES),
+                tileCache, tilePyramid, surfaceStore);
+        tileService.setHeightRange(seaLevel, seaLevel + 64);
+        tileService.setBlockManager(blockManager);
+        if (networkSystem.getMode() == NetworkMode.CLIENT) {
+            // chunks that have not been loaded locally are fetched from the server
+            tileService.setRemoteTiles(new RemoteTileRequester(localPlayer));
+        }
+        minimapHUDElement.setTileService(tileService);
+
+        tileViewport = new TileViewport(MinimapTileService.getTileSize());
+        minimapHUDElement.setTileViewport(tileViewport);
+
+        tileScheduler = new TileBuildScheduler(TILE_BUILD_BUDGET_MICROS);
+        minimapHUDElement.setTileScheduler(tileScheduler);
+
+        overlayLayers = new OverlayLayerCache();
+        minimapHUDElement.setOverlayLayers(overlayLayers);
+
         minimapHUDElement.updateAlivePlayerList(entityManager.getEntitiesWith(AliveCharacterComponent.class));
+
+        // chunks that have been loaded before this system was initialised
+        for (Chunk chunk : chunkProvider.getAllChunks()) {
+            Vector3ic pos = chunk.getPosition();
+            tileService.onChunkLoaded(pos.x(), pos.y(), pos.z());
+        }
+    }
+
+    @Override
+    public void shutdown() {
+        if (surfaceScanner != null) {
+            surfaceScanner.shutdown();
+        }
+        if (tileService != null) {
+            tileService.dispose();
+        }
+        if (tileViewport != null) {
+            tileViewport.dispose();
+        }
+        if (overlayLayers != null) {
+            overlayLayers.dispose();
+        }
+        if (surfaceStore != null) {
+            surfaceStore.close();
+        }
     }
 
     @Override
@@ -92,6 +251,74 @@ public class DefaultMinimapSystem extends BaseComponentSystem implements Minimap
         minimapHUDElement.removeOverlay(overlay);
     }
 
+    /**
+     * Limits the number of chunk tile textures that are kept in memory.
+     * The smaller of the two limits applies.
+     *
+     * @param maxTiles the maximum number of tile textures
+     * @param maxBytes the maximum memory of all tile textures in bytes
+     */
+    public void setTileCacheLimits(int maxTiles, long maxBytes) {
+        tileCache.setMaxTiles(maxTiles);
+        tileCache.setMaxBytes(maxBytes);
+    }
+
+    /**
+     * @return the tile texture cache (e.g. to read its hit/miss/eviction counters)
+     */
+    public TileTextureCache getTileCache() {
+        return tileCache;
+    }
+
+    /**
+     * @return the service that provides the map tiles to all map widgets
+     */
+    public MinimapTileService getTileService() {
+        return tileService;
+    }
+
+    /**
+     * @return the tile build scheduler (e.g. to change its time budget or read its queue depth and build times)
+     */
+    public TileBuildScheduler getTileScheduler() {
+        return tileScheduler;
+    }
+
+    @Command(shortDescription = "Shows or controls the minimap performance telemetry",
+            helpText = "Without an action, the collected statistics are printed. Actions:\n"
+                    + "on/off - start or stop collecting\n"
+                    + "monitor - also report the render phases to the performance monitor (toggles)\n"
+                    + "alloc - log the heap memory allocated per minimap frame (toggles)\n"
+                    + "reset - remove all collected samples",
+            requiredPermission = PermissionManager.NO_PERMISSION)
+    public String minimapTelemetry(@CommandParam(value = "action", required = false) String action) {
+        MinimapTelemetry telemetry = tileService.getTelemetry();
+        if (action == null) {
+            return telemetry.dump();
+        }
+        switch (action) {
+            case "on":
+                telemetry.setEnabled(true);
+                return "Minimap telemetry enabled";
+            case "off":
+                telemetry.setEnabled(false);
+                return "Minimap telemetry disabled";
+            case "monitor":
+                telemetry.setMonitorEnabled(!telemetry.isMonitorEnabled());
+                return "Reporting to the performance monitor " + (telemetry.isMonitorEnabled() ? "enabled" : "disabled");
+            case "alloc":
+                if (!minimapHUDElement.setAllocationTracking(!minimapHUDElement.isAllocationTracking())) {
+                    return "Allocation tracking is not supported by this JVM";
+                }
+                return "Allocation tracking " + (minimapHUDElement.isAllocationTracking() ? "enabled" : "disabled");
+            case "reset":
+                telemetry.reset();
+                return "Minimap telemetry reset";
+            default:
+                return "Unknown action '" + action + "', expected on, off, monitor, alloc or reset";
+        }
+    }
+
     @ReceiveEvent(components = {CharacterComponent.class})
     public void onToggleMinimapButton(ToggleMinimapButton event, EntityRef entity) {
         if (event.isDown()) {
@@ -100,6 +327,14 @@ public class DefaultMinimapSystem extends BaseComponentSystem implements Minimap
         }
     }
 
+    @ReceiveEvent(components = {CharacterComponent.class})
+    public void onToggleWorldMapButton(ToggleWorldMapButton event, EntityRef entity) {
+        if (event.isDown()) {
+            nuiManager.toggleScreen(WORLD_MAP_SCREEN_ID);
+            event.consume();
+        }
+    }
+
     @ReceiveEvent(components = {CharacterComponent.class})
     public void onIncreaseZoomButton(IncreaseZoomButton event, EntityRef entity) {
         if (event.isDown()) {
@@ -118,14 +353,48 @@ public class DefaultMinimapSystem extends BaseComponentSystem implements Minimap
 
     @ReceiveEvent
     public void onDestroyBlock(DoDestroyEvent event, EntityRef entity, LocationComponent locationComp) {
-        minimapHUDElement.updateLocation(new org.joml.Vector3i(locationComp.getWorldPosition(new org.joml.Vector3f())
-                , RoundingMode.CEILING));
+        locationComp.getWorldPosition(destroyedBlockPos);
+        tileService.blockChanged(TeraMath.ceilToInt(destroyedBlockPos.x()),
+                TeraMath.ceilToInt(destroyedBlockPos.y()), TeraMath.ceilToInt(destroyedBlockPos.z()));
     }
 
     @ReceiveEvent
     public void onPlaceBlock(PlaceBlocks event, EntityRef entity) {
         for (Vector3ic pos : event.getBlocks().keySet()) {
-            minimapHUDElement.updateLocation(pos);
+            tileService.blockChanged(pos.x(), pos.y(), pos.z());
+        }
+    }
+
+    @ReceiveEvent(components = WorldComponent.class)
+    public void onChunkLoaded(OnChunkLoaded event, EntityRef worldEntity) {
+        Vector3ic pos = event.getChunkPos();
+        tileService.onChunkLoaded(pos.x(), pos.y(), pos.z());
+    }
+
+    @ReceiveEvent(components = WorldComponent.class)
+    public void onBeforeChunkUnload(BeforeChunkUnload event, EntityRef worldEntity) {
+        Vector3ic pos = event.getChunkPos();
+        tileService.onChunkUnloaded(pos.x(), pos.y(), pos.z());
+    }
+
+    @ReceiveEvent(components = ClientComponent.class)
+    public void onTileResponse(MinimapTileResponseEvent event, EntityRef client) {
+        ChunkSurface surface;
+        try {
+            surface = ChunkSurfaceCodec.decode(event.getChunkX(), event.getChunkZ(), event.getData());
+        } catch (IllegalArgumentException e) {
+            logger.warn("Received invalid minimap surface for chunk {}/{}", event.getChunkX(), event.getChunkZ(), e);
+            return;
+        }
+        tileService.onRemoteSurface(surface);
+    }
+
+    @ReceiveEvent(components = ClientComponent.class)
+    public void onColumnPatch(MinimapColumnPatchEvent event, EntityRef client) {
+        try {
+            tileService.onRemotePatch(event.getChunkX(), event.getChunkZ(), event.getPatch());
+        } catch (IllegalArgumentException e) {
+            logger.warn("Received invalid minimap patch for chunk {}/{}", event.getChunkX(), event.getChunkZ(), e);
         }
     }
 
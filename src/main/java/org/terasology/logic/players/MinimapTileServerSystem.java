@@ -0,0 +1,591 @@
+// Copyright 2021 The Terasology Foundation
+// SPDX-License-Identifier: Apache-2.0
+
+package org.terasology.logic.players;
+
+import gnu.trove.iterator.TLongIterator;
+import gnu.trove.list.TLongList;
+import gnu.trove.list.array.TLongArrayList;
+import gnu.trove.set.TLongSet;
+import gnu.trove.set.hash.TLongHashSet;
+import org.joml.Vector3f;
+import org.joml.Vector3ic;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.terasology.engine.core.module.SandboxFileManager;
+import org.terasology.engine.entitySystem.entity.EntityRef;
+import org.terasology.engine.entitySystem.systems.BaseComponentSystem;
+import org.terasology.engine.entitySystem.systems.RegisterMode;
+import org.terasology.engine.entitySystem.systems.RegisterSystem;
+import org.terasology.engine.entitySystem.systems.UpdateSubscriberSystem;
+import org.terasology.engine.game.Game;
+import org.terasology.engine.logic.console.commandSystem.annotations.Command;
+import org.terasology.engine.logic.console.commandSystem.annotations.CommandParam;
+import org.terasology.engine.logic.health.DoDestroyEvent;
+import org.terasology.engine.logic.location.LocationComponent;
+import org.terasology.engine.logic.permission.PermissionManager;
+import org.terasology.engine.network.ClientComponent;
+import org.terasology.engine.network.NetworkMode;
+import org.terasology.engine.network.NetworkSystem;
+import org.terasology.engine.registry.In;
+import org.terasology.engine.rendering.assets.texture.Texture;
+import org.terasology.engine.utilities.Assets;
+import org.terasology.engine.world.WorldComponent;
+import org.terasology.engine.world.WorldProvider;
+import org.terasology.engine.world.block.BlockManager;
+import org.terasology.engine.world.block.entity.placement.PlaceBlocks;
+import org.terasology.engine.world.chunks.Chunk;
+import org.terasology.engine.world.chunks.ChunkProvider;
+import org.terasology.engine.world.chunks.Chunks;
+import org.terasology.engine.world.chunks.event.BeforeChunkUnload;
+import org.terasology.engine.world.chunks.event.OnChunkLoaded;
+import org.terasology.engine.world.generator.WorldGenerator;
+import org.terasology.gestalt.entitysystem.event.ReceiveEvent;
+import org.terasology.joml.geom.Rectanglei;
+import org.terasology.math.TeraMath;
+import org.terasology.minimap.network.MinimapColumnPatchEvent;
+import org.terasology.minimap.network.MinimapTileRequestEvent;
+import org.terasology.minimap.network.MinimapTileResponseEvent;
+import org.terasology.minimap.rendering.BlockLookupTable;
+import org.terasology.minimap.rendering.ChunkTileRasterizer;
+import org.terasology.minimap.rendering.ColorTileRasterizer;
+import org.terasology.minimap.rendering.MapImageExporter;
+import org.terasology.minimap.rendering.MinimapTileService;
+import org.terasology.minimap.storage.SandboxFileNames;
+import org.terasology.minimap.storage.SurfaceTileStore;
+import org.terasology.minimap.surface.AsyncSurfaceScanner;
+import org.terasology.minimap.surface.BlockSource;
+import org.terasology.minimap.surface.ChunkKeys;
+import org.terasology.minimap.surface.ChunkSurface;
+import org.terasology.minimap.surface.ChunkSurfaceCodec;
+import org.terasology.minimap.surface.DirtyColumnTracker;
+import org.terasology.minimap.surface.LoadedChunkColumns;
+import org.terasology.minimap.surface.SurfaceScanner;
+
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Scans the surfaces of all chunks loaded on the server and streams them to clients on request.
+ * This allows clients to show areas that have been explored by other players, without loading or scanning
+ * those chunks themselves.
+ * <p>
+ * The system is only active on servers with remote clients. On dedicated servers, surfaces are kept in a
+ * separate store. On listen servers, the store of the local client is shared and the local client is notified
+ * of every scanned chunk, so chunks are not scanned twice. Block changes are applied to the stored surfaces
+ * column by column and sent as patches to the clients that have received the affected chunks.
+ * <p>
+ * Requests are queued per client and answered a few chunks per update. The surfaces are loaded and encoded
+ * on a background thread, so the server tick does not depend on the number of requests. Only chunks within
+ * {@link #MAX_REQUEST_DISTANCE} of the character of a client are answered.
+ */
+@RegisterSystem(RegisterMode.AUTHORITY)
+public class MinimapTileServerSystem extends BaseComponentSystem implements UpdateSubscriberSystem {
+
+    private static final Logger logger = LoggerFactory.getLogger(MinimapTileServerSystem.class);
+
+    /**
+     * The number of background threads that scan chunk surfaces
+     */
+    private static final int SCANNER_THREADS = Math.max(1, Runtime.getRuntime().availableProcessors() / 4);
+
+    /**
+     * The maximum number of chunks that are queued per client, further requests are dropped until it drains
+     */
+    private static final int MAX_QUEUED_PER_CLIENT = 256;
+
+    /**
+     * The maximum number of chunks that are loaded per client and update
+     */
+    private static final int MAX_LOADS_PER_CLIENT_PER_UPDATE = 4;
+
+    /**
+     * The maximum number of chunks per client that are being loaded in the background
+     */
+    private static final int MAX_IN_FLIGHT_PER_CLIENT = 16;
+
+    /**
+     * The maximum distance in chunks (on either axis) between a requested chunk and the character of the client
+     */
+    private static final int MAX_REQUEST_DISTANCE = 256;
+
+    /**
+     * The maximum number of scan results that are stored per update
+     */
+    private static final int MAX_RESULTS_PER_UPDATE = 64;
+
+    /**
+     * The minimum time in seconds between updates of chunks with changed blocks
+     */
+    private static final float RESCAN_INTERVAL = 2f;
+
+    private final LoadedChunkColumns loadedColumns = new LoadedChunkColumns();
+    private final DirtyColumnTracker dirtyColumns = new DirtyColumnTracker();
+    private final TLongSet changedChunks = new TLongHashSet();
+    private final Map<EntityRef, ClientRequests> clients = new HashMap<>();
+    private final Queue<TileResponse> responses = new ConcurrentLinkedQueue<>();
+    private final Vector3f destroyedBlockPos = new Vector3f();
+    private final Vector3f clientPos = new Vector3f();
+
+    private AsyncSurfaceScanner surfaceScanner;
+    private SurfaceTileStore surfaceStore;
+
+    /**
+     * Loads and encodes the requested surfaces
+     */
+    private ExecutorService tileLoader;
+
+    /**
+     * The tile service of the local client on a listen server, <code>null</code> otherwise.
+     * It shares the store, which is then owned by the local client.
+     */
+    private MinimapTileService localTiles;
+    private int seaLevel;
+    private float timeSinceRescan;
+
+    /**
+     * Runs map exports, created on first use
+     */
+    private ExecutorService exportExecutor;
+
+    private Future<?> exportTask;
+
+    private ChunkSurface patchSurface;
+    private final int[] patchColumns = new int[ChunkSurface.COLUMNS];
+    private int patchCount;
+    private final DirtyColumnTracker.ColumnVisitor patchVisitor = this::rescanColumn;
+
+    @In
+    private NetworkSystem networkSystem;
+
+    @In
+    private WorldProvider worldProvider;
+
+    @In
+    private WorldGenerator worldGenerator;
+
+    @In
+    private ChunkProvider chunkProvider;
+
+    @In
+    private Game game;
+
+    @In
+    private BlockManager blockManager;
+
+    /**
+     * The local client, <code>null</code> on dedicated servers
+     */
+    @In
+    private MinimapSystem minimapSystem;
+
+    @Override
+    public void initialise() {
+        seaLevel = worldGenerator == null ? 10 : worldGenerator.getWorld().getSeaLevel();
+    }
+
+    @Override
+    public void postBegin() {
+        // all systems have been initialised, so the tile service of a local client is available
+        if (networkSystem.getMode() == NetworkMode.NONE) {
+            // there are no remote clients to serve - the local client scans its own map
+            return;
+        }
+        localTiles = getClientTileService();
+        if (localTiles != null) {
+            localTiles.setServerScanned(true);
+            surfaceStore = localTiles.getSurfaceStore();
+        } else {
+            surfaceStore = new SurfaceTileStore(new SandboxFileManager(),
+                    "minimap-server-" + SandboxFileNames.sanitize(game.getName(), "game"));
+        }
+        surfaceScanner = new AsyncSurfaceScanner(new SurfaceScanner(BlockSource.of(worldProvider, chunkProvider)), SCANNER_THREADS);
+        tileLoader = Executors.newSingleThreadExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "Minimap-Tile-Server");
+            thread.setDaemon(true);
+            return thread;
+        });
+
+        for (Chunk chunk : chunkProvider.getAllChunks()) {
+            Vector3ic pos = chunk.getPosition();
+            chunkLoaded(pos.x(), pos.y(), pos.z());
+        }
+    }
+
+    /**
+     * @return the tile service of the local client, <code>null</code> on dedicated servers
+     */
+    private MinimapTileService getClientTileService() {
+        if (minimapSystem instanceof DefaultMinimapSystem) {
+            return ((DefaultMinimapSystem) minimapSystem).getTileService();
+        }
+        return null;
+    }
+
+    @Override
+    public void shutdown() {
+        if (exportExecutor != null) {
+            // the export reads from the store, so it must be stopped before the store is closed
+            exportExecutor.shutdownNow();
+            try {
+                exportExecutor.awaitTermination(1, TimeUnit.SECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        if (tileLoader != null) {
+            tileLoader.shutdownNow();
+        }
+        if (surfaceScanner != null) {
+            surfaceScanner.shutdown();
+        }
+        if (surfaceStore != null && localTiles == null) {
+            surfaceStore.close();
+        }
+    }
+
+    @Override
+    public void update(float delta) {
+        if (surfaceScanner == null) {
+            return;
+        }
+        for (int i = 0; i < MAX_RESULTS_PER_UPDATE; i++) {
+            ChunkSurface surface = surfaceScanner.poll();
+            if (surface == null) {
+                break;
+            }
+            surfaceStore.save(surface);
+            if (localTiles != null) {
+                localTiles.onServerSurface(surface);
+            }
+        }
+        sendResponses();
+        dispatchRequests();
+
+        timeSinceRescan += delta;
+        if (timeSinceRescan >= RESCAN_INTERVAL && !changedChunks.isEmpty()) {
+            timeSinceRescan = 0;
+            TLongIterator it = changedChunks.iterator();
+            while (it.hasNext()) {
+                long key = it.next();
+                if (updateChangedChunk(ChunkKeys.unpackX(key), ChunkKeys.unpackZ(key))) {
+                    it.remove();
+                }
+            }
+        }
+    }
+
+    /**
+     * Re-scans the changed columns of a chunk, stores the result and sends the patch to the clients.
+     *
+     * @return true if the changes have been handled, false if the chunk should be updated again later
+     */
+    private boolean updateChangedChunk(int chunkX, int chunkZ) {
+        if (!loadedColumns.isReady(chunkX, chunkZ)) {
+            dirtyColumns.clear(chunkX, chunkZ);
+            return true;
+        }
+        ChunkSurface surface = surfaceStore.load(chunkX, chunkZ);
+        if (surface == null) {
+            if (surfaceScanner.isPending(chunkX, chunkZ)) {
+                // wait for the initial scan, it might have missed the changes
+                return false;
+            }
+            surfaceScanner.request(chunkX, chunkZ, seaLevel);
+            dirtyColumns.clear(chunkX, chunkZ);
+            return true;
+        }
+
+        patchSurface = surface;
+        patchCount = 0;
+        dirtyColumns.drain(chunkX, chunkZ, patchVisitor);
+        patchSurface = null;
+        surfaceStore.save(surface);
+        if (localTiles != null) {
+            localTiles.onServerSurface(surface);
+        }
+
+        long key = ChunkKeys.pack(chunkX, chunkZ);
+        MinimapColumnPatchEvent patch = null;
+        Iterator<Map.Entry<EntityRef, ClientRequests>> it = clients.entrySet().iterator();
+        while (it.hasNext()) {
+            Map.Entry<EntityRef, ClientRequests> entry = it.next();
+            ClientRequests requests = entry.getValue();
+            if (!entry.getKey().exists()) {
+                // the client has disconnected
+                it.remove();
+            } else if (requests.inFlight.contains(key)) {
+                // the response might have been loaded before the change - it is loaded again instead
+                requests.outdated.add(key);
+            } else if (requests.sent.contains(key)) {
+                if (patch == null) {
+                    patch = new MinimapColumnPatchEvent(key, ChunkSurfaceCodec.encodePatch(surface, patchColumns, patchCount));
+                }
+                entry.getKey().send(patch);
+            }
+        }
+        return true;
+    }
+
+    private void rescanColumn(int column, int row, int maxY) {
+        // start at the highest changed block, unless it is below the known surface (e.g. in a cave)
+        int startY = Math.max(maxY, patchSurface.getHeight(column, row));
+        surfaceScanner.getScanner().scanColumn(patchSurface, column, row, startY);
+        patchColumns[patchCount++] = ChunkSurface.index(column, row);
+    }
+
+    @Command(shortDescription = "Exports the explored map to a PNG image",
+            helpText = "Writes one pixel per block column to a file in the sandbox directory of the game "
+                    + "(minimap.png by default). The image is encoded in the background.",
+            runOnServer = true,
+            requiredPermission = PermissionManager.SERVER_MANAGEMENT_PERMISSION)
+    public String minimapExport(@CommandParam(value = "fileName", required = false) String fileName) {
+        if (exportTask != null && !exportTask.isDone()) {
+            return "A map export is already running";
+        }
+        SurfaceTileStore store = surfaceStore;
+        MinimapTileService clientTiles = getClientTileService();
+        if (store == null && clientTiles != null) {
+            store = clientTiles.getSurfaceStore();
+        }
+        if (store == null) {
+            return "The map is not available";
+        }
+        Optional<Texture> terrain = Assets.getTexture("engine:terrain");
+        if (!terrain.isPresent()) {
+            return "The terrain texture is not available";
+        }
+        // the name cannot contain directories, so the image is always written into the sandbox directory
+        String name = fileName == null ? "minimap" : SandboxFileNames.sanitize(fileName, "minimap");
+        if (!name.endsWith(".png")) {
+            name += ".png";
+        }
+        String file = name;
+
+        // the block colors are computed here, as the block manager and the textures are used on this thread only
+        BlockLookupTable blockTable = new BlockLookupTable(blockManager, terrain.get(),
+                new ChunkTileRasterizer(MinimapTileService.getCellSize())::getAverageColor);
+        MapImageExporter exporter = new MapImageExporter(store, blockTable.copyColors(),
+                ColorTileRasterizer.linearShading(seaLevel, seaLevel + 64));
+        if (exportExecutor == null) {
+            exportExecutor = Executors.newSingleThreadExecutor(runnable -> {
+                Thread thread = new Thread(runnable, "Minimap-Export");
+                thread.setDaemon(true);
+                thread.setPriority(Thread.MIN_PRIORITY);
+                return thread;
+            });
+        }
+        SurfaceTileStore exportStore = store;
+        exportTask = exportExecutor.submit(() -> exportMap(exportStore, exporter, file));
+        return "Exporting the map to " + file + " in the sandbox directory";
+    }
+
+    private void exportMap(SurfaceTileStore store, MapImageExporter exporter, String file) {
+        try {
+            Rectanglei bounds = store.getChunkBounds();
+            if (bounds == null) {
+                logger.info("The map has not been explored yet, nothing to export");
+                return;
+            }
+            long start = System.nanoTime();
+            int chunks = exporter.export(bounds, new SandboxFileManager(), file);
+            logger.info("Exported {} chunks ({}x{} blocks) to {} in {} ms", chunks, bounds.lengthX() * Chunks.SIZE_X,
+                    bounds.lengthY() * Chunks.SIZE_Z, file, (System.nanoTime() - start) / 1000000);
+        } catch (IOException | IllegalArgumentException e) {
+            logger.error("Failed to export the map to {}", file, e);
+        }
+    }
+
+    @ReceiveEvent(components = ClientComponent.class)
+    public void onTileRequest(MinimapTileRequestEvent event, EntityRef client) {
+        if (surfaceStore == null) {
+            return;
+        }
+        EntityRef character = client.getComponent(ClientComponent.class).character;
+        LocationComponent location = character == null ? null : character.getComponent(LocationComponent.class);
+        if (location == null) {
+            return;
+        }
+        location.getWorldPosition(clientPos);
+        int centerX = TeraMath.floorToInt(clientPos.x()) >> Chunks.POWER_X;
+        int centerZ = TeraMath.floorToInt(clientPos.z()) >> Chunks.POWER_Z;
+
+        // chunks that are dropped here are requested again by the client later
+        ClientRequests requests = clients.computeIfAbsent(client, c -> new ClientRequests());
+        long[] chunks = event.getChunks();
+        for (int i = 0; i < chunks.length && requests.queueSize() < MAX_QUEUED_PER_CLIENT; i++) {
+            int chunkX = ChunkKeys.unpackX(chunks[i]);
+            int chunkZ = ChunkKeys.unpackZ(chunks[i]);
+            if (Math.abs(chunkX - centerX) <= MAX_REQUEST_DISTANCE && Math.abs(chunkZ - centerZ) <= MAX_REQUEST_DISTANCE) {
+                requests.enqueue(chunks[i]);
+            }
+        }
+    }
+
+    /**
+     * Passes the next queued chunks of every client to the background thread.
+     */
+    private void dispatchRequests() {
+        Iterator<Map.Entry<EntityRef, ClientRequests>> it = clients.entrySet().iterator();
+        while (it.hasNext()) {
+            Map.Entry<EntityRef, ClientRequests> entry = it.next();
+            EntityRef client = entry.getKey();
+            ClientRequests requests = entry.getValue();
+            if (!client.exists()) {
+                // the client has disconnected
+                it.remove();
+                continue;
+            }
+            for (int i = 0; i < MAX_LOADS_PER_CLIENT_PER_UPDATE && requests.queueSize() > 0
+                    && requests.inFlight.size() < MAX_IN_FLIGHT_PER_CLIENT; i++) {
+                long key = requests.dequeue();
+                requests.inFlight.add(key);
+                tileLoader.execute(() -> responses.add(loadTile(client, key)));
+            }
+        }
+    }
+
+    /**
+     * Loads and encodes a requested surface. Called on the background thread.
+     */
+    private TileResponse loadTile(EntityRef client, long key) {
+        try {
+            // chunks that have never been loaded on the server are skipped - the client asks again later
+            ChunkSurface surface = surfaceStore.load(ChunkKeys.unpackX(key), ChunkKeys.unpackZ(key));
+            return new TileResponse(client, key, surface == null ? null : ChunkSurfaceCodec.encode(surface));
+        } catch (RuntimeException e) {
+            logger.warn("Could not load the minimap surface of chunk {}, {}", ChunkKeys.unpackX(key), ChunkKeys.unpackZ(key), e);
+            return new TileResponse(client, key, null);
+        }
+    }
+
+    /**
+     * Sends the surfaces that have been loaded in the background to the clients.
+     */
+    private void sendResponses() {
+        TileResponse response;
+        while ((response = responses.poll()) != null) {
+            ClientRequests requests = clients.get(response.client);
+            if (requests == null || !requests.inFlight.remove(response.key)) {
+                continue;
+            }
+            if (requests.outdated.remove(response.key)) {
+                requests.enqueue(response.key);
+            } else if (response.data != null) {
+                response.client.send(new MinimapTileResponseEvent(response.key, response.data));
+                requests.sent.add(response.key);
+            }
+        }
+    }
+
+    @ReceiveEvent(components = WorldComponent.class)
+    public void onChunkLoaded(OnChunkLoaded event, EntityRef worldEntity) {
+        Vector3ic pos = event.getChunkPos();
+        chunkLoaded(pos.x(), pos.y(), pos.z());
+    }
+
+    @ReceiveEvent(components = WorldComponent.class)
+    public void onBeforeChunkUnload(BeforeChunkUnload event, EntityRef worldEntity) {
+        Vector3ic pos = event.getChunkPos();
+        if (surfaceScanner != null && loadedColumns.chunkUnloaded(pos.x(), pos.y(), pos.z())) {
+            // the changes will be included in the next scan once the chunk is loaded again
+            dirtyColumns.clear(pos.x(), pos.z());
+            changedChunks.remove(ChunkKeys.pack(pos.x(), pos.z()));
+        }
+    }
+
+    @ReceiveEvent
+    public void onDestroyBlock(DoDestroyEvent event, EntityRef entity, LocationComponent locationComp) {
+        locationComp.getWorldPosition(destroyedBlockPos);
+        blockChanged(TeraMath.ceilToInt(destroyedBlockPos.x()), TeraMath.ceilToInt(destroyedBlockPos.y()),
+                TeraMath.ceilToInt(destroyedBlockPos.z()));
+    }
+
+    @ReceiveEvent
+    public void onPlaceBlock(PlaceBlocks event, EntityRef entity) {
+        for (Vector3ic pos : event.getBlocks().keySet()) {
+            blockChanged(pos.x(), pos.y(), pos.z());
+        }
+    }
+
+    private void chunkLoaded(int chunkX, int chunkY, int chunkZ) {
+        if (surfaceScanner != null && loadedColumns.chunkLoaded(chunkX, chunkY, chunkZ)) {
+            surfaceScanner.request(chunkX, chunkZ, seaLevel);
+        }
+    }
+
+    private void blockChanged(int x, int y, int z) {
+        if (surfaceScanner != null) {
+            dirtyColumns.markDirty(x, y, z);
+            changedChunks.add(ChunkKeys.pack(x >> Chunks.POWER_X, z >> Chunks.POWER_Z));
+        }
+    }
+
+    /**
+     * The chunks requested by a client, in the order of the requests. Only used on the main thread.
+     */
+    private static final class ClientRequests {
+        private final TLongList queue = new TLongArrayList();
+        private final TLongSet queued = new TLongHashSet();
+        private int head;
+
+        /**
+         * The chunks that are being loaded in the background
+         */
+        private final TLongSet inFlight = new TLongHashSet();
+
+        /**
+         * In-flight chunks that have changed since they were passed to the background thread
+         */
+        private final TLongSet outdated = new TLongHashSet();
+
+        /**
+         * The chunks whose surfaces have been sent, so they receive patches
+         */
+        private final TLongSet sent = new TLongHashSet();
+
+        int queueSize() {
+            return queue.size() - head;
+        }
+
+        void enqueue(long key) {
+            if (!inFlight.contains(key) && queued.add(key)) {
+                queue.add(key);
+            }
+        }
+
+        long dequeue() {
+            long key = queue.get(head++);
+            queued.remove(key);
+            if (head == queue.size()) {
+                queue.clear();
+                head = 0;
+            }
+            return key;
+        }
+    }
+
+    /**
+     * An encoded surface (or <code>null</code> if not available) for a client.
+     */
+    private static final class TileResponse {
+        private final EntityRef client;
+        private final long key;
+        private final byte[] data;
+
+        TileResponse(EntityRef client, long key, byte[] data) {
+            this.client = client;
+            this.key = key;
+            this.data = data;
+        }
+    }
+}
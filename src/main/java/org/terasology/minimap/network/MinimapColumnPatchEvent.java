@@ -0,0 +1,47 @@
+// Copyright 2021 The Terasology Foundation
+// SPDX-License-Identifier: Apache-2.0
+
+package org.terasology.minimap.network;
+
+import org.terasology.engine.network.OwnerEvent;
+import org.terasology.gestalt.entitysystem.event.Event;
+import org.terasology.minimap.surface.ChunkKeys;
+import org.terasology.minimap.surface.ChunkSurfaceCodec;
+
+/**
+ * Sent by the server to clients that have received the surface of a chunk, after some of its columns changed.
+ */
+@OwnerEvent
+public class MinimapColumnPatchEvent implements Event {
+
+    private long chunk;
+    private byte[] patch;
+
+    public MinimapColumnPatchEvent() {
+        // for serialization
+    }
+
+    /**
+     * @param chunk the chunk as key created by {@link ChunkKeys#pack(int, int)}
+     * @param patch the changed columns encoded by {@link ChunkSurfaceCodec#encodePatch}
+     */
+    public MinimapColumnPatchEvent(long chunk, byte[] patch) {
+        this.chunk = chunk;
+        this.patch = patch;
+    }
+
+    public int getChunkX() {
+        return ChunkKeys.unpackX(chunk);
+    }
+
+    public int getChunkZ() {
+        return ChunkKeys.unpackZ(chunk);
+    }
+
+    /**
+     * @return the changed columns encoded by {@link ChunkSurfaceCodec#encodePatch}
+     */
+    public byte[] getPatch() {
+        return patch;
+    }
+}
@@ -0,0 +1,36 @@
+// Copyright 2021 The Terasology Foundation
+// SPDX-License-Identifier: Apache-2.0
+
+package org.terasology.minimap.network;
+
+import org.terasology.engine.network.ServerEvent;
+import org.terasology.gestalt.entitysystem.event.Event;
+import org.terasology.minimap.surface.ChunkKeys;
+
+/**
+ * Sent by a client to request the surfaces of chunks it has not loaded itself.
+ * The server answers with one {@link MinimapTileResponseEvent} per chunk it knows.
+ */
+@ServerEvent
+public class MinimapTileRequestEvent implements Event {
+
+    private long[] chunks;
+
+    public MinimapTileRequestEvent() {
+        // for serialization
+    }
+
+    /**
+     * @param chunks the requested chunks as keys created by {@link ChunkKeys#pack(int, int)}
+     */
+    public MinimapTileRequestEvent(long[] chunks) {
+        this.chunks = chunks;
+    }
+
+    /**
+     * @return the requested chunks as keys created by {@link ChunkKeys#pack(int, int)}
+     */
+    public long[] getChunks() {
+        return chunks == null ? new long[0] : chunks;
+    }
+}
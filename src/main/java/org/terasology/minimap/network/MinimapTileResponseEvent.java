@@ -0,0 +1,47 @@
+// Copyright 2021 The Terasology Foundation
+// SPDX-License-Identifier: Apache-2.0
+
+package org.terasology.minimap.network;
+
+import org.terasology.engine.network.OwnerEvent;
+import org.terasology.gestalt.entitysystem.event.Event;
+import org.terasology.minimap.surface.ChunkKeys;
+import org.terasology.minimap.surface.ChunkSurfaceCodec;
+
+/**
+ * Sent by the server to the client that requested the surface of a chunk.
+ */
+@OwnerEvent
+public class MinimapTileResponseEvent implements Event {
+
+    private long chunk;
+    private byte[] data;
+
+    public MinimapTileResponseEvent() {
+        // for serialization
+    }
+
+    /**
+     * @param chunk the chunk as key created by {@link ChunkKeys#pack(int, int)}
+     * @param data the surface encoded by {@link ChunkSurfaceCodec#encode}
+     */
+    public MinimapTileResponseEvent(long chunk, byte[] data) {
+        this.chunk = chunk;
+        this.data = data;
+    }
+
+    public int getChunkX() {
+        return ChunkKeys.unpackX(chunk);
+    }
+
+    public int getChunkZ() {
+        return ChunkKeys.unpackZ(chunk);
+    }
+
+    /**
+     * @return the surface encoded by {@link ChunkSurfaceCodec#encode}
+     */
+    public byte[] getData() {
+        return data;
+    }
+}
@@ -0,0 +1,110 @@
+// Copyright 2021 The Terasology Foundation
+// SPDX-License-Identifier: Apache-2.0
+
+package org.terasology.minimap.network;
+
+import gnu.trove.list.TLongList;
+import gnu.trove.list.array.TLongArrayList;
+import gnu.trove.map.TLongLongMap;
+import gnu.trove.map.hash.TLongLongHashMap;
+import org.terasology.engine.entitySystem.entity.EntityRef;
+import org.terasology.engine.logic.players.LocalPlayer;
+import org.terasology.minimap.surface.ChunkKeys;
+
+/**
+ * Collects the chunks whose surfaces should be fetched from the server and sends them in batches.
+ * <p>
+ * A chunk is requested at most once per {@link #RETRY_INTERVAL_MS}, so chunks the server does not know
+ * are not requested every frame. The number of unanswered requests is bounded.
+ * <p>
+ * This class is not thread-safe and is meant to be used from the render thread only.
+ */
+public class RemoteTileRequester {
+
+    /**
+     * The maximum number of chunks per request event
+     */
+    private static final int MAX_CHUNKS_PER_REQUEST = 32;
+
+    /**
+     * The maximum number of chunks that have been requested but not received
+     */
+    private static final int MAX_OUTSTANDING = 256;
+
+    /**
+     * The time after which an unanswered chunk is requested again
+     */
+    private static final long RETRY_INTERVAL_MS = 30000;
+
+    private final LocalPlayer localPlayer;
+
+    private final TLongLongMap requestTimes = new TLongLongHashMap();
+    private final TLongList batch = new TLongArrayList();
+
+    /**
+     * @param localPlayer the player whose client entity sends the requests
+     */
+    public RemoteTileRequester(LocalPlayer localPlayer) {
+        this.localPlayer = localPlayer;
+    }
+
+    /**
+     * Adds a chunk to the next request, unless it has been requested recently.
+     *
+     * @return true if the chunk was added
+     */
+    public boolean request(int chunkX, int chunkZ) {
+        long key = ChunkKeys.pack(chunkX, chunkZ);
+        long now = System.currentTimeMillis();
+        if (requestTimes.containsKey(key)) {
+            if (now - requestTimes.get(key) < RETRY_INTERVAL_MS) {
+                return false;
+            }
+        } else if (requestTimes.size() >= MAX_OUTSTANDING && !expire(now)) {
+            return false;
+        }
+        requestTimes.put(key, now);
+        batch.add(key);
+        return true;
+    }
+
+    /**
+     * Marks a chunk as received, so it can be requested again later if needed.
+     */
+    public void received(int chunkX, int chunkZ) {
+        requestTimes.remove(ChunkKeys.pack(chunkX, chunkZ));
+    }
+
+    /**
+     * Sends all collected chunks to the server.
+     */
+    public void flush() {
+        if (batch.isEmpty()) {
+            return;
+        }
+        EntityRef client = localPlayer.getClientEntity();
+        if (client.exists()) {
+            for (int start = 0; start < batch.size(); start += MAX_CHUNKS_PER_REQUEST) {
+                int length = Math.min(MAX_CHUNKS_PER_REQUEST, batch.size() - start);
+                client.send(new MinimapTileRequestEvent(batch.toArray(start, length)));
+            }
+        } else {
+            // try again once the client entity is available
+            for (int i = 0; i < batch.size(); i++) {
+                requestTimes.remove(batch.get(i));
+            }
+        }
+        batch.clear();
+    }
+
+    /**
+     * Removes all requests older than {@link #RETRY_INTERVAL_MS}.
+     *
+     * @return true if at least one request was removed
+     */
+    private boolean expire(long now) {
+        int before = requestTimes.size();
+        requestTimes.retainEntries((key, time) -> now - time < RETRY_INTERVAL_MS);
+        return requestTimes.size() < before;
+    }
+}
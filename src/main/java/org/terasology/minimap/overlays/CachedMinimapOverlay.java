@@ -0,0 +1,19 @@
+// Copyright 2021 The Terasology Foundation
+// SPDX-License-Identifier: Apache-2.0
+
+package org.terasology.minimap.overlays;
+
+/**
+ * An overlay whose output only changes when it says so. The minimap renders such overlays into an offscreen
+ * layer that covers a margin around the visible area, and only re-renders the layer when the version of one
+ * of its overlays changes, the zoom changes or the view leaves the covered area.
+ * <p>
+ * Overlays that change every frame (e.g. moving markers) should not implement this interface.
+ */
+public interface CachedMinimapOverlay extends MinimapOverlay {
+
+    /**
+     * @return a number that changes whenever the rendered content changes (a constant for static overlays)
+     */
+    long getVersion();
+}
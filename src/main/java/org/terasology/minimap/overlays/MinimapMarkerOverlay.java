@@ -0,0 +1,323 @@
+// Copyright 2021 The Terasology Foundation
+// SPDX-License-Identifier: Apache-2.0
+
+package org.terasology.minimap.overlays;
+
+import gnu.trove.list.array.TIntArrayList;
+import gnu.trove.map.TLongObjectMap;
+import gnu.trove.map.hash.TLongObjectHashMap;
+import org.joml.Vector2i;
+import org.joml.Vector2ic;
+import org.terasology.engine.rendering.assets.texture.Texture;
+import org.terasology.joml.geom.Rectanglei;
+import org.terasology.minimap.surface.ChunkKeys;
+import org.terasology.nui.Canvas;
+import org.terasology.nui.Color;
+
+import java.util.Arrays;
+
+/**
+ * An overlay that renders an icon for a large number of markers. The markers are kept in a spatial grid,
+ * so that rendering only visits the markers in the visible area.
+ * If more than {@link #getClusterThreshold()} markers fall into the same screen cell, they are drawn as a
+ * single cluster icon at their average position.
+ * <p>
+ * This class is not thread-safe. Markers should be modified on the main thread only.
+ */
+public class MinimapMarkerOverlay implements MinimapOverlay {
+
+    /**
+     * The size of a grid bucket is 64 x 64 blocks
+     */
+    private static final int BUCKET_POWER = 6;
+
+    private final TLongObjectMap<TIntArrayList> buckets = new TLongObjectHashMap<>();
+    private final TIntArrayList freeIds = new TIntArrayList();
+
+    private int[] xs = new int[16];
+    private int[] zs = new int[16];
+    private boolean[] used = new boolean[16];
+    private int idCount;
+    private int size;
+
+    private final Texture icon;
+    private final Vector2i iconSize;
+    private Color color = new Color(Color.white);
+
+    private Texture clusterIcon;
+    private final Vector2i clusterIconSize;
+    private Color clusterColor = new Color(Color.white);
+    private int clusterCellSize = 16;
+    private int clusterThreshold = 4;
+
+    /**
+     * Screen cells of the last frame - re-used to avoid allocations
+     */
+    private int[] cellCounts = new int[0];
+    private float[] cellSumX = new float[0];
+    private float[] cellSumY = new float[0];
+    private int cellCols;
+    private int originX;
+    private int originY;
+    private final Rectanglei iconRegion = new Rectanglei();
+
+    public MinimapMarkerOverlay(Texture icon, Vector2ic iconSize) {
+        this.icon = icon;
+        this.iconSize = new Vector2i(iconSize);
+        this.clusterIcon = icon;
+        this.clusterIconSize = new Vector2i(iconSize).mul(2);
+    }
+
+    /**
+     * @param x the world x coordinate
+     * @param z the world z coordinate
+     * @return the id of the new marker
+     */
+    public int add(int x, int z) {
+        int id;
+        if (freeIds.isEmpty()) {
+            id = idCount++;
+            ensureCapacity(idCount);
+        } else {
+            id = freeIds.removeAt(freeIds.size() - 1);
+        }
+        xs[id] = x;
+        zs[id] = z;
+        used[id] = true;
+        size++;
+        bucket(x, z, true).add(id);
+        return id;
+    }
+
+    /**
+     * @param id the id of the marker to remove
+     * @return true if the marker existed
+     */
+    public boolean remove(int id) {
+        if (!contains(id)) {
+            return false;
+        }
+        removeFromBucket(id);
+        used[id] = false;
+        size--;
+        freeIds.add(id);
+        return true;
+    }
+
+    /**
+     * @param id the id of the marker
+     * @param x the new world x coordinate
+     * @param z the new world z coordinate
+     * @return true if the marker exists
+     */
+    public boolean move(int id, int x, int z) {
+        if (!contains(id)) {
+            return false;
+        }
+        if ((xs[id] >> BUCKET_POWER) != (x >> BUCKET_POWER) || (zs[id] >> BUCKET_POWER) != (z >> BUCKET_POWER)) {
+            removeFromBucket(id);
+            bucket(x, z, true).add(id);
+        }
+        xs[id] = x;
+        zs[id] = z;
+        return true;
+    }
+
+    /**
+     * @return true if a marker with that id exists
+     */
+    public boolean contains(int id) {
+        return id >= 0 && id < idCount && used[id];
+    }
+
+    /**
+     * Removes all markers.
+     */
+    public void clear() {
+        buckets.clear();
+        freeIds.clear();
+        Arrays.fill(used, false);
+        idCount = 0;
+        size = 0;
+    }
+
+    /**
+     * @return the number of markers
+     */
+    public int size() {
+        return size;
+    }
+
+    private void ensureCapacity(int capacity) {
+        if (capacity > xs.length) {
+            int newLength = Math.max(capacity, xs.length * 2);
+            xs = Arrays.copyOf(xs, newLength);
+            zs = Arrays.copyOf(zs, newLength);
+            used = Arrays.copyOf(used, newLength);
+        }
+    }
+
+    private TIntArrayList bucket(int x, int z, boolean create) {
+        long key = ChunkKeys.pack(x >> BUCKET_POWER, z >> BUCKET_POWER);
+        TIntArrayList bucket = buckets.get(key);
+        if (bucket == null && create) {
+            bucket = new TIntArrayList(4);
+            buckets.put(key, bucket);
+        }
+        return bucket;
+    }
+
+    private void removeFromBucket(int id) {
+        TIntArrayList bucket = bucket(xs[id], zs[id], false);
+        bucket.remove(id);
+        if (bucket.isEmpty()) {
+            buckets.remove(ChunkKeys.pack(xs[id] >> BUCKET_POWER, zs[id] >> BUCKET_POWER));
+        }
+    }
+
+    @Override
+    public void render(Canvas canvas, Rectanglei worldRect) {
+        if (size == 0) {
+            return;
+        }
+        Rectanglei region = canvas.getRegion();
+        float scaleX = (float) region.lengthX() / (float) worldRect.lengthX();
+        float scaleY = (float) region.lengthY() / (float) worldRect.lengthY();
+
+        // include markers whose icon is partially visible
+        int marginX = (int) Math.ceil(Math.max(iconSize.x(), clusterIconSize.x()) / scaleX);
+        int marginZ = (int) Math.ceil(Math.max(iconSize.y(), clusterIconSize.y()) / scaleY);
+        int minX = worldRect.minX - marginX;
+        int minZ = worldRect.minY - marginZ;
+        int maxX = worldRect.maxX + marginX;
+        int maxZ = worldRect.maxY + marginZ;
+
+        originX = region.minX;
+        originY = region.minY;
+        prepareCells(region);
+
+        // first pass: count the visible markers per screen cell
+        for (int bz = minZ >> BUCKET_POWER; bz <= maxZ >> BUCKET_POWER; bz++) {
+            for (int bx = minX >> BUCKET_POWER; bx <= maxX >> BUCKET_POWER; bx++) {
+                TIntArrayList bucket = buckets.get(ChunkKeys.pack(bx, bz));
+                if (bucket == null) {
+                    continue;
+                }
+                for (int i = 0; i < bucket.size(); i++) {
+                    int id = bucket.getQuick(i);
+                    int x = xs[id];
+                    int z = zs[id];
+                    if (x >= minX && x <= maxX && z >= minZ && z <= maxZ) {
+                        float sx = (x - worldRect.minX) * scaleX;
+                        float sy = (z - worldRect.minY) * scaleY;
+                        int cell = cellIndex(sx, sy);
+                        cellCounts[cell]++;
+                        cellSumX[cell] += sx;
+                        cellSumY[cell] += sy;
+                    }
+                }
+            }
+        }
+
+        // second pass: draw the markers of cells that are not clustered
+        for (int bz = minZ >> BUCKET_POWER; bz <= maxZ >> BUCKET_POWER; bz++) {
+            for (int bx = minX >> BUCKET_POWER; bx <= maxX >> BUCKET_POWER; bx++) {
+                TIntArrayList bucket = buckets.get(ChunkKeys.pack(bx, bz));
+                if (bucket == null) {
+                    continue;
+                }
+                for (int i = 0; i < bucket.size(); i++) {
+                    int id = bucket.getQuick(i);
+                    int x = xs[id];
+                    int z = zs[id];
+                    if (x >= minX && x <= maxX && z >= minZ && z <= maxZ) {
+                        float sx = (x - worldRect.minX) * scaleX;
+                        float sy = (z - worldRect.minY) * scaleY;
+                        if (cellCounts[cellIndex(sx, sy)] <= clusterThreshold) {
+                            drawIcon(canvas, icon, iconSize, color, sx, sy);
+                        }
+                    }
+                }
+            }
+        }
+
+        // third pass: draw the clusters
+        for (int cell = 0; cell < cellCounts.length; cell++) {
+            int count = cellCounts[cell];
+            if (count > clusterThreshold) {
+                drawIcon(canvas, clusterIcon, clusterIconSize, clusterColor, cellSumX[cell] / count, cellSumY[cell] / count);
+            }
+        }
+    }
+
+    private void prepareCells(Rectanglei region) {
+        // markers close to the border (within the margin) are assigned to the nearest cell
+        cellCols = Math.max(1, (region.lengthX() + clusterCellSize - 1) / clusterCellSize);
+        int cellRows = Math.max(1, (region.lengthY() + clusterCellSize - 1) / clusterCellSize);
+        int cells = cellCols * cellRows;
+        if (cellCounts.length != cells) {
+            cellCounts = new int[cells];
+            cellSumX = new float[cells];
+            cellSumY = new float[cells];
+        } else {
+            Arrays.fill(cellCounts, 0);
+            Arrays.fill(cellSumX, 0);
+            Arrays.fill(cellSumY, 0);
+        }
+    }
+
+    private int cellIndex(float sx, float sy) {
+        int cellRows = cellCounts.length / cellCols;
+        int col = Math.max(0, Math.min(cellCols - 1, (int) (sx / clusterCellSize)));
+        int row = Math.max(0, Math.min(cellRows - 1, (int) (sy / clusterCellSize)));
+        return row * cellCols + col;
+    }
+
+    private void drawIcon(Canvas canvas, Texture texture, Vector2ic size, Color tint, float sx, float sy) {
+        int minX = originX + (int) (sx - size.x() * 0.5f);
+        int minY = originY + (int) (sy - size.y() * 0.5f);
+        iconRegion.set(minX, minY, minX + size.x(), minY + size.y());
+        canvas.drawTexture(texture, iconRegion, tint);
+    }
+
+    @Override
+    public int getZOrder() {
+        return 0;
+    }
+
+    public void setColor(Color color) {
+        this.color = color;
+    }
+
+    /**
+     * @param clusterIcon the icon that is used for clusters
+     * @param clusterIconSize the size of the cluster icon on screen
+     * @param clusterColor the color of the cluster icon
+     */
+    public void setClusterIcon(Texture clusterIcon, Vector2ic clusterIconSize, Color clusterColor) {
+        this.clusterIcon = clusterIcon;
+        this.clusterIconSize.set(clusterIconSize);
+        this.clusterColor = clusterColor;
+    }
+
+    /**
+     * @return the maximum number of markers in a screen cell that are drawn individually
+     */
+    public int getClusterThreshold() {
+        return clusterThreshold;
+    }
+
+    /**
+     * @param clusterThreshold the maximum number of markers in a screen cell that are drawn individually
+     */
+    public void setClusterThreshold(int clusterThreshold) {
+        this.clusterThreshold = clusterThreshold;
+    }
+
+    /**
+     * @param clusterCellSize the size of a screen cell for clustering in pixels
+     */
+    public void setClusterCellSize(int clusterCellSize) {
+        this.clusterCellSize = Math.max(1, clusterCellSize);
+    }
+}
@@ -13,7 +13,7 @@ public interface MinimapOverlay {
 
     /**
      * @param canvas the canvas to use for rendering
-     * @param worldRect the world rect that is currently covered
+     * @param worldRect the world rect that is currently covered (re-used in every frame - do not keep a reference)
      */
     void render(Canvas canvas, Rectanglei worldRect);
 
@@ -4,6 +4,7 @@
 package org.terasology.minimap.overlays;
 
 import org.joml.Vector2f;
+import org.joml.Vector2fc;
 import org.joml.Vector2i;
 import org.joml.Vector2ic;
 import org.terasology.engine.rendering.assets.texture.Texture;
@@ -29,9 +30,38 @@ public final class MinimapOverlays {
         Color iconColor = new Color(192, 192, 192);
         Texture icon = Assets.getTexture("Minimap:maps-center-direction").get();
         Collection<Vector2ic> points = Collections.singleton(new Vector2i());
-        MinimapIconOverlay ovly = new MinimapIconOverlay(points, icon);
+        MinimapIconOverlay ovly = new StaticIconOverlay(points, icon);
         ovly.setColor(iconColor);
         ovly.setIconSize(new Vector2f(4, 4));
         return ovly;
     }
+
+    /**
+     * An icon overlay with a fixed set of points. It only changes when its appearance is changed.
+     */
+    private static final class StaticIconOverlay extends MinimapIconOverlay implements CachedMinimapOverlay {
+
+        private long version;
+
+        StaticIconOverlay(Collection<? extends Vector2ic> points, Texture icon) {
+            super(points, icon);
+        }
+
+        @Override
+        public void setColor(Color color) {
+            super.setColor(color);
+            version++;
+        }
+
+        @Override
+        public void setIconSize(Vector2fc iconSize) {
+            super.setIconSize(iconSize);
+            version++;
+        }
+
+        @Override
+        public long getVersion() {
+            return version;
+        }
+    }
 }
@@ -0,0 +1,104 @@
+// Copyright 2021 The Terasology Foundation
+// SPDX-License-Identifier: Apache-2.0
+
+package org.terasology.minimap.rendering;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+
+/**
+ * Measures the heap memory that the current thread allocates between {@link #begin()} and {@link #end()}.
+ * Disabled by default; when enabled, the average is logged periodically.
+ * <p>
+ * Relies on the HotSpot-specific {@link com.sun.management.ThreadMXBean}. If it is not available,
+ * the probe cannot be enabled.
+ */
+public class AllocationProbe {
+
+    private static final Logger logger = LoggerFactory.getLogger(AllocationProbe.class);
+
+    private static final com.sun.management.ThreadMXBean THREAD_BEAN = findThreadBean();
+
+    private final String name;
+    private final int logInterval;
+
+    private boolean enabled;
+    private long start;
+    private long last;
+    private long total;
+    private int samples;
+
+    /**
+     * @param name the name of the measured code section (used for logging)
+     * @param logInterval the number of samples after which the average is logged
+     */
+    public AllocationProbe(String name, int logInterval) {
+        this.name = name;
+        this.logInterval = logInterval;
+    }
+
+    private static com.sun.management.ThreadMXBean findThreadBean() {
+        try {
+            ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+            if (bean instanceof com.sun.management.ThreadMXBean) {
+                com.sun.management.ThreadMXBean sunBean = (com.sun.management.ThreadMXBean) bean;
+                if (sunBean.isThreadAllocatedMemorySupported()) {
+                    sunBean.setThreadAllocatedMemoryEnabled(true);
+                    return sunBean;
+                }
+            }
+        } catch (RuntimeException | LinkageError e) {
+            logger.debug("Thread allocation tracking is not available", e);
+        }
+        return null;
+    }
+
+    /**
+     * @return true if allocation tracking is supported by the JVM
+     */
+    public static boolean isSupported() {
+        return THREAD_BEAN != null;
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * @param enabled true to enable the probe (ignored if not supported)
+     */
+    public void setEnabled(boolean enabled) {
+        this.enabled = enabled && isSupported();
+        total = 0;
+        samples = 0;
+    }
+
+    public void begin() {
+        if (enabled) {
+            start = THREAD_BEAN.getThreadAllocatedBytes(Thread.currentThread().getId());
+        }
+    }
+
+    public void end() {
+        if (enabled) {
+            last = THREAD_BEAN.getThreadAllocatedBytes(Thread.currentThread().getId()) - start;
+            total += last;
+            samples++;
+            if (samples >= logInterval) {
+                logger.info("{} allocated {} bytes on average ({} samples)", name, total / samples, samples);
+                total = 0;
+                samples = 0;
+            }
+        }
+    }
+
+    /**
+     * @return the number of bytes allocated in the last measured section
+     */
+    public long getLastAllocatedBytes() {
+        return last;
+    }
+}
@@ -0,0 +1,123 @@
+// Copyright 2021 The Terasology Foundation
+// SPDX-License-Identifier: Apache-2.0
+
+package org.terasology.minimap.rendering;
+
+import org.joml.Vector2f;
+import org.joml.Vector2fc;
+import org.terasology.engine.registry.CoreRegistry;
+import org.terasology.engine.rendering.assets.texture.BasicTextureRegion;
+import org.terasology.engine.rendering.assets.texture.Texture;
+import org.terasology.engine.rendering.assets.texture.TextureRegion;
+import org.terasology.engine.world.block.Block;
+import org.terasology.engine.world.block.BlockAppearance;
+import org.terasology.engine.world.block.BlockManager;
+import org.terasology.engine.world.block.BlockPart;
+import org.terasology.engine.world.block.tiles.WorldAtlas;
+
+import java.util.Arrays;
+import java.util.function.ToIntFunction;
+
+/**
+ * Holds the minimap properties of all blocks in flat arrays that are indexed by block id:
+ * the texture region of the top face and its average color.
+ * <p>
+ * Entries are created when the table is filled and for blocks that are registered later on first access,
+ * so lookups do not need any map access. Ids without a registered block get the entry of the block the
+ * block manager falls back to (air) until the table is filled again, so they are only resolved once.
+ * <p>
+ * This class is not thread-safe and is meant to be used from the render thread only.
+ */
+public class BlockLookupTable {
+
+    private final BlockManager blockManager;
+    private final Texture textureAtlas;
+    private final ToIntFunction<TextureRegion> averageColor;
+
+    private TextureRegion[] regions = new TextureRegion[256];
+    private int[] colors = new int[256];
+    private boolean[] known = new boolean[256];
+
+    /**
+     * @param blockManager provides the blocks by id
+     * @param textureAtlas the terrain texture atlas
+     * @param averageColor computes the average color (RGBA) of a texture region
+     */
+    public BlockLookupTable(BlockManager blockManager, Texture textureAtlas, ToIntFunction<TextureRegion> averageColor) {
+        this.blockManager = blockManager;
+        this.textureAtlas = textureAtlas;
+        this.averageColor = averageColor;
+    }
+
+    /**
+     * Creates the entries of all blocks that are currently registered.
+     */
+    public void fill() {
+        for (Block block : blockManager.listRegisteredBlocks()) {
+            register(block.getId() & 0xFFFF, block);
+        }
+    }
+
+    /**
+     * @return the texture region of the top face of the block
+     */
+    public TextureRegion getRegion(short blockId) {
+        int idx = blockId & 0xFFFF;
+        if (!isKnown(idx)) {
+            register(idx, blockManager.getBlock(blockId));
+        }
+        return regions[idx];
+    }
+
+    /**
+     * @return the average color (RGBA) of the top face of the block
+     */
+    public int getColor(short blockId) {
+        int idx = blockId & 0xFFFF;
+        if (!isKnown(idx)) {
+            register(idx, blockManager.getBlock(blockId));
+        }
+        return colors[idx];
+    }
+
+    /**
+     * Creates a copy of the colors of all registered blocks, e.g. to use them on another thread.
+     *
+     * @return the average colors (RGBA) indexed by block id, 0 for unknown ids
+     */
+    public int[] copyColors() {
+        fill();
+        return Arrays.copyOf(colors, colors.length);
+    }
+
+    private boolean isKnown(int idx) {
+        return idx < known.length && known[idx];
+    }
+
+    /**
+     * @param idx the requested block id, which differs from the id of the block if it is a fallback
+     */
+    private void register(int idx, Block block) {
+        if (idx >= known.length) {
+            int length = Math.max(idx + 1, known.length * 2);
+            regions = Arrays.copyOf(regions, length);
+            colors = Arrays.copyOf(colors, length);
+            known = Arrays.copyOf(known, length);
+        }
+        TextureRegion region = createRegion(block);
+        regions[idx] = region;
+        colors[idx] = averageColor.applyAsInt(region);
+        known[idx] = true;
+    }
+
+    private TextureRegion createRegion(Block block) {
+        BlockAppearance primaryAppearance = block.getPrimaryAppearance();
+
+        WorldAtlas worldAtlas = CoreRegistry.get(WorldAtlas.class);
+        float tileSize = worldAtlas.getRelativeTileSize();
+
+        Vector2fc textureAtlasPos = primaryAppearance.getTextureAtlasPos(BlockPart.TOP);
+
+        return new BasicTextureRegion(textureAtlas, textureAtlasPos, new Vector2f(tileSize, tileSize));
+    }
+}
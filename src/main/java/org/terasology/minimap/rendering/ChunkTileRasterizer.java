@@ -0,0 +1,174 @@
+// Copyright 2021 The Terasology Foundation
+// SPDX-License-Identifier: Apache-2.0
+
+package org.terasology.minimap.rendering;
+
+import org.joml.Vector2ic;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.terasology.engine.rendering.assets.texture.Texture;
+import org.terasology.engine.rendering.assets.texture.TextureData;
+import org.terasology.engine.rendering.assets.texture.TextureRegion;
+import org.terasology.engine.world.chunks.Chunks;
+import org.terasology.joml.geom.Rectanglei;
+import org.terasology.minimap.surface.ChunkSurface;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.IdentityHashMap;
+import java.util.Map;
+
+/**
+ * Renders a chunk surface into an RGBA image on the CPU, so that a chunk tile can be uploaded
+ * as a single texture instead of being drawn cell by cell.
+ * <p>
+ * Every block column is represented by a cell that samples the top face of the block from the texture atlas.
+ * The surface block is shaded according to its height, decoration blocks are blended on top.
+ * <p>
+ * This class is not thread-safe. The returned texture data share a buffer that is overwritten by the next call.
+ */
+public class ChunkTileRasterizer {
+
+    private static final Logger logger = LoggerFactory.getLogger(ChunkTileRasterizer.class);
+
+    private final Vector2ic cellSize;
+    private final int width;
+    private final int height;
+    private final ByteBuffer pixels;
+
+    private final Map<Texture, TexturePixels> texturePixels = new IdentityHashMap<>();
+
+    /**
+     * @param cellSize the size of a single block column in pixels
+     */
+    public ChunkTileRasterizer(Vector2ic cellSize) {
+        this.cellSize = cellSize;
+        this.width = cellSize.x() * Chunks.SIZE_X;
+        this.height = cellSize.y() * Chunks.SIZE_Z;
+        this.pixels = ByteBuffer.allocateDirect(width * height * 4);
+    }
+
+    /**
+     * @param surface the surface to render
+     * @param blockRegions provides the texture region of a block id
+     * @param unknown the texture region used for columns with unknown surface
+     * @param shading maps a surface height to a brightness value in [0..1]
+     * @return the texture data of the tile (valid until the next call)
+     */
+    public TextureData rasterize(ChunkSurface surface, BlockRegionLookup blockRegions, TextureRegion unknown,
+                                 ColorTileRasterizer.HeightShading shading) {
+        for (int row = 0; row < Chunks.SIZE_Z; row++) {
+            for (int column = 0; column < Chunks.SIZE_X; column++) {
+                if (!surface.isKnown(column, row)) {
+                    drawCell(column, row, unknown, null, 1f);
+                    continue;
+                }
+                TextureRegion block = blockRegions.getRegion(surface.getBlockId(column, row));
+                short topId = surface.getTopId(column, row);
+                TextureRegion top = topId != 0 ? blockRegions.getRegion(topId) : null;
+                drawCell(column, row, block, top, shading.getBrightness(surface.getHeight(column, row)));
+            }
+        }
+        pixels.rewind();
+        return new TextureData(width, height, new ByteBuffer[]{pixels}, Texture.WrapMode.CLAMP, Texture.FilterMode.NEAREST);
+    }
+
+    private void drawCell(int column, int row, TextureRegion base, TextureRegion top, float shade) {
+        TexturePixels basePixels = getPixels(base.getTexture());
+        TexturePixels topPixels = top != null ? getPixels(top.getTexture()) : null;
+        Rectanglei baseRect = base.getPixelRegion();
+        Rectanglei topRect = top != null ? top.getPixelRegion() : null;
+
+        for (int py = 0; py < cellSize.y(); py++) {
+            for (int px = 0; px < cellSize.x(); px++) {
+                int rgba = basePixels.sample(baseRect, px, py, cellSize);
+                int r = (int) (((rgba >>> 24) & 0xFF) * shade);
+                int g = (int) (((rgba >>> 16) & 0xFF) * shade);
+                int b = (int) (((rgba >>> 8) & 0xFF) * shade);
+
+                if (topPixels != null) {
+                    int topRgba = topPixels.sample(topRect, px, py, cellSize);
+                    int alpha = topRgba & 0xFF;
+                    r = blend(r, (topRgba >>> 24) & 0xFF, alpha);
+                    g = blend(g, (topRgba >>> 16) & 0xFF, alpha);
+                    b = blend(b, (topRgba >>> 8) & 0xFF, alpha);
+                }
+
+                int offset = ((row * cellSize.y() + py) * width + column * cellSize.x() + px) * 4;
+                pixels.put(offset, (byte) r);
+                pixels.put(offset + 1, (byte) g);
+                pixels.put(offset + 2, (byte) b);
+                pixels.put(offset + 3, (byte) 0xFF);
+            }
+        }
+    }
+
+    private static int blend(int dst, int src, int alpha) {
+        return (src * alpha + dst * (255 - alpha)) / 255;
+    }
+
+    /**
+     * Computes the average color of a texture region (e.g. a block in the terrain atlas).
+     * Requires access to the texture data, like {@link #rasterize}.
+     *
+     * @return the average color in RGBA format
+     */
+    public int getAverageColor(TextureRegion region) {
+        TexturePixels texPixels = getPixels(region.getTexture());
+        Rectanglei rect = region.getPixelRegion();
+        return ColorTileRasterizer.averageColor(texPixels.rgba, texPixels.width, rect.minX, rect.minY, rect.maxX, rect.maxY);
+    }
+
+    private TexturePixels getPixels(Texture texture) {
+        return texturePixels.computeIfAbsent(texture, TexturePixels::read);
+    }
+
+    /**
+     * Provides the texture region of the top face of a block.
+     */
+    @FunctionalInterface
+    public interface BlockRegionLookup {
+
+        /**
+         * @param blockId the id of the block
+         * @return the texture region
+         */
+        TextureRegion getRegion(short blockId);
+    }
+
+    /**
+     * A CPU-side copy of the pixels of a texture (e.g. the terrain atlas) in RGBA format.
+     */
+    private static final class TexturePixels {
+        private final int width;
+        private final int[] rgba;
+
+        private TexturePixels(int width, int[] rgba) {
+            this.width = width;
+            this.rgba = rgba;
+        }
+
+        static TexturePixels read(Texture texture) {
+            TextureData data = texture.getData();
+            if (data == null || data.getBuffers() == null || data.getBuffers().length == 0) {
+                logger.warn("Pixel data of texture {} is not available", texture.getUrn());
+                return new TexturePixels(1, new int[1]);
+            }
+            ByteBuffer buffer = data.getBuffers()[0].duplicate().order(ByteOrder.BIG_ENDIAN);
+            buffer.rewind();
+            int[] rgba = new int[data.getWidth() * data.getHeight()];
+            buffer.asIntBuffer().get(rgba);
+            return new TexturePixels(data.getWidth(), rgba);
+        }
+
+        /**
+         * Samples the center of a sub-pixel of a cell, mapped to the given texture region.
+         */
+        int sample(Rectanglei region, int px, int py, Vector2ic cellSize) {
+            int x = region.minX + (2 * px + 1) * region.lengthX() / (2 * cellSize.x());
+            int y = region.minY + (2 * py + 1) * region.lengthY() / (2 * cellSize.y());
+            int idx = y * width + x;
+            return idx >= 0 && idx < rgba.length ? rgba[idx] : 0;
+        }
+    }
+}
@@ -0,0 +1,213 @@
+// Copyright 2021 The Terasology Foundation
+// SPDX-License-Identifier: Apache-2.0
+
+package org.terasology.minimap.rendering;
+
+import com.google.common.base.Preconditions;
+import org.joml.Vector2ic;
+import org.terasology.engine.world.chunks.Chunks;
+import org.terasology.math.TeraMath;
+import org.terasology.minimap.surface.ChunkSurface;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Renders a chunk surface into an RGBA image using a single (average) color per block.
+ * <p>
+ * Unlike {@link ChunkTileRasterizer}, it does not read any texture data, so it works without a graphics context.
+ * It does not keep any state, so it can be used from any thread.
+ */
+public class ColorTileRasterizer {
+
+    private final Vector2ic cellSize;
+    private final int width;
+    private final int height;
+
+    /**
+     * @param cellSize the size of a single block column in pixels
+     */
+    public ColorTileRasterizer(Vector2ic cellSize) {
+        this.cellSize = cellSize;
+        this.width = cellSize.x() * Chunks.SIZE_X;
+        this.height = cellSize.y() * Chunks.SIZE_Z;
+    }
+
+    /**
+     * @return the width of a tile in pixels
+     */
+    public int getWidth() {
+        return width;
+    }
+
+    /**
+     * @return the height of a tile in pixels
+     */
+    public int getHeight() {
+        return height;
+    }
+
+    /**
+     * Renders a tile into an array of RGBA pixels.
+     *
+     * @param surface the surface to render
+     * @param colors provides the RGBA color of a block id
+     * @param unknownColor the RGBA color of columns with unknown surface
+     * @param shading maps a surface height to a brightness value
+     * @param target the array to render to (at least width x height pixels) or <code>null</code> to create a new one
+     * @return the target array
+     */
+    public int[] rasterize(ChunkSurface surface, BlockColorLookup colors, int unknownColor, HeightShading shading, int[] target) {
+        int[] pixels = target != null ? target : new int[width * height];
+        for (int row = 0; row < Chunks.SIZE_Z; row++) {
+            for (int column = 0; column < Chunks.SIZE_X; column++) {
+                int rgba = cellColor(surface, column, row, colors, unknownColor, shading);
+                for (int py = 0; py < cellSize.y(); py++) {
+                    int offset = (row * cellSize.y() + py) * width + column * cellSize.x();
+                    for (int px = 0; px < cellSize.x(); px++) {
+                        pixels[offset + px] = rgba;
+                    }
+                }
+            }
+        }
+        return pixels;
+    }
+
+    /**
+     * Renders a tile into a buffer of RGBA bytes (e.g. for texture data).
+     * The position of the buffer is not changed.
+     *
+     * @param surface the surface to render
+     * @param colors provides the RGBA color of a block id
+     * @param unknownColor the RGBA color of columns with unknown surface
+     * @param shading maps a surface height to a brightness value
+     * @param target the buffer to render to (at least width x height x 4 bytes)
+     */
+    public void rasterizeBytes(ChunkSurface surface, BlockColorLookup colors, int unknownColor, HeightShading shading,
+                               ByteBuffer target) {
+        for (int row = 0; row < Chunks.SIZE_Z; row++) {
+            for (int column = 0; column < Chunks.SIZE_X; column++) {
+                int rgba = cellColor(surface, column, row, colors, unknownColor, shading);
+                byte r = (byte) (rgba >>> 24);
+                byte g = (byte) (rgba >>> 16);
+                byte b = (byte) (rgba >>> 8);
+                byte a = (byte) rgba;
+                for (int py = 0; py < cellSize.y(); py++) {
+                    int offset = ((row * cellSize.y() + py) * width + column * cellSize.x()) * 4;
+                    for (int px = 0; px < cellSize.x(); px++) {
+                        target.put(offset, r);
+                        target.put(offset + 1, g);
+                        target.put(offset + 2, b);
+                        target.put(offset + 3, a);
+                        offset += 4;
+                    }
+                }
+            }
+        }
+    }
+
+    private static int cellColor(ChunkSurface surface, int column, int row, BlockColorLookup colors, int unknownColor,
+                                 HeightShading shading) {
+        if (!surface.isKnown(column, row)) {
+            return unknownColor;
+        }
+        int base = colors.getColor(surface.getBlockId(column, row));
+        float shade = shading.getBrightness(surface.getHeight(column, row));
+        int r = (int) (((base >>> 24) & 0xFF) * shade);
+        int g = (int) (((base >>> 16) & 0xFF) * shade);
+        int b = (int) (((base >>> 8) & 0xFF) * shade);
+
+        short topId = surface.getTopId(column, row);
+        if (topId != 0) {
+            int top = colors.getColor(topId);
+            int alpha = top & 0xFF;
+            r = blend(r, (top >>> 24) & 0xFF, alpha);
+            g = blend(g, (top >>> 16) & 0xFF, alpha);
+            b = blend(b, (top >>> 8) & 0xFF, alpha);
+        }
+        return (r << 24) | (g << 16) | (b << 8) | 0xFF;
+    }
+
+    private static int blend(int dst, int src, int alpha) {
+        return (src * alpha + dst * (255 - alpha)) / 255;
+    }
+
+    /**
+     * Creates a shading that is darkest at the bottom height and brightest at the top height.
+     *
+     * @param bottom the height with the minimum brightness (and below)
+     * @param top the height with full brightness (and above)
+     * @return the height shading
+     */
+    public static HeightShading linearShading(int bottom, int top) {
+        Preconditions.checkArgument(top > bottom);
+
+        float minBright = 0.5f;
+        float fac = (1 - minBright) / (top - bottom);
+        return y -> TeraMath.clamp(minBright + (y - bottom) * fac);
+    }
+
+    /**
+     * Computes the average color of a region of an RGBA image. The color channels are weighted by alpha,
+     * the alpha channel is the average alpha of the region.
+     *
+     * @param rgba the pixels of the image
+     * @param imageWidth the width of the image
+     * @param minX the left border of the region (inclusive)
+     * @param minY the top border of the region (inclusive)
+     * @param maxX the right border of the region (exclusive)
+     * @param maxY the bottom border of the region (exclusive)
+     * @return the average color in RGBA format
+     */
+    public static int averageColor(int[] rgba, int imageWidth, int minX, int minY, int maxX, int maxY) {
+        long r = 0;
+        long g = 0;
+        long b = 0;
+        long a = 0;
+        int count = 0;
+        for (int y = minY; y < maxY; y++) {
+            for (int x = minX; x < maxX; x++) {
+                int idx = y * imageWidth + x;
+                if (idx < 0 || idx >= rgba.length) {
+                    continue;
+                }
+                int pixel = rgba[idx];
+                int alpha = pixel & 0xFF;
+                r += ((pixel >>> 24) & 0xFF) * alpha;
+                g += ((pixel >>> 16) & 0xFF) * alpha;
+                b += ((pixel >>> 8) & 0xFF) * alpha;
+                a += alpha;
+                count++;
+            }
+        }
+        if (a == 0) {
+            return 0;
+        }
+        return (int) (r / a) << 24 | (int) (g / a) << 16 | (int) (b / a) << 8 | (int) (a / count);
+    }
+
+    /**
+     * Provides the color of a block.
+     */
+    @FunctionalInterface
+    public interface BlockColorLookup {
+
+        /**
+         * @param blockId the id of the block
+         * @return the color in RGBA format
+         */
+        int getColor(short blockId);
+    }
+
+    /**
+     * Maps the height of the surface to a brightness value.
+     */
+    @FunctionalInterface
+    public interface HeightShading {
+
+        /**
+         * @param height the surface height
+         * @return the brightness in [0..1]
+         */
+        float getBrightness(int height);
+    }
+}
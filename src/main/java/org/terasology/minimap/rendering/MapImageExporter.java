@@ -0,0 +1,177 @@
+// Copyright 2021 The Terasology Foundation
+// SPDX-License-Identifier: Apache-2.0
+
+package org.terasology.minimap.rendering;
+
+import org.joml.Vector2i;
+import org.terasology.engine.core.module.SandboxFileManager;
+import org.terasology.engine.world.chunks.Chunks;
+import org.terasology.joml.geom.Rectanglei;
+import org.terasology.minimap.storage.PngImageWriter;
+import org.terasology.minimap.storage.SandboxFileNames;
+import org.terasology.minimap.storage.SurfaceTileStore;
+import org.terasology.minimap.surface.ChunkSurface;
+
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.util.Arrays;
+
+/**
+ * Writes the stored chunk surfaces into a PNG image with one pixel per block column.
+ * <p>
+ * The image is rendered in strips of one chunk row, which are encoded as soon as they are complete.
+ * Only one strip is kept in memory, so the memory use depends on the width of the explored area, not on its size.
+ * Chunks that have not been explored are transparent.
+ * <p>
+ * It only uses the block colors, so it works without a graphics context and can run on any thread.
+ * Files are only written through the engine's {@link SandboxFileManager}.
+ */
+public class MapImageExporter {
+
+    /**
+     * The maximum width and height of the image in pixels
+     */
+    public static final int MAX_IMAGE_SIZE = 65536;
+
+    private final SurfaceTileStore store;
+    private final ColorTileRasterizer rasterizer = new ColorTileRasterizer(new Vector2i(1, 1));
+    private final ColorTileRasterizer.BlockColorLookup blockColors;
+    private final ColorTileRasterizer.HeightShading shading;
+
+    /**
+     * @param store the store of the explored chunk surfaces
+     * @param blockColors the colors (RGBA) indexed by block id, see {@link BlockLookupTable#copyColors()}
+     * @param shading maps a surface height to a brightness value
+     */
+    public MapImageExporter(SurfaceTileStore store, int[] blockColors, ColorTileRasterizer.HeightShading shading) {
+        this.store = store;
+        this.blockColors = id -> {
+            int idx = id & 0xFFFF;
+            return idx < blockColors.length ? blockColors[idx] : 0;
+        };
+        this.shading = shading;
+    }
+
+    /**
+     * Writes all chunks of an area into an image file in the sandbox directory. The thread can be interrupted
+     * to cancel the export.
+     * <p>
+     * The image is written to a temporary file first and only copied to the given file when it is complete,
+     * so a failed export does not replace an earlier image. As the sandbox cannot delete files, the temporary
+     * file is emptied afterwards.
+     *
+     * @param chunkBounds the chunk area (the maximum is exclusive)
+     * @param files the sandboxed file access
+     * @param fileName the name of the PNG file to write (replaced if it exists), see {@link SandboxFileNames}
+     * @return the number of explored chunks in the image
+     * @throws IOException if the surfaces cannot be read or the image cannot be written
+     * @throws IllegalArgumentException if the image would be larger than {@link #MAX_IMAGE_SIZE}
+     */
+    public int export(Rectanglei chunkBounds, SandboxFileManager files, String fileName) throws IOException {
+        String tempFileName = fileName + ".part";
+        int[] chunks = {-1};
+        IOException[] error = new IOException[1];
+        try {
+            files.writeFile(tempFileName, out -> {
+                try {
+                    chunks[0] = export(chunkBounds, out);
+                } catch (IOException e) {
+                    error[0] = e;
+                }
+            });
+            if (error[0] == null && chunks[0] >= 0) {
+                files.readFile(tempFileName, in -> files.writeFile(fileName, out -> {
+                    try {
+                        in.transferTo(out);
+                    } catch (IOException e) {
+                        error[0] = e;
+                    }
+                }));
+            }
+        } finally {
+            files.writeFile(tempFileName, out -> { });
+        }
+        if (error[0] != null) {
+            throw error[0];
+        }
+        if (chunks[0] < 0) {
+            throw new IOException("Could not write " + tempFileName + " in the sandbox directory");
+        }
+        return chunks[0];
+    }
+
+    /**
+     * Writes all chunks of an area as PNG image to a stream. The thread can be interrupted to cancel the export.
+     *
+     * @param chunkBounds the chunk area (the maximum is exclusive)
+     * @param output the stream to write to, which is closed afterwards (also if the export fails)
+     * @return the number of explored chunks in the image
+     * @throws IOException if the surfaces cannot be read or the image cannot be written
+     * @throws IllegalArgumentException if the image would be larger than {@link #MAX_IMAGE_SIZE}
+     */
+    public int export(Rectanglei chunkBounds, OutputStream output) throws IOException {
+        long width = (long) chunkBounds.lengthX() * Chunks.SIZE_X;
+        long height = (long) chunkBounds.lengthY() * Chunks.SIZE_Z;
+        if (width <= 0 || height <= 0 || width > MAX_IMAGE_SIZE || height > MAX_IMAGE_SIZE) {
+            output.close();
+            throw new IllegalArgumentException("Invalid image size " + width + "x" + height);
+        }
+
+        int rowBytes = (int) width * 4;
+        byte[] strip = new byte[rowBytes * Chunks.SIZE_Z];
+        int[] pixels = new int[rasterizer.getWidth() * rasterizer.getHeight()];
+        int chunks = 0;
+
+        OutputStream out = new BufferedOutputStream(output);
+        PngImageWriter writer = null;
+        boolean complete = false;
+        try {
+            writer = new PngImageWriter(out, (int) width, (int) height);
+            for (int chunkZ = chunkBounds.minY; chunkZ < chunkBounds.maxY; chunkZ++) {
+                if (Thread.currentThread().isInterrupted()) {
+                    throw new InterruptedIOException("Map export cancelled");
+                }
+                Arrays.fill(strip, (byte) 0);
+                for (int chunkX = chunkBounds.minX; chunkX < chunkBounds.maxX; chunkX++) {
+                    ChunkSurface surface = store.load(chunkX, chunkZ);
+                    if (surface == null) {
+                        continue;
+                    }
+                    rasterizer.rasterize(surface, blockColors, MinimapTileService.UNKNOWN_COLOR, shading, pixels);
+                    copyTile(pixels, strip, (chunkX - chunkBounds.minX) * Chunks.SIZE_X * 4, rowBytes);
+                    chunks++;
+                }
+                for (int row = 0; row < Chunks.SIZE_Z; row++) {
+                    writer.writeRow(strip, row * rowBytes);
+                }
+            }
+            writer.close();
+            complete = true;
+        } finally {
+            if (!complete) {
+                if (writer != null) {
+                    writer.abort();
+                } else {
+                    out.close();
+                }
+            }
+        }
+        return chunks;
+    }
+
+    private void copyTile(int[] pixels, byte[] strip, int offset, int rowBytes) {
+        int tileWidth = rasterizer.getWidth();
+        for (int y = 0; y < rasterizer.getHeight(); y++) {
+            int idx = offset + y * rowBytes;
+            for (int x = 0; x < tileWidth; x++) {
+                int rgba = pixels[y * tileWidth + x];
+                strip[idx++] = (byte) (rgba >>> 24);
+                strip[idx++] = (byte) (rgba >>> 16);
+                strip[idx++] = (byte) (rgba >>> 8);
+                strip[idx++] = (byte) rgba;
+            }
+        }
+    }
+}
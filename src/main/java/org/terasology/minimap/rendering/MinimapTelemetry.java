@@ -0,0 +1,222 @@
+// Copyright 2021 The Terasology Foundation
+// SPDX-License-Identifier: Apache-2.0
+
+package org.terasology.minimap.rendering;
+
+import org.terasology.engine.monitoring.Activity;
+import org.terasology.engine.monitoring.PerformanceMonitor;
+
+import java.util.Locale;
+
+/**
+ * Collects the time spent in the phases of map rendering and per-frame values such as draw calls and cache sizes.
+ * The most recent samples of every measurement are kept in a {@link RollingHistogram}.
+ * <p>
+ * Disabled by default. When disabled, every call returns after checking a single flag, so the instrumentation
+ * can stay in the code. Optionally, the phases are also reported to the engine's {@link PerformanceMonitor}.
+ * <p>
+ * This class is not thread-safe and is meant to be used from the render thread only.
+ */
+public class MinimapTelemetry {
+
+    /**
+     * The number of most recent samples that are kept per measurement
+     */
+    private static final int WINDOW = 1024;
+
+    /**
+     * Timed sections of map rendering. The time is recorded in microseconds per call.
+     */
+    public enum Phase {
+        DRAW("onDraw"),
+        TILE_BUILD("tile build"),
+        DIRTY_UPDATE("dirty update"),
+        OVERLAYS("overlays"),
+        PLAYER_ARROWS("player arrows");
+
+        private final String displayName;
+
+        Phase(String displayName) {
+            this.displayName = displayName;
+        }
+    }
+
+    /**
+     * Values that are recorded once per map frame.
+     */
+    public enum Metric {
+        DRAW_CALLS("draw calls"),
+        TILES_BUILT("tiles built"),
+        TILES_EVICTED("tiles evicted"),
+        TILE_CACHE_SIZE("tile cache size"),
+        SURFACE_CACHE_SIZE("surface cache size"),
+        DIRTY_CHUNKS("dirty chunks"),
+        BUILD_QUEUE_DEPTH("build queue depth");
+
+        private final String displayName;
+
+        Metric(String displayName) {
+            this.displayName = displayName;
+        }
+    }
+
+    private static final Phase[] PHASES = Phase.values();
+    private static final Metric[] METRICS = Metric.values();
+
+    private final RollingHistogram[] phaseTimes = new RollingHistogram[PHASES.length];
+    private final RollingHistogram[] metricValues = new RollingHistogram[METRICS.length];
+    private final long[] frameValues = new long[METRICS.length];
+    private final Activity[] activities = new Activity[PHASES.length];
+    private final String[] activityNames = new String[PHASES.length];
+
+    private boolean enabled;
+    private boolean monitorEnabled;
+    private long frames;
+
+    public MinimapTelemetry() {
+        for (Phase phase : PHASES) {
+            phaseTimes[phase.ordinal()] = new RollingHistogram(WINDOW);
+            activityNames[phase.ordinal()] = "Minimap " + phase.displayName;
+        }
+        for (Metric metric : METRICS) {
+            metricValues[metric.ordinal()] = new RollingHistogram(WINDOW);
+        }
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * @param enabled true to start collecting, false to stop (collected samples are kept)
+     */
+    public void setEnabled(boolean enabled) {
+        this.enabled = enabled;
+    }
+
+    public boolean isMonitorEnabled() {
+        return monitorEnabled;
+    }
+
+    /**
+     * @param monitorEnabled true to also report the phases to the engine's performance monitor while enabled
+     */
+    public void setMonitorEnabled(boolean monitorEnabled) {
+        this.monitorEnabled = monitorEnabled;
+    }
+
+    /**
+     * Starts timing a phase. Phases can be nested, but must be ended in reverse order.
+     *
+     * @return the start time to pass to {@link #end(Phase, long)}, or 0 if disabled
+     */
+    public long begin(Phase phase) {
+        if (!enabled) {
+            return 0;
+        }
+        if (monitorEnabled) {
+            activities[phase.ordinal()] = PerformanceMonitor.startActivity(activityNames[phase.ordinal()]);
+        }
+        return System.nanoTime();
+    }
+
+    /**
+     * @param start the value returned by {@link #begin(Phase)}
+     */
+    public void end(Phase phase, long start) {
+        if (start == 0) {
+            return;
+        }
+        phaseTimes[phase.ordinal()].add((System.nanoTime() - start) / 1000);
+        Activity activity = activities[phase.ordinal()];
+        if (activity != null) {
+            activities[phase.ordinal()] = null;
+            activity.close();
+        }
+    }
+
+    /**
+     * Adds to a value of the current frame.
+     */
+    public void add(Metric metric, long amount) {
+        if (enabled) {
+            frameValues[metric.ordinal()] += amount;
+        }
+    }
+
+    /**
+     * Sets a value of the current frame, e.g. the size of a cache.
+     */
+    public void set(Metric metric, long value) {
+        if (enabled) {
+            frameValues[metric.ordinal()] = value;
+        }
+    }
+
+    /**
+     * Records the values of the current frame and starts a new one.
+     */
+    public void endFrame() {
+        if (!enabled) {
+            return;
+        }
+        for (int i = 0; i < frameValues.length; i++) {
+            metricValues[i].add(frameValues[i]);
+            frameValues[i] = 0;
+        }
+        frames++;
+    }
+
+    /**
+     * Removes all samples.
+     */
+    public void reset() {
+        for (RollingHistogram histogram : phaseTimes) {
+            histogram.clear();
+        }
+        for (RollingHistogram histogram : metricValues) {
+            histogram.clear();
+        }
+        for (int i = 0; i < frameValues.length; i++) {
+            frameValues[i] = 0;
+        }
+        frames = 0;
+    }
+
+    /**
+     * @return the distribution of the recent times of a phase in microseconds
+     */
+    public RollingHistogram getPhaseTimes(Phase phase) {
+        return phaseTimes[phase.ordinal()];
+    }
+
+    /**
+     * @return the distribution of the recent per-frame values of a metric
+     */
+    public RollingHistogram getMetricValues(Metric metric) {
+        return metricValues[metric.ordinal()];
+    }
+
+    /**
+     * @return a human-readable summary of all measurements, one per line
+     */
+    public String dump() {
+        StringBuilder sb = new StringBuilder();
+        sb.append(String.format(Locale.ROOT, "Minimap telemetry (%s, %d frames, last %d samples each)%n",
+                enabled ? "enabled" : "disabled", frames, WINDOW));
+        sb.append(String.format(Locale.ROOT, "%-20s %6s %9s %7s %7s %7s %7s%n", "phase [us]", "count", "mean", "p50", "p95", "p99", "max"));
+        for (Phase phase : PHASES) {
+            appendLine(sb, phase.displayName, phaseTimes[phase.ordinal()]);
+        }
+        sb.append(String.format(Locale.ROOT, "%-20s %6s %9s %7s %7s %7s %7s%n", "per frame", "count", "mean", "p50", "p95", "p99", "max"));
+        for (Metric metric : METRICS) {
+            appendLine(sb, metric.displayName, metricValues[metric.ordinal()]);
+        }
+        return sb.toString();
+    }
+
+    private static void appendLine(StringBuilder sb, String name, RollingHistogram histogram) {
+        sb.append(String.format(Locale.ROOT, "%-20s %6d %9.1f %7d %7d %7d %7d%n", name, histogram.getCount(), histogram.getMean(),
+                histogram.getPercentile(50), histogram.getPercentile(95), histogram.getPercentile(99), histogram.getMax()));
+    }
+}
@@ -0,0 +1,593 @@
+// Copyright 2021 The Terasology Foundation
+// SPDX-License-Identifier: Apache-2.0
+
+package org.terasology.minimap.rendering;
+
+import gnu.trove.set.TLongSet;
+import gnu.trove.set.hash.TLongHashSet;
+import org.joml.Vector2i;
+import org.joml.Vector2ic;
+import org.terasology.engine.rendering.assets.texture.Texture;
+import org.terasology.engine.rendering.assets.texture.TextureData;
+import org.terasology.engine.rendering.assets.texture.TextureRegion;
+import org.terasology.engine.utilities.Assets;
+import org.terasology.engine.world.block.BlockManager;
+import org.terasology.engine.world.chunks.Chunks;
+import org.terasology.gestalt.assets.ResourceUrn;
+import org.terasology.minimap.network.RemoteTileRequester;
+import org.terasology.minimap.storage.SurfaceTileStore;
+import org.terasology.minimap.surface.AsyncSurfaceScanner;
+import org.terasology.minimap.surface.ChunkKeys;
+import org.terasology.minimap.surface.ChunkSurface;
+import org.terasology.minimap.surface.ChunkSurfaceCache;
+import org.terasology.minimap.surface.ChunkSurfaceCodec;
+import org.terasology.minimap.surface.DirtyColumnTracker;
+import org.terasology.minimap.surface.LoadedChunkColumns;
+import org.terasology.nui.Canvas;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Owns everything that is needed to turn the world into map tiles: the chunk surfaces (scanned, stored or
+ * received from the server), the tracking of changed blocks and loaded chunks, and the tile textures of all
+ * levels of detail. Any number of map widgets can draw the tiles, while every chunk is scanned and every
+ * tile is rendered only once.
+ * <p>
+ * Widgets that keep their own copies of tiles (e.g. a {@link TileViewport}) register a {@link TileListener}
+ * to be notified when a chunk has to be rendered again.
+ * <p>
+ * This class is not thread-safe and is meant to be used from the render thread only.
+ */
+public class MinimapTileService {
+
+    /**
+     * The size of a cell (i.e. represents one block)
+     */
+    private static final Vector2ic CELL_SIZE = new Vector2i(4, 4);
+    private static final Vector2ic TILE_SIZE = new Vector2i(
+            CELL_SIZE.x() * Chunks.SIZE_X, CELL_SIZE.y() * Chunks.SIZE_Z);
+
+    /**
+     * The maximum number of scanned chunks that are added to the surface cache per frame.
+     * This is cheap, as the tiles are rendered later when they are visible.
+     */
+    private static final int MAX_UPLOADS_PER_FRAME = 64;
+
+    /**
+     * The flat color (RGBA) of block columns whose surface is unknown
+     */
+    static final int UNKNOWN_COLOR = 0x202020FF;
+
+    /**
+     * If more columns of a chunk are dirty, the entire chunk is re-scanned instead
+     */
+    private static final int FULL_REBUILD_THRESHOLD = ChunkSurface.COLUMNS / 4;
+
+    private final AsyncSurfaceScanner surfaceScanner;
+    private final ChunkSurfaceCache surfaceCache;
+    private final TileTextureCache tileCache;
+    private final TilePyramid tilePyramid;
+    private final SurfaceTileStore surfaceStore;
+
+    private final DirtyColumnTracker dirtyColumns = new DirtyColumnTracker();
+    private final LoadedChunkColumns loadedColumns = new LoadedChunkColumns();
+    private final List<TileListener> listeners = new ArrayList<>();
+    private final MinimapTelemetry telemetry = new MinimapTelemetry();
+    private long lastEvictions;
+    private boolean evictionsSampled;
+
+    /**
+     * Chunks that have been loaded from the store and not been re-scanned since
+     */
+    private final TLongSet storedChunks = new TLongHashSet();
+
+    /**
+     * Fetches surfaces from the server, <code>null</code> unless connected to a remote server
+     */
+    private RemoteTileRequester remoteTiles;
+
+    /**
+     * True if the surfaces of loaded chunks are scanned by the server system of this process
+     */
+    private boolean serverScanned;
+
+    private final Texture textureAtlas;
+    private final TextureRegion questionMark;
+    private BlockLookupTable blockTable;
+    private ColorTileRasterizer.HeightShading brightness;
+
+    private final ChunkTileRasterizer rasterizer = new ChunkTileRasterizer(CELL_SIZE);
+    private final ColorTileRasterizer colorRasterizer = new ColorTileRasterizer(CELL_SIZE);
+    private final ByteBuffer colorTile = ByteBuffer.allocateDirect(TILE_SIZE.x() * TILE_SIZE.y() * 4);
+    private final ColorTileRasterizer.BlockColorLookup blockColorLookup = id -> blockTable.getColor(id);
+    private final ChunkTileRasterizer.BlockRegionLookup blockRegionLookup = id -> blockTable.getRegion(id);
+
+    private int frameCenterY;
+    private final TilePyramid.TileSource chunkTiles = (chunkX, chunkZ) -> getChunkTile(chunkX, chunkZ, frameCenterY, false);
+
+    /**
+     * @param surfaceScanner scans the surfaces of loaded chunks and loads stored ones in the background
+     * @param surfaceCache keeps the surfaces of recently used chunks in memory
+     * @param tileCache the chunk tile textures
+     * @param tilePyramid the tile textures of the coarser levels of detail
+     * @param surfaceStore persists the surfaces of explored chunks
+     */
+    public MinimapTileService(AsyncSurfaceScanner surfaceScanner, ChunkSurfaceCache surfaceCache,
+                              TileTextureCache tileCache, TilePyramid tilePyramid, SurfaceTileStore surfaceStore) {
+        this.surfaceScanner = surfaceScanner;
+        this.surfaceCache = surfaceCache;
+        this.tileCache = tileCache;
+        this.tilePyramid = tilePyramid;
+        this.surfaceStore = surfaceStore;
+        textureAtlas = Assets.getTexture("engine:terrain").get();
+        questionMark = Assets.getTextureRegion("engine:items#questionMark").get();
+    }
+
+    /**
+     * @return the size of a chunk tile texture in pixels
+     */
+    public static Vector2ic getTileSize() {
+        return TILE_SIZE;
+    }
+
+    /**
+     * @return the size of a block in a chunk tile texture in pixels
+     */
+    public static Vector2ic getCellSize() {
+        return CELL_SIZE;
+    }
+
+    public void setHeightRange(int bottom, int top) {
+        brightness = ColorTileRasterizer.linearShading(bottom, top);
+    }
+
+    public void setBlockManager(BlockManager blockManager) {
+        blockTable = new BlockLookupTable(blockManager, textureAtlas, rasterizer::getAverageColor);
+        blockTable.fill();
+    }
+
+    /**
+     * @return the store of the explored chunk surfaces
+     */
+    public SurfaceTileStore getSurfaceStore() {
+        return surfaceStore;
+    }
+
+    public void setRemoteTiles(RemoteTileRequester remoteTiles) {
+        this.remoteTiles = remoteTiles;
+    }
+
+    /**
+     * @param serverScanned true if the surfaces of all loaded chunks are scanned and patched by the server system
+     *                      of this process (on a listen server) and passed to {@link #onServerSurface}, so they
+     *                      are loaded from the shared store instead of being scanned twice
+     */
+    public void setServerScanned(boolean serverScanned) {
+        this.serverScanned = serverScanned;
+    }
+
+    /**
+     * @return the telemetry of all map widgets that use this service
+     */
+    public MinimapTelemetry getTelemetry() {
+        return telemetry;
+    }
+
+    /**
+     * @param listener notified whenever the tiles of a chunk have to be rendered again
+     */
+    public void addListener(TileListener listener) {
+        listeners.add(listener);
+    }
+
+    /**
+     * @param listener the listener to remove
+     */
+    public void removeListener(TileListener listener) {
+        listeners.remove(listener);
+    }
+
+    /**
+     * Starts a new frame of a map widget. Scan results that arrived in the meantime are added to the cache.
+     * This can be called by every widget - tiles used since the latest call are never evicted.
+     *
+     * @param centerChunkX the chunk x coordinate of the view center (tiles far away from it are evicted first)
+     * @param centerChunkZ the chunk z coordinate of the view center
+     * @param centerY the height to start searching for the surface of chunks that have not been scanned
+     */
+    public void beginFrame(int centerChunkX, int centerChunkZ, int centerY) {
+        frameCenterY = centerY;
+        tileCache.beginFrame(centerChunkX, centerChunkZ);
+        tilePyramid.beginFrame(centerChunkX, centerChunkZ);
+        uploadScannedChunks();
+    }
+
+    /**
+     * Ends the frame of a map widget and sends the collected requests to the server.
+     */
+    public void endFrame() {
+        if (remoteTiles != null) {
+            remoteTiles.flush();
+        }
+        if (telemetry.isEnabled()) {
+            long evictions = tileCache.getEvictions();
+            if (evictionsSampled) {
+                telemetry.set(MinimapTelemetry.Metric.TILES_EVICTED, evictions - lastEvictions);
+            }
+            lastEvictions = evictions;
+            evictionsSampled = true;
+            telemetry.set(MinimapTelemetry.Metric.TILE_CACHE_SIZE, tileCache.size());
+            telemetry.set(MinimapTelemetry.Metric.SURFACE_CACHE_SIZE, surfaceCache.size());
+            telemetry.set(MinimapTelemetry.Metric.DIRTY_CHUNKS, dirtyColumns.getDirtyChunkCount());
+        } else {
+            evictionsSampled = false;
+        }
+        telemetry.endFrame();
+    }
+
+    /**
+     * Starts collecting scan requests, so they are processed in parallel.
+     *
+     * @see AsyncSurfaceScanner#beginBatch()
+     */
+    public void beginBatch() {
+        surfaceScanner.beginBatch();
+    }
+
+    /**
+     * Submits the collected scan requests.
+     *
+     * @see AsyncSurfaceScanner#endBatch()
+     */
+    public void endBatch() {
+        surfaceScanner.endBatch();
+    }
+
+    /**
+     * Notifies the service that a block has changed. The block column is re-scanned when the chunk is used next,
+     * unless the surfaces are scanned by the server system of this process, which passes the patched surface
+     * to {@link #onServerSurface}.
+     */
+    public void blockChanged(int x, int y, int z) {
+        if (serverScanned) {
+            return;
+        }
+        int chunkX = x >> Chunks.POWER_X;
+        int chunkZ = z >> Chunks.POWER_Z;
+        dirtyColumns.markDirty(x, y, z);
+        tilePyramid.invalidate(chunkX, chunkZ);
+        notifyListeners(chunkX, chunkZ);
+    }
+
+    /**
+     * Notifies the service that a chunk has been loaded. Tiles of chunk columns that become ready are re-rendered.
+     */
+    public void onChunkLoaded(int chunkX, int chunkY, int chunkZ) {
+        if (loadedColumns.chunkLoaded(chunkX, chunkY, chunkZ)) {
+            notifyListeners(chunkX, chunkZ);
+        }
+    }
+
+    /**
+     * Notifies the service that a chunk is about to be unloaded. The tile of the chunk column remains available,
+     * but its surface is removed from the cache (it can be re-loaded from the store).
+     */
+    public void onChunkUnloaded(int chunkX, int chunkY, int chunkZ) {
+        if (loadedColumns.chunkUnloaded(chunkX, chunkY, chunkZ)) {
+            // changes can't be scanned anymore - they'll be picked up when the chunk is loaded again
+            dirtyColumns.clear(chunkX, chunkZ);
+            surfaceCache.remove(chunkX, chunkZ);
+        }
+    }
+
+    /**
+     * Adds a chunk surface that has been received from the server. It is stored like an explored chunk,
+     * so it is re-scanned once the chunk is loaded locally.
+     */
+    public void onRemoteSurface(ChunkSurface surface) {
+        int chunkX = surface.getChunkX();
+        int chunkZ = surface.getChunkZ();
+        if (remoteTiles != null) {
+            remoteTiles.received(chunkX, chunkZ);
+        }
+        if (isChunkRelevant(chunkX, chunkZ)) {
+            // the local scan is more recent
+            return;
+        }
+        storedChunks.add(ChunkKeys.pack(chunkX, chunkZ));
+        surfaceCache.put(surface);
+        surfaceStore.save(surface);
+        invalidateTiles(chunkX, chunkZ);
+    }
+
+    /**
+     * Notifies the service that the server system of this process has scanned (or patched) and stored a chunk surface.
+     * It replaces the surface in the cache; otherwise it is loaded from the store when the chunk is used next.
+     *
+     * @param surface the new surface (not modified by the server afterwards)
+     * @see #setServerScanned(boolean)
+     */
+    public void onServerSurface(ChunkSurface surface) {
+        if (surfaceCache.remove(surface.getChunkX(), surface.getChunkZ()) != null) {
+            surfaceCache.put(surface);
+        }
+        invalidateTiles(surface.getChunkX(), surface.getChunkZ());
+    }
+
+    /**
+     * Applies column changes that have been received from the server to a stored chunk surface.
+     * Patches for chunks that are loaded locally (their changes are tracked by {@link #blockChanged})
+     * or that are not known at all are ignored.
+     *
+     * @param patch the patch created by {@link ChunkSurfaceCodec#encodePatch}
+     * @throws IllegalArgumentException if the patch is malformed
+     */
+    public void onRemotePatch(int chunkX, int chunkZ, byte[] patch) {
+        if (isChunkRelevant(chunkX, chunkZ)) {
+            return;
+        }
+        ChunkSurface surface = surfaceCache.get(chunkX, chunkZ);
+        if (surface == null) {
+            surface = surfaceStore.load(chunkX, chunkZ);
+            if (surface == null) {
+                return;
+            }
+            storedChunks.add(ChunkKeys.pack(chunkX, chunkZ));
+            surfaceCache.put(surface);
+        }
+        ChunkSurfaceCodec.applyPatch(surface, patch);
+        surfaceStore.save(surface);
+        invalidateTiles(chunkX, chunkZ);
+    }
+
+    /**
+     * @return true if blocks of the chunk have changed since its surface was scanned
+     */
+    public boolean isDirty(int chunkX, int chunkZ) {
+        return dirtyColumns.isDirty(chunkX, chunkZ);
+    }
+
+    /**
+     * Returns a tile of the given level of detail, rendering it if it is missing or outdated.
+     * A tile of level <code>n</code> covers 2<sup>n</sup> x 2<sup>n</sup> chunks. The textures of level 0 are
+     * the chunk tiles, the textures of all coarser levels are upside down.
+     *
+     * @param canvas the canvas to use for rendering coarse tiles
+     * @param level the level of detail, from 0 to {@link #getMaxLevel()}
+     * @param tileX the x coordinate of the tile (in units of 2<sup>level</sup> chunks)
+     * @param tileZ the z coordinate of the tile (in units of 2<sup>level</sup> chunks)
+     * @return the tile texture or <code>null</code> if not available (yet)
+     */
+    public Texture getTile(Canvas canvas, int level, int tileX, int tileZ) {
+        return getTile(canvas, level, tileX, tileZ, false);
+    }
+
+    /**
+     * Returns a tile of the given level of detail, rendering it if it is missing or outdated.
+     *
+     * @param detailed whether a level 0 tile should be rendered with the block textures, e.g. because its cells
+     *                 are drawn at least at their native size
+     * @see #getTile(Canvas, int, int, int)
+     */
+    public Texture getTile(Canvas canvas, int level, int tileX, int tileZ, boolean detailed) {
+        if (level == 0) {
+            return getChunkTile(tileX, tileZ, frameCenterY, detailed);
+        }
+        return tilePyramid.get(canvas, level, tileX, tileZ, chunkTiles);
+    }
+
+    /**
+     * @return the coarsest level of detail that {@link #getTile} provides
+     */
+    public int getMaxLevel() {
+        return tilePyramid.getMaxLevel();
+    }
+
+    /**
+     * Returns the tile texture of a chunk. If it is not available or outdated, it is re-created from the
+     * chunk surface.
+     *
+     * @param detailed whether the tile needs the block textures, otherwise a tile with flat colors is rendered
+     *                 (but a cached detailed tile is used as well)
+     * @return the tile texture or <code>null</code> if not available (yet)
+     */
+    private Texture getChunkTile(int chunkX, int chunkZ, int centerY, boolean detailed) {
+        Texture texture = tileCache.get(chunkX, chunkZ);
+        boolean upgrade = detailed && texture != null && !tileCache.isDetailed(chunkX, chunkZ);
+        if (texture == null || upgrade || dirtyColumns.isDirty(chunkX, chunkZ)
+                || storedChunks.contains(ChunkKeys.pack(chunkX, chunkZ))) {
+            ChunkSurface surface = getChunkSurface(chunkX, chunkZ, centerY);
+            // getChunkSurface invalidates the tile if it has changed
+            if (surface != null && (texture == null || tileCache.getUrn(chunkX, chunkZ) == null
+                    || detailed && !tileCache.isDetailed(chunkX, chunkZ))) {
+                texture = renderTile(surface, detailed);
+            }
+        }
+        return texture;
+    }
+
+    /**
+     * Returns the surface of a chunk. If it is not available, a background scan (or load from the store)
+     * of the chunk is requested. Dirty blocks are applied before the surface is returned.
+     *
+     * @param centerY the height to start searching for the surface layer if the chunk is scanned
+     * @return the chunk surface or <code>null</code> if not available (yet)
+     */
+    public ChunkSurface getChunkSurface(int chunkX, int chunkZ, int centerY) {
+        ChunkSurface surface = surfaceCache.get(chunkX, chunkZ);
+        long key = ChunkKeys.pack(chunkX, chunkZ);
+
+        if (surface == null) {
+            if (!surfaceScanner.isPending(chunkX, chunkZ)) {
+                // request a background scan of the chunk surface
+                // the tile is rendered once the scan result is available
+                if (isChunkRelevant(chunkX, chunkZ) && !serverScanned) {
+                    if (surfaceScanner.request(chunkX, chunkZ, centerY)) {
+                        dirtyColumns.clear(chunkX, chunkZ);
+                    }
+                } else if (surfaceStore.contains(chunkX, chunkZ)) {
+                    // the chunk is not loaded, but has been explored before
+                    surfaceScanner.requestStored(chunkX, chunkZ, surfaceStore);
+                    storedChunks.add(key);
+                } else if (remoteTiles != null) {
+                    // the chunk might have been explored by another player
+                    remoteTiles.request(chunkX, chunkZ);
+                }
+            }
+            return null;
+        }
+
+        if (!serverScanned && storedChunks.contains(key) && !surfaceScanner.isPending(chunkX, chunkZ)
+                && isChunkRelevant(chunkX, chunkZ)) {
+            // the stored surface might be outdated - re-scan it now that the chunk is loaded
+            surfaceScanner.request(chunkX, chunkZ, centerY);
+            storedChunks.remove(key);
+        }
+
+        if (dirtyColumns.isDirty(chunkX, chunkZ)) {
+            updateDirtyColumns(surface, centerY);
+        }
+        return surface;
+    }
+
+    /**
+     * Returns the surface of a chunk if it is in memory, without requesting it.
+     *
+     * @return the chunk surface or <code>null</code> if not available
+     */
+    public ChunkSurface getCachedSurface(int chunkX, int chunkZ) {
+        return surfaceCache.get(chunkX, chunkZ);
+    }
+
+    private boolean isChunkRelevant(int chunkX, int chunkZ) {
+        return loadedColumns.isReady(chunkX, chunkZ);
+    }
+
+    /**
+     * Adds chunks that have been scanned in the background to the surface cache and marks their tiles as outdated.
+     * At most {@link #MAX_UPLOADS_PER_FRAME} chunks are processed, the rest is deferred to the next frames.
+     */
+    private void uploadScannedChunks() {
+        for (int i = 0; i < MAX_UPLOADS_PER_FRAME; i++) {
+            ChunkSurface surface = surfaceScanner.poll();
+            if (surface == null) {
+                return;
+            }
+            surfaceCache.put(surface);
+            if (!storedChunks.contains(ChunkKeys.pack(surface.getChunkX(), surface.getChunkZ()))) {
+                surfaceStore.save(surface);
+            }
+            invalidateTiles(surface.getChunkX(), surface.getChunkZ());
+        }
+    }
+
+    /**
+     * Marks all tiles that show the given chunk as outdated. They are re-rendered when they are visible.
+     */
+    private void invalidateTiles(int chunkX, int chunkZ) {
+        tileCache.invalidate(chunkX, chunkZ);
+        tilePyramid.invalidate(chunkX, chunkZ);
+        notifyListeners(chunkX, chunkZ);
+    }
+
+    private void notifyListeners(int chunkX, int chunkZ) {
+        for (int i = 0; i < listeners.size(); i++) {
+            listeners.get(i).onTileChanged(chunkX, chunkZ);
+        }
+    }
+
+    /**
+     * Renders a chunk surface into a (new or recycled) tile texture of the tile cache.
+     *
+     * @return the tile texture
+     */
+    private Texture renderTile(ChunkSurface surface, boolean detailed) {
+        ResourceUrn urn = tileCache.allocate(surface.getChunkX(), surface.getChunkZ(), detailed);
+        // block textures are only recognizable when the cells are drawn at least at their native size,
+        // so the coarse levels and zoomed out maps use flat tiles, which are much cheaper to render
+        Assets.generateAsset(urn, detailed ? renderFullChunk(surface) : renderFlatChunk(surface), Texture.class);
+        return tileCache.get(surface.getChunkX(), surface.getChunkZ());
+    }
+
+    /**
+     * Renders a chunk surface with the textures of its blocks.
+     *
+     * @return the texture data of the tile (valid until the next call)
+     */
+    public TextureData renderFullChunk(ChunkSurface surface) {
+        long start = telemetry.begin(MinimapTelemetry.Phase.TILE_BUILD);
+        TextureData data = rasterizer.rasterize(surface, blockRegionLookup, questionMark, brightness);
+        telemetry.end(MinimapTelemetry.Phase.TILE_BUILD, start);
+        telemetry.add(MinimapTelemetry.Metric.TILES_BUILT, 1);
+        return data;
+    }
+
+    /**
+     * Renders a chunk surface with the average color of every block instead of its texture.
+     *
+     * @return the texture data of the tile (valid until the next call)
+     */
+    public TextureData renderFlatChunk(ChunkSurface surface) {
+        long start = telemetry.begin(MinimapTelemetry.Phase.TILE_BUILD);
+        colorRasterizer.rasterizeBytes(surface, blockColorLookup, UNKNOWN_COLOR, brightness, colorTile);
+        colorTile.rewind();
+        telemetry.end(MinimapTelemetry.Phase.TILE_BUILD, start);
+        telemetry.add(MinimapTelemetry.Metric.TILES_BUILT, 1);
+        return new TextureData(TILE_SIZE.x(), TILE_SIZE.y(), new ByteBuffer[]{colorTile},
+                Texture.WrapMode.CLAMP, Texture.FilterMode.NEAREST);
+    }
+
+    private void updateDirtyColumns(ChunkSurface surface, int centerY) {
+        int chunkX = surface.getChunkX();
+        int chunkZ = surface.getChunkZ();
+        if (serverScanned) {
+            // the server system patches the shared store and passes the new surface to onServerSurface
+            dirtyColumns.clear(chunkX, chunkZ);
+            return;
+        }
+        if (dirtyColumns.getDirtyCount(chunkX, chunkZ) > FULL_REBUILD_THRESHOLD) {
+            // re-scan the entire chunk in the background, the current tile is shown until it is done
+            if (surfaceScanner.request(chunkX, chunkZ, centerY)) {
+                dirtyColumns.clear(chunkX, chunkZ);
+            }
+            return;
+        }
+
+        long start = telemetry.begin(MinimapTelemetry.Phase.DIRTY_UPDATE);
+        dirtyColumns.drain(chunkX, chunkZ, (column, row, maxY) -> renderDirtyBlock(surface, column, row, maxY));
+        telemetry.end(MinimapTelemetry.Phase.DIRTY_UPDATE, start);
+        surfaceStore.save(surface);
+        invalidateTiles(chunkX, chunkZ);
+    }
+
+    private void renderDirtyBlock(ChunkSurface surface, int column, int row, int maxY) {
+        // start at the highest changed block, unless it is below the known surface (e.g. in a cave)
+        int startY = Math.max(maxY, surface.getHeight(column, row));
+        surfaceScanner.getScanner().scanColumn(surface, column, row, startY);
+    }
+
+    /**
+     * Disposes all tile textures. Surfaces remain in the store.
+     */
+    public void dispose() {
+        tileCache.dispose();
+        tilePyramid.dispose();
+        listeners.clear();
+    }
+
+    /**
+     * Notified whenever the tiles of a chunk are outdated, e.g. because blocks have changed or a new surface
+     * is available.
+     */
+    @FunctionalInterface
+    public interface TileListener {
+
+        /**
+         * @param chunkX the chunk x coordinate
+         * @param chunkZ the chunk z coordinate
+         */
+        void onTileChanged(int chunkX, int chunkZ);
+    }
+}
@@ -0,0 +1,174 @@
+// Copyright 2021 The Terasology Foundation
+// SPDX-License-Identifier: Apache-2.0
+
+package org.terasology.minimap.rendering;
+
+import gnu.trove.list.TLongList;
+import gnu.trove.list.array.TLongArrayList;
+import org.joml.Vector2i;
+import org.terasology.engine.rendering.assets.texture.Texture;
+import org.terasology.engine.rendering.nui.CanvasUtility;
+import org.terasology.engine.utilities.Assets;
+import org.terasology.gestalt.assets.ResourceUrn;
+import org.terasology.joml.geom.Rectanglei;
+import org.terasology.minimap.overlays.CachedMinimapOverlay;
+import org.terasology.nui.Canvas;
+import org.terasology.nui.ScaleMode;
+import org.terasology.nui.SubRegion;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Keeps the output of {@link CachedMinimapOverlay}s in offscreen layers.
+ * <p>
+ * Every group of overlays that are rendered next to each other (in z order) gets its own layer. A layer covers
+ * the visible world area plus a margin of {@link #MARGIN} times its size on every side. It is re-rendered when
+ * the view leaves the covered area, the zoom changes, or the group or the version of one of its overlays changes.
+ * Otherwise the visible part of the layer is drawn with a single draw call.
+ * <p>
+ * Layers are rendered to FBOs, so their textures are upside down.
+ * <p>
+ * This class is not thread-safe and is meant to be used from the render thread only.
+ */
+public class OverlayLayerCache {
+
+    private static final String URN_PREFIX = "Minimap:overlaylayer";
+
+    /**
+     * The covered area around the visible area, relative to its size
+     */
+    private static final float MARGIN = 0.5f;
+
+    /**
+     * The maximum relative change of the zoom that is tolerated before a layer is re-rendered.
+     * The visible world area is rounded to full blocks, so its size varies slightly while the view moves.
+     */
+    private static final float SCALE_TOLERANCE = 0.02f;
+
+    /**
+     * The maximum width and height of a layer texture
+     */
+    private static final int MAX_LAYER_SIZE = 4096;
+
+    private final List<Layer> layers = new ArrayList<>();
+    private int nextLayer;
+
+    private long renders;
+
+    /**
+     * Starts a new frame. Layers are assigned to the overlay groups in the order of the {@link #draw} calls.
+     */
+    public void beginFrame() {
+        nextLayer = 0;
+    }
+
+    /**
+     * Draws a group of overlays from the next layer, re-rendering the layer if necessary.
+     *
+     * @param canvas the canvas to draw on (its region is the visible map area)
+     * @param worldRect the visible world area
+     * @param overlays the overlays of the group in z order
+     */
+    public void draw(Canvas canvas, Rectanglei worldRect, List<CachedMinimapOverlay> overlays) {
+        if (nextLayer == layers.size()) {
+            layers.add(new Layer(new ResourceUrn(URN_PREFIX + layers.size())));
+        }
+        Layer layer = layers.get(nextLayer++);
+        Rectanglei screen = canvas.getRegion();
+        if (worldRect.lengthX() <= 0 || worldRect.lengthY() <= 0) {
+            return;
+        }
+        float scaleX = (float) screen.lengthX() / worldRect.lengthX();
+        float scaleY = (float) screen.lengthY() / worldRect.lengthY();
+
+        if (!layer.isValid(worldRect, scaleX, scaleY, overlays)) {
+            render(canvas, layer, worldRect, scaleX, scaleY, overlays);
+        }
+        if (layer.texture == null || layer.texture.isDisposed()) {
+            layer.texture = Assets.get(layer.urn, Texture.class).orElse(null);
+            if (layer.texture == null) {
+                return;
+            }
+        }
+
+        Rectanglei covered = layer.worldRect;
+        float u = (float) (worldRect.minX - covered.minX) / covered.lengthX();
+        float v = (float) (worldRect.minY - covered.minY) / covered.lengthY();
+        float uw = (float) worldRect.lengthX() / covered.lengthX();
+        float vh = (float) worldRect.lengthY() / covered.lengthY();
+        // FBO textures are upside down
+        canvas.drawTextureRaw(layer.texture, screen, ScaleMode.STRETCH, u, 1f - v, uw, -vh);
+    }
+
+    private void render(Canvas canvas, Layer layer, Rectanglei worldRect, float scaleX, float scaleY,
+                        List<CachedMinimapOverlay> overlays) {
+        int marginX = Math.round(worldRect.lengthX() * MARGIN);
+        int marginY = Math.round(worldRect.lengthY() * MARGIN);
+        layer.worldRect.set(worldRect.minX - marginX, worldRect.minY - marginY,
+                worldRect.maxX + marginX, worldRect.maxY + marginY);
+        layer.size.set(Math.min(MAX_LAYER_SIZE, Math.round(layer.worldRect.lengthX() * scaleX)),
+                Math.min(MAX_LAYER_SIZE, Math.round(layer.worldRect.lengthY() * scaleY)));
+        layer.scaleX = scaleX;
+        layer.scaleY = scaleY;
+
+        layer.overlays.clear();
+        layer.versions.clear();
+        try (SubRegion ignored = CanvasUtility.subRegionFBO(canvas, layer.urn, layer.size)) {
+            for (CachedMinimapOverlay overlay : overlays) {
+                overlay.render(canvas, layer.worldRect);
+                layer.overlays.add(overlay);
+                layer.versions.add(overlay.getVersion());
+            }
+        }
+        layer.texture = null;
+        renders++;
+    }
+
+    /**
+     * @return the number of times a layer has been re-rendered
+     */
+    public long getRenderCount() {
+        return renders;
+    }
+
+    /**
+     * Disposes all layer textures.
+     */
+    public void dispose() {
+        for (Layer layer : layers) {
+            Assets.get(layer.urn, Texture.class).ifPresent(Texture::dispose);
+        }
+        layers.clear();
+    }
+
+    private static final class Layer {
+        private final ResourceUrn urn;
+        private final Rectanglei worldRect = new Rectanglei();
+        private final Vector2i size = new Vector2i();
+        private final List<CachedMinimapOverlay> overlays = new ArrayList<>();
+        private final TLongList versions = new TLongArrayList();
+        private float scaleX;
+        private float scaleY;
+        private Texture texture;
+
+        Layer(ResourceUrn urn) {
+            this.urn = urn;
+        }
+
+        boolean isValid(Rectanglei view, float viewScaleX, float viewScaleY, List<CachedMinimapOverlay> group) {
+            if (overlays.size() != group.size()) {
+                return false;
+            }
+            for (int i = 0; i < group.size(); i++) {
+                if (overlays.get(i) != group.get(i) || versions.get(i) != group.get(i).getVersion()) {
+                    return false;
+                }
+            }
+            return Math.abs(viewScaleX - scaleX) <= scaleX * SCALE_TOLERANCE
+                    && Math.abs(viewScaleY - scaleY) <= scaleY * SCALE_TOLERANCE
+                    && view.minX >= worldRect.minX && view.minY >= worldRect.minY
+                    && view.maxX <= worldRect.maxX && view.maxY <= worldRect.maxY;
+        }
+    }
+}
@@ -0,0 +1,79 @@
+// Copyright 2021 The Terasology Foundation
+// SPDX-License-Identifier: Apache-2.0
+
+package org.terasology.minimap.rendering;
+
+import java.util.Arrays;
+
+/**
+ * Keeps the most recent samples of a value in a ring buffer, so its distribution can be reported
+ * without the influence of old samples. Adding a sample does not allocate; percentiles are computed
+ * on demand by sorting a copy of the samples.
+ * <p>
+ * This class is not thread-safe.
+ */
+public class RollingHistogram {
+
+    private final long[] samples;
+    private long[] sorted;
+    private int next;
+    private int count;
+
+    /**
+     * @param window the number of most recent samples that are kept
+     */
+    public RollingHistogram(int window) {
+        samples = new long[window];
+    }
+
+    public void add(long value) {
+        samples[next] = value;
+        next = (next + 1) % samples.length;
+        count = Math.min(count + 1, samples.length);
+        sorted = null;
+    }
+
+    /**
+     * @return the number of samples in the window
+     */
+    public int getCount() {
+        return count;
+    }
+
+    public double getMean() {
+        if (count == 0) {
+            return 0;
+        }
+        long sum = 0;
+        for (int i = 0; i < count; i++) {
+            sum += samples[i];
+        }
+        return (double) sum / count;
+    }
+
+    /**
+     * @param percentile the percentile, from 0 to 100
+     * @return the smallest sample that is not exceeded by the given percentage of samples, or 0 if there are none
+     */
+    public long getPercentile(double percentile) {
+        if (count == 0) {
+            return 0;
+        }
+        if (sorted == null) {
+            sorted = Arrays.copyOf(samples, count);
+            Arrays.sort(sorted);
+        }
+        int index = (int) Math.ceil(percentile / 100 * count) - 1;
+        return sorted[Math.max(0, Math.min(count - 1, index))];
+    }
+
+    public long getMax() {
+        return getPercentile(100);
+    }
+
+    public void clear() {
+        next = 0;
+        count = 0;
+        sorted = null;
+    }
+}
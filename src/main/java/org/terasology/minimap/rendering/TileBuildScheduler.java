@@ -0,0 +1,157 @@
+// Copyright 2021 The Terasology Foundation
+// SPDX-License-Identifier: Apache-2.0
+
+package org.terasology.minimap.rendering;
+
+import java.util.Arrays;
+
+/**
+ * Orders pending chunk tile builds by their distance from the view center and runs as many of them as
+ * fit into a time budget. Builds that do not fit are left to the caller (e.g. to draw a placeholder)
+ * and should be scheduled again in the next frame.
+ * <p>
+ * At least one build is run per call, so progress is made even with a very small budget.
+ * This class is not thread-safe and is meant to be used from the render thread only.
+ */
+public class TileBuildScheduler {
+
+    private int[] chunkXs = new int[64];
+    private int[] chunkZs = new int[64];
+    /**
+     * Sort keys: the squared distance in the upper 32 bits, the entry index in the lower 32 bits
+     */
+    private long[] order = new long[64];
+    private int size;
+
+    private long budgetNanos;
+
+    private int queueDepth;
+    private long builds;
+    private long buildNanos;
+    private long maxBuildNanos;
+
+    /**
+     * @param budgetMicros the maximum time spent on tile builds per frame in microseconds
+     */
+    public TileBuildScheduler(long budgetMicros) {
+        setBudgetMicros(budgetMicros);
+    }
+
+    /**
+     * Removes all scheduled builds.
+     */
+    public void clear() {
+        size = 0;
+    }
+
+    /**
+     * Schedules the tile build of a chunk.
+     */
+    public void add(int chunkX, int chunkZ) {
+        if (size == chunkXs.length) {
+            chunkXs = Arrays.copyOf(chunkXs, size * 2);
+            chunkZs = Arrays.copyOf(chunkZs, size * 2);
+            order = Arrays.copyOf(order, size * 2);
+        }
+        chunkXs[size] = chunkX;
+        chunkZs[size] = chunkZ;
+        size++;
+    }
+
+    /**
+     * Runs the scheduled builds, closest to the given center first, until the time budget is used up.
+     *
+     * @param centerChunkX the chunk x coordinate of the view center
+     * @param centerChunkZ the chunk z coordinate of the view center
+     * @param builder builds the tile of a chunk
+     * @param deferred receives the chunks that have not been built (in order of priority)
+     * @return the number of chunks that have been built
+     */
+    public int run(int centerChunkX, int centerChunkZ, TileBuilder builder, TileBuilder deferred) {
+        for (int i = 0; i < size; i++) {
+            long dx = chunkXs[i] - centerChunkX;
+            long dz = chunkZs[i] - centerChunkZ;
+            long dist = Math.min(dx * dx + dz * dz, Integer.MAX_VALUE);
+            order[i] = (dist << 32) | i;
+        }
+        Arrays.sort(order, 0, size);
+
+        long start = System.nanoTime();
+        long now = start;
+        int built = 0;
+        while (built < size && (built == 0 || now - start < budgetNanos)) {
+            int idx = (int) order[built];
+            builder.build(chunkXs[idx], chunkZs[idx]);
+            long end = System.nanoTime();
+            long duration = end - now;
+            buildNanos += duration;
+            maxBuildNanos = Math.max(maxBuildNanos, duration);
+            builds++;
+            now = end;
+            built++;
+        }
+
+        for (int i = built; i < size; i++) {
+            int idx = (int) order[i];
+            deferred.build(chunkXs[idx], chunkZs[idx]);
+        }
+        queueDepth = size - built;
+        size = 0;
+        return built;
+    }
+
+    /**
+     * @param budgetMicros the maximum time spent on tile builds per frame in microseconds
+     */
+    public void setBudgetMicros(long budgetMicros) {
+        this.budgetNanos = budgetMicros * 1000;
+    }
+
+    /**
+     * @return the maximum time spent on tile builds per frame in microseconds
+     */
+    public long getBudgetMicros() {
+        return budgetNanos / 1000;
+    }
+
+    /**
+     * @return the number of builds that have been deferred in the last run
+     */
+    public int getQueueDepth() {
+        return queueDepth;
+    }
+
+    /**
+     * @return the total number of tile builds
+     */
+    public long getBuildCount() {
+        return builds;
+    }
+
+    /**
+     * @return the average duration of a tile build in microseconds
+     */
+    public double getAverageBuildMicros() {
+        return builds == 0 ? 0 : buildNanos / 1000.0 / builds;
+    }
+
+    /**
+     * @return the maximum duration of a tile build in microseconds
+     */
+    public double getMaxBuildMicros() {
+        return maxBuildNanos / 1000.0;
+    }
+
+    /**
+     * Builds (or otherwise handles) the tile of a chunk.
+     */
+    @FunctionalInterface
+    public interface TileBuilder {
+
+        /**
+         * @param chunkX the chunk x coordinate
+         * @param chunkZ the chunk z coordinate
+         */
+        void build(int chunkX, int chunkZ);
+    }
+}
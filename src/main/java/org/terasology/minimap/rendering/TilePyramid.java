@@ -0,0 +1,189 @@
+// Copyright 2021 The Terasology Foundation
+// SPDX-License-Identifier: Apache-2.0
+
+package org.terasology.minimap.rendering;
+
+import gnu.trove.set.TLongSet;
+import gnu.trove.set.hash.TLongHashSet;
+import org.joml.Vector2ic;
+import org.terasology.engine.rendering.assets.texture.Texture;
+import org.terasology.engine.rendering.nui.CanvasUtility;
+import org.terasology.gestalt.assets.ResourceUrn;
+import org.terasology.joml.geom.Rectanglei;
+import org.terasology.minimap.surface.ChunkKeys;
+import org.terasology.nui.Canvas;
+import org.terasology.nui.Color;
+import org.terasology.nui.ScaleMode;
+import org.terasology.nui.SubRegion;
+import org.terasology.nui.util.RectUtility;
+
+/**
+ * A pyramid of coarser tiles for zoomed-out views. A tile of level <code>n</code> covers 2<sup>n</sup> x 2<sup>n</sup>
+ * chunks and has the same size as a chunk tile. It is built by downsampling the four tiles of level <code>n-1</code>
+ * that it covers. Level 0 contains the chunk tiles themselves and is provided by a {@link TileSource}.
+ * <p>
+ * Coarse tiles are rendered to FBOs, so their textures are upside down (unlike the chunk tiles).
+ * <p>
+ * This class is not thread-safe and is meant to be used from the render thread only.
+ */
+public class TilePyramid {
+
+    /**
+     * Drawn into quadrants whose source tile is not available (yet)
+     */
+    private static final Color MISSING_COLOR = new Color(32, 32, 32);
+
+    private final Vector2ic tileSize;
+    private final int maxLevel;
+    private final int maxBuildsPerFrame;
+
+    /**
+     * Texture caches and outdated tiles per level (index 0 is unused)
+     */
+    private final TileTextureCache[] caches;
+    private final TLongSet[] stale;
+
+    private int buildsThisFrame;
+
+    /**
+     * @param tileSize the size of a tile texture in pixels
+     * @param maxLevel the coarsest level
+     * @param maxTilesPerLevel the maximum number of tile textures per level
+     * @param maxBuildsPerFrame the maximum number of coarse tiles that are (re-)built per frame, including the
+     *                          finer tiles that are built on the way
+     */
+    public TilePyramid(Vector2ic tileSize, int maxLevel, int maxTilesPerLevel, int maxBuildsPerFrame) {
+        this.tileSize = tileSize;
+        this.maxLevel = maxLevel;
+        this.maxBuildsPerFrame = maxBuildsPerFrame;
+        this.caches = new TileTextureCache[maxLevel + 1];
+        this.stale = new TLongSet[maxLevel + 1];
+        for (int level = 1; level <= maxLevel; level++) {
+            caches[level] = new TileTextureCache("Minimap:gridlod" + level + "_", tileSize, maxTilesPerLevel, Long.MAX_VALUE);
+            stale[level] = new TLongHashSet();
+        }
+    }
+
+    /**
+     * @return the coarsest level
+     */
+    public int getMaxLevel() {
+        return maxLevel;
+    }
+
+    /**
+     * Starts a new frame.
+     *
+     * @param chunkX the chunk x coordinate of the view center
+     * @param chunkZ the chunk z coordinate of the view center
+     */
+    public void beginFrame(int chunkX, int chunkZ) {
+        buildsThisFrame = 0;
+        for (int level = 1; level <= maxLevel; level++) {
+            caches[level].beginFrame(chunkX >> level, chunkZ >> level);
+        }
+    }
+
+    /**
+     * Marks all coarse tiles that cover the given chunk as outdated.
+     */
+    public void invalidate(int chunkX, int chunkZ) {
+        for (int level = 1; level <= maxLevel; level++) {
+            stale[level].add(ChunkKeys.pack(chunkX >> level, chunkZ >> level));
+        }
+    }
+
+    /**
+     * Returns a coarse tile, (re-)building it if it is missing or outdated and the per-frame budget allows.
+     * An outdated tile is returned as is if the budget is exhausted.
+     *
+     * @param canvas the canvas to use for rendering
+     * @param level the level of the tile (at least 1)
+     * @param tileX the x coordinate of the tile (in units of 2<sup>level</sup> chunks)
+     * @param tileZ the z coordinate of the tile (in units of 2<sup>level</sup> chunks)
+     * @param chunkTiles provides the chunk tiles (level 0)
+     * @return the tile texture or <code>null</code> if not available
+     */
+    public Texture get(Canvas canvas, int level, int tileX, int tileZ, TileSource chunkTiles) {
+        Texture texture = caches[level].get(tileX, tileZ);
+        boolean outdated = texture == null || stale[level].contains(ChunkKeys.pack(tileX, tileZ));
+        if (outdated && buildsThisFrame < maxBuildsPerFrame) {
+            buildsThisFrame++;
+            texture = build(canvas, level, tileX, tileZ, chunkTiles);
+        }
+        return texture;
+    }
+
+    private Texture build(Canvas canvas, int level, int tileX, int tileZ, TileSource chunkTiles) {
+        // collect (and if necessary build) the children first, since FBO rendering cannot be nested
+        Texture[] children = new Texture[4];
+        boolean complete = true;
+        for (int i = 0; i < 4; i++) {
+            int childX = tileX * 2 + (i & 1);
+            int childZ = tileZ * 2 + (i >> 1);
+            if (level == 1) {
+                children[i] = chunkTiles.getTile(childX, childZ);
+                complete &= children[i] != null;
+            } else {
+                // child builds count against the budget, so a cold zoom-out is spread over several frames
+                Texture child = caches[level - 1].get(childX, childZ);
+                long childKey = ChunkKeys.pack(childX, childZ);
+                if ((child == null || stale[level - 1].contains(childKey)) && buildsThisFrame < maxBuildsPerFrame) {
+                    buildsThisFrame++;
+                    child = build(canvas, level - 1, childX, childZ, chunkTiles);
+                }
+                children[i] = child;
+                complete &= child != null && !stale[level - 1].contains(childKey);
+            }
+        }
+
+        long key = ChunkKeys.pack(tileX, tileZ);
+        ResourceUrn urn = caches[level].allocate(tileX, tileZ);
+        int halfWidth = tileSize.x() / 2;
+        int halfHeight = tileSize.y() / 2;
+        try (SubRegion ignored = CanvasUtility.subRegionFBO(canvas, urn, tileSize)) {
+            for (int i = 0; i < 4; i++) {
+                Rectanglei quadrant = RectUtility.createFromMinAndSize((i & 1) * halfWidth, (i >> 1) * halfHeight,
+                        halfWidth, halfHeight);
+                if (children[i] == null) {
+                    canvas.drawFilledRectangle(quadrant, MISSING_COLOR);
+                } else if (level == 1) {
+                    canvas.drawTextureRaw(children[i], quadrant, ScaleMode.STRETCH, 0f, 0f, 1f, 1f);
+                } else {
+                    // FBO textures are upside down - flip them to keep the orientation of the chunk tiles
+                    canvas.drawTextureRaw(children[i], quadrant, ScaleMode.STRETCH, 0f, 1f, 1f, -1f);
+                }
+            }
+        }
+
+        // incomplete tiles are kept, but re-built as soon as possible
+        if (complete) {
+            stale[level].remove(key);
+        } else {
+            stale[level].add(key);
+        }
+        return caches[level].get(tileX, tileZ);
+    }
+
+    /**
+     * Disposes all tile textures.
+     */
+    public void dispose() {
+        for (int level = 1; level <= maxLevel; level++) {
+            caches[level].dispose();
+            stale[level].clear();
+        }
+    }
+
+    /**
+     * Provides the chunk tiles that the pyramid is built from.
+     */
+    @FunctionalInterface
+    public interface TileSource {
+
+        /**
+         * @return the chunk tile texture or <code>null</code> if not available
+         */
+        Texture getTile(int chunkX, int chunkZ);
+    }
+}
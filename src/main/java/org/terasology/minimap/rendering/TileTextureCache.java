@@ -0,0 +1,272 @@
+// Copyright 2021 The Terasology Foundation
+// SPDX-License-Identifier: Apache-2.0
+
+package org.terasology.minimap.rendering;
+
+import gnu.trove.map.TLongIntMap;
+import gnu.trove.map.hash.TLongIntHashMap;
+import org.joml.Vector2ic;
+import org.terasology.engine.rendering.assets.texture.Texture;
+import org.terasology.engine.utilities.Assets;
+import org.terasology.gestalt.assets.ResourceUrn;
+import org.terasology.minimap.surface.ChunkKeys;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Owns the texture assets that contain the rendered map tiles.
+ * <p>
+ * Textures are organized in a bounded number of slots, each with its own asset URN. When the cache is full,
+ * the slot of the least recently used tile (and among those the one farthest away from the player) is
+ * assigned to the new tile, so textures (and FBOs) are re-used instead of being created and disposed.
+ * Tiles that are used in the current frame are never evicted, so the cache can temporarily grow beyond its
+ * limit if the visible area requires it.
+ * <p>
+ * This class is not thread-safe and is meant to be used from the render thread only.
+ */
+public class TileTextureCache {
+
+    private static final String URN_PREFIX = "Minimap:gridcache";
+
+    private final String urnPrefix;
+    private final Vector2ic tileSize;
+    private final List<Slot> slots = new ArrayList<>();
+    private final TLongIntMap slotByChunk = new TLongIntHashMap(64, 0.5f, Long.MIN_VALUE, -1);
+
+    private int maxTiles;
+    private long maxBytes;
+
+    private long frame;
+    private int centerChunkX;
+    private int centerChunkZ;
+
+    private long hits;
+    private long misses;
+    private long evictions;
+
+    /**
+     * @param tileSize the size of a single tile texture in pixels
+     * @param maxTiles the maximum number of tile textures
+     * @param maxBytes the maximum memory of all tile textures in bytes
+     */
+    public TileTextureCache(Vector2ic tileSize, int maxTiles, long maxBytes) {
+        this(URN_PREFIX, tileSize, maxTiles, maxBytes);
+    }
+
+    /**
+     * @param urnPrefix the prefix of the texture asset URNs, e.g. "Minimap:gridcache"
+     * @param tileSize the size of a single tile texture in pixels
+     * @param maxTiles the maximum number of tile textures
+     * @param maxBytes the maximum memory of all tile textures in bytes
+     */
+    public TileTextureCache(String urnPrefix, Vector2ic tileSize, int maxTiles, long maxBytes) {
+        this.urnPrefix = urnPrefix;
+        this.tileSize = tileSize;
+        this.maxTiles = maxTiles;
+        this.maxBytes = maxBytes;
+    }
+
+    /**
+     * Starts a new frame. Tiles that are accessed after this call are considered visible and will not be evicted
+     * until the next frame starts.
+     *
+     * @param chunkX the chunk x coordinate of the view center
+     * @param chunkZ the chunk z coordinate of the view center
+     */
+    public void beginFrame(int chunkX, int chunkZ) {
+        frame++;
+        centerChunkX = chunkX;
+        centerChunkZ = chunkZ;
+    }
+
+    /**
+     * Returns the texture of a tile and marks it as used in the current frame.
+     *
+     * @return the tile texture or <code>null</code> if the tile is not cached
+     */
+    public Texture get(int chunkX, int chunkZ) {
+        int idx = slotByChunk.get(ChunkKeys.pack(chunkX, chunkZ));
+        if (idx >= 0) {
+            Slot slot = slots.get(idx);
+            if (slot.texture == null || slot.texture.isDisposed()) {
+                slot.texture = Assets.get(slot.urn, Texture.class).orElse(null);
+            }
+            if (slot.texture != null) {
+                slot.lastUsed = frame;
+                hits++;
+                return slot.texture;
+            }
+        }
+        misses++;
+        return null;
+    }
+
+    /**
+     * @return the URN of the texture asset assigned to a tile or <code>null</code> if the tile is not cached
+     */
+    public ResourceUrn getUrn(int chunkX, int chunkZ) {
+        int idx = slotByChunk.get(ChunkKeys.pack(chunkX, chunkZ));
+        return idx >= 0 ? slots.get(idx).urn : null;
+    }
+
+    /**
+     * @return whether a tile is cached and has been rendered with block textures
+     * @see #allocate(int, int, boolean)
+     */
+    public boolean isDetailed(int chunkX, int chunkZ) {
+        int idx = slotByChunk.get(ChunkKeys.pack(chunkX, chunkZ));
+        return idx >= 0 && slots.get(idx).detailed;
+    }
+
+    /**
+     * Assigns a texture slot to a tile, evicting another tile if necessary.
+     * The caller is expected to render the tile content to the returned URN.
+     *
+     * @return the URN of the texture asset to render the tile to
+     */
+    public ResourceUrn allocate(int chunkX, int chunkZ) {
+        return allocate(chunkX, chunkZ, false);
+    }
+
+    /**
+     * Assigns a texture slot to a tile, evicting another tile if necessary.
+     * The caller is expected to render the tile content to the returned URN.
+     *
+     * @param detailed whether the tile is rendered with block textures instead of flat colors
+     * @return the URN of the texture asset to render the tile to
+     */
+    public ResourceUrn allocate(int chunkX, int chunkZ, boolean detailed) {
+        long key = ChunkKeys.pack(chunkX, chunkZ);
+        int idx = slotByChunk.get(key);
+        if (idx < 0) {
+            idx = findFreeSlot();
+            Slot slot = slots.get(idx);
+            if (slot.key != Long.MIN_VALUE) {
+                slotByChunk.remove(slot.key);
+                evictions++;
+            }
+            slot.key = key;
+            slot.chunkX = chunkX;
+            slot.chunkZ = chunkZ;
+            slotByChunk.put(key, idx);
+        }
+        Slot slot = slots.get(idx);
+        slot.lastUsed = frame;
+        slot.detailed = detailed;
+        return slot.urn;
+    }
+
+    /**
+     * Removes a tile from the cache. Its texture slot is kept for re-use.
+     */
+    public void invalidate(int chunkX, int chunkZ) {
+        int idx = slotByChunk.remove(ChunkKeys.pack(chunkX, chunkZ));
+        if (idx >= 0) {
+            slots.get(idx).key = Long.MIN_VALUE;
+        }
+    }
+
+    private int findFreeSlot() {
+        Slot victim = null;
+        for (Slot slot : slots) {
+            if (slot.key == Long.MIN_VALUE) {
+                return slot.index;
+            }
+            if (slot.lastUsed < frame && (victim == null || isBetterVictim(slot, victim))) {
+                victim = slot;
+            }
+        }
+        if (slots.size() < getCapacity() || victim == null) {
+            Slot slot = new Slot(slots.size(), new ResourceUrn(urnPrefix + slots.size()));
+            slots.add(slot);
+            return slot.index;
+        }
+        return victim.index;
+    }
+
+    private boolean isBetterVictim(Slot slot, Slot victim) {
+        if (slot.lastUsed != victim.lastUsed) {
+            return slot.lastUsed < victim.lastUsed;
+        }
+        return distanceSq(slot) > distanceSq(victim);
+    }
+
+    private long distanceSq(Slot slot) {
+        long dx = slot.chunkX - centerChunkX;
+        long dz = slot.chunkZ - centerChunkZ;
+        return dx * dx + dz * dz;
+    }
+
+    /**
+     * Disposes all tile textures.
+     */
+    public void dispose() {
+        for (Slot slot : slots) {
+            Assets.get(slot.urn, Texture.class).ifPresent(Texture::dispose);
+        }
+        slots.clear();
+        slotByChunk.clear();
+    }
+
+    /**
+     * @return the maximum number of tiles, considering both the tile and the byte limit
+     */
+    public int getCapacity() {
+        return (int) Math.max(1, Math.min(maxTiles, maxBytes / getBytesPerTile()));
+    }
+
+    public void setMaxTiles(int maxTiles) {
+        this.maxTiles = maxTiles;
+    }
+
+    public void setMaxBytes(long maxBytes) {
+        this.maxBytes = maxBytes;
+    }
+
+    /**
+     * @return the number of cached tiles
+     */
+    public int size() {
+        return slotByChunk.size();
+    }
+
+    /**
+     * @return the memory occupied by all allocated tile textures in bytes
+     */
+    public long getBytes() {
+        return slots.size() * getBytesPerTile();
+    }
+
+    private long getBytesPerTile() {
+        return 4L * tileSize.x() * tileSize.y();
+    }
+
+    public long getHits() {
+        return hits;
+    }
+
+    public long getMisses() {
+        return misses;
+    }
+
+    public long getEvictions() {
+        return evictions;
+    }
+
+    private static final class Slot {
+        private final int index;
+        private final ResourceUrn urn;
+        private long key = Long.MIN_VALUE;
+        private int chunkX;
+        private int chunkZ;
+        private long lastUsed;
+        private boolean detailed;
+        private Texture texture;
+
+        Slot(int index, ResourceUrn urn) {
+            this.index = index;
+            this.urn = urn;
+        }
+    }
+}
@@ -0,0 +1,265 @@
+// Copyright 2021 The Terasology Foundation
+// SPDX-License-Identifier: Apache-2.0
+
+package org.terasology.minimap.rendering;
+
+import org.joml.Vector2ic;
+import org.terasology.engine.rendering.assets.texture.Texture;
+import org.terasology.engine.rendering.assets.texture.TextureData;
+import org.terasology.engine.utilities.Assets;
+import org.terasology.engine.world.chunks.Chunks;
+import org.terasology.gestalt.assets.ResourceUrn;
+import org.terasology.joml.geom.Rectanglei;
+import org.terasology.minimap.surface.ChunkKeys;
+import org.terasology.nui.Canvas;
+import org.terasology.nui.ScaleMode;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.function.Function;
+
+/**
+ * A single texture that contains the chunk tiles around the player, organized as a toroidal ring buffer.
+ * The tile of chunk (x, z) is always stored in slot (x mod columns, z mod rows), so when the player moves,
+ * only the chunks that enter the view need to be rendered. The texture uses repeat wrapping, so the visible
+ * area can be drawn with a single call, no matter where the seam of the ring buffer is.
+ * <p>
+ * The texture asset is created once per size. Afterwards, it is only reloaded from the ring buffer in frames
+ * in which at least one slot has changed.
+ * <p>
+ * This class is not thread-safe and is meant to be used from the render thread only.
+ */
+public class TileViewport {
+
+    private static final ResourceUrn URN = new ResourceUrn("Minimap:viewport");
+    private static final long NO_CHUNK = Long.MIN_VALUE;
+
+    private final int tileWidth;
+    private final int tileHeight;
+    private final Function<TextureData, Texture> textureFactory;
+
+    private int columns;
+    private int rows;
+    private long[] slotChunks = new long[0];
+    private boolean[] slotValid = new boolean[0];
+    private ByteBuffer pixels;
+    private TextureData data;
+    private Texture texture;
+
+    /**
+     * True if the ring buffer has changed since the texture was last updated
+     */
+    private boolean changed = true;
+    private boolean stale = true;
+    private int windowMinX;
+    private int windowMinZ;
+    private int windowMaxX;
+    private int windowMaxZ;
+
+    /**
+     * @param tileSize the size of a single chunk tile in pixels
+     */
+    public TileViewport(Vector2ic tileSize) {
+        this(tileSize, data -> Assets.generateAsset(URN, data, Texture.class));
+    }
+
+    /**
+     * @param tileSize the size of a single chunk tile in pixels
+     * @param textureFactory creates the texture asset from the ring buffer
+     */
+    TileViewport(Vector2ic tileSize, Function<TextureData, Texture> textureFactory) {
+        this.tileWidth = tileSize.x();
+        this.tileHeight = tileSize.y();
+        this.textureFactory = textureFactory;
+    }
+
+    /**
+     * Sets the number of chunk tiles in the ring buffer. Its content is discarded if the size changes.
+     *
+     * @param newColumns the number of chunks in x direction
+     * @param newRows the number of chunks in z direction
+     */
+    public void resize(int newColumns, int newRows) {
+        if (newColumns == columns && newRows == rows) {
+            return;
+        }
+        columns = newColumns;
+        rows = newRows;
+        slotChunks = new long[columns * rows];
+        slotValid = new boolean[columns * rows];
+        Arrays.fill(slotChunks, NO_CHUNK);
+        pixels = ByteBuffer.allocateDirect(columns * tileWidth * rows * tileHeight * 4);
+        data = new TextureData(columns * tileWidth, rows * tileHeight, new ByteBuffer[]{pixels},
+                Texture.WrapMode.REPEAT, Texture.FilterMode.NEAREST);
+        changed = true;
+        stale = true;
+    }
+
+    /**
+     * @return true if the given chunk area has to be (partly) re-composed, because it differs from the last
+     *         composed area or tiles have changed since
+     */
+    public boolean needsUpdate(int minChunkX, int minChunkZ, int maxChunkX, int maxChunkZ) {
+        return stale || minChunkX != windowMinX || minChunkZ != windowMinZ
+                || maxChunkX != windowMaxX || maxChunkZ != windowMaxZ;
+    }
+
+    /**
+     * Marks the given chunk area as composed. Missing tiles are only retried once they are invalidated.
+     *
+     * @param complete false if tile builds have been deferred and composing should continue in the next frame
+     */
+    public void setComposed(int minChunkX, int minChunkZ, int maxChunkX, int maxChunkZ, boolean complete) {
+        windowMinX = minChunkX;
+        windowMinZ = minChunkZ;
+        windowMaxX = maxChunkX;
+        windowMaxZ = maxChunkZ;
+        stale = !complete;
+    }
+
+    /**
+     * @return true if the ring buffer contains the current tile of the chunk
+     */
+    public boolean contains(int chunkX, int chunkZ) {
+        int slot = slot(chunkX, chunkZ);
+        return slotValid[slot] && slotChunks[slot] == ChunkKeys.pack(chunkX, chunkZ);
+    }
+
+    /**
+     * Copies the tile of a chunk into its slot.
+     *
+     * @param tile the RGBA pixels of the tile
+     */
+    public void put(int chunkX, int chunkZ, TextureData tile) {
+        int slot = slot(chunkX, chunkZ);
+        ByteBuffer src = tile.getBuffers()[0].duplicate();
+        int offset = pixelOffset(chunkX, chunkZ);
+        int rowBytes = tileWidth * 4;
+        for (int y = 0; y < tileHeight; y++) {
+            src.limit((y + 1) * rowBytes).position(y * rowBytes);
+            pixels.position(offset + y * columns * rowBytes);
+            pixels.put(src);
+        }
+        pixels.clear();
+        slotChunks[slot] = ChunkKeys.pack(chunkX, chunkZ);
+        slotValid[slot] = true;
+        changed = true;
+    }
+
+    /**
+     * Clears the slot of a chunk whose tile is not available, unless it still contains an outdated
+     * tile of the same chunk.
+     */
+    public void clear(int chunkX, int chunkZ) {
+        int slot = slot(chunkX, chunkZ);
+        if (slotChunks[slot] == ChunkKeys.pack(chunkX, chunkZ)) {
+            return;
+        }
+        fill(chunkX, chunkZ, 0);
+        slotChunks[slot] = NO_CHUNK;
+        slotValid[slot] = false;
+    }
+
+    /**
+     * Fills the slot of a chunk whose tile has not been built yet with a flat color, unless it still contains
+     * an outdated tile of the same chunk.
+     *
+     * @param rgba the placeholder color in RGBA format
+     */
+    public void putPlaceholder(int chunkX, int chunkZ, int rgba) {
+        int slot = slot(chunkX, chunkZ);
+        if (slotChunks[slot] == ChunkKeys.pack(chunkX, chunkZ)) {
+            return;
+        }
+        fill(chunkX, chunkZ, rgba);
+        slotChunks[slot] = ChunkKeys.pack(chunkX, chunkZ);
+        slotValid[slot] = false;
+    }
+
+    private void fill(int chunkX, int chunkZ, int rgba) {
+        int offset = pixelOffset(chunkX, chunkZ);
+        int rowBytes = tileWidth * 4;
+        for (int y = 0; y < tileHeight; y++) {
+            for (int i = 0; i < rowBytes; i += 4) {
+                pixels.putInt(offset + y * columns * rowBytes + i, rgba);
+            }
+        }
+        changed = true;
+    }
+
+    /**
+     * Marks the tile of a chunk as outdated (or available, if it was missing before).
+     * An outdated tile remains visible until it is replaced.
+     */
+    public void invalidate(int chunkX, int chunkZ) {
+        if (columns == 0) {
+            return;
+        }
+        int slot = slot(chunkX, chunkZ);
+        if (slotChunks[slot] == ChunkKeys.pack(chunkX, chunkZ)) {
+            slotValid[slot] = false;
+        }
+        if (chunkX >= windowMinX && chunkX <= windowMaxX && chunkZ >= windowMinZ && chunkZ <= windowMaxZ) {
+            stale = true;
+        }
+    }
+
+    /**
+     * Marks all tiles as outdated. They remain visible until they are replaced.
+     */
+    public void invalidateAll() {
+        Arrays.fill(slotValid, false);
+        stale = true;
+    }
+
+    /**
+     * Draws the given world area, which must be covered by the last composed chunk area.
+     *
+     * @param region the screen region to draw to
+     * @param worldMinX the world x coordinate at the left border of the region
+     * @param worldMinZ the world z coordinate at the top border of the region
+     * @param worldWidth the number of blocks in x direction
+     * @param worldHeight the number of blocks in z direction
+     */
+    public void draw(Canvas canvas, Rectanglei region, float worldMinX, float worldMinZ, float worldWidth, float worldHeight) {
+        if (texture == null || texture.isDisposed()) {
+            texture = textureFactory.apply(data);
+            changed = false;
+        } else if (changed) {
+            texture.reload(data);
+            changed = false;
+        }
+        float ringWidth = columns * Chunks.SIZE_X;
+        float ringHeight = rows * Chunks.SIZE_Z;
+        float u = (worldMinX - (float) Math.floor(worldMinX / ringWidth) * ringWidth) / ringWidth;
+        float v = (worldMinZ - (float) Math.floor(worldMinZ / ringHeight) * ringHeight) / ringHeight;
+        canvas.drawTextureRaw(texture, region, ScaleMode.STRETCH, u, v, worldWidth / ringWidth, worldHeight / ringHeight);
+    }
+
+    /**
+     * Releases the texture. The viewport can still be used afterwards.
+     */
+    public void dispose() {
+        if (texture != null) {
+            texture.dispose();
+            texture = null;
+        }
+        Arrays.fill(slotChunks, NO_CHUNK);
+        Arrays.fill(slotValid, false);
+        changed = true;
+        stale = true;
+    }
+
+    private int slot(int chunkX, int chunkZ) {
+        return Math.floorMod(chunkZ, rows) * columns + Math.floorMod(chunkX, columns);
+    }
+
+    /**
+     * @return the byte offset of the top left pixel of the slot of a chunk
+     */
+    private int pixelOffset(int chunkX, int chunkZ) {
+        int x = Math.floorMod(chunkX, columns) * tileWidth;
+        int y = Math.floorMod(chunkZ, rows) * tileHeight;
+        return (y * columns * tileWidth + x) * 4;
+    }
+}
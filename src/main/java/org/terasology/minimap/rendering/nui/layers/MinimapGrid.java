@@ -3,126 +3,196 @@
 package org.terasology.minimap.rendering.nui.layers;
 
 import com.google.common.base.Preconditions;
-import com.google.common.cache.CacheBuilder;
-import com.google.common.cache.CacheLoader;
-import com.google.common.cache.LoadingCache;
-import com.google.common.collect.LinkedHashMultimap;
-import com.google.common.collect.Multimap;
 import org.joml.Quaternionf;
-import org.joml.Vector2f;
-import org.joml.Vector2fc;
 import org.joml.Vector2i;
 import org.joml.Vector2ic;
 import org.joml.Vector3f;
-import org.joml.Vector3i;
+import org.joml.Vector3fc;
 import org.joml.Vector3ic;
-import org.terasology.engine.registry.CoreRegistry;
-import org.terasology.engine.world.block.tiles.WorldAtlas;
-import org.terasology.gestalt.assets.ResourceUrn;
 import org.terasology.engine.entitySystem.entity.EntityRef;
 import org.terasology.engine.logic.location.LocationComponent;
-import org.terasology.engine.rendering.assets.texture.BasicTextureRegion;
+import org.terasology.engine.rendering.assets.mesh.Mesh;
 import org.terasology.engine.rendering.assets.texture.Texture;
-import org.terasology.engine.rendering.assets.texture.TextureRegion;
 import org.terasology.engine.rendering.nui.CanvasUtility;
 import org.terasology.engine.utilities.Assets;
 import org.terasology.engine.world.WorldProvider;
-import org.terasology.engine.world.block.Block;
-import org.terasology.engine.world.block.BlockAppearance;
-import org.terasology.engine.world.block.BlockPart;
-import org.terasology.engine.world.block.BlockRegion;
 import org.terasology.engine.world.chunks.Chunks;
-import org.terasology.joml.geom.Rectanglef;
 import org.terasology.joml.geom.Rectanglei;
 import org.terasology.math.TeraMath;
 import org.terasology.minimap.MinimapIconComponent;
+import org.terasology.minimap.overlays.CachedMinimapOverlay;
 import org.terasology.minimap.overlays.MinimapOverlay;
+import org.terasology.minimap.rendering.AllocationProbe;
+import org.terasology.minimap.rendering.MinimapTelemetry;
+import org.terasology.minimap.rendering.MinimapTileService;
+import org.terasology.minimap.rendering.OverlayLayerCache;
+import org.terasology.minimap.rendering.TileBuildScheduler;
+import org.terasology.minimap.rendering.TileViewport;
+import org.terasology.minimap.surface.ChunkSurface;
 import org.terasology.nui.Border;
 import org.terasology.nui.Canvas;
-import org.terasology.nui.Color;
 import org.terasology.nui.CoreWidget;
 import org.terasology.nui.ScaleMode;
 import org.terasology.nui.SubRegion;
 import org.terasology.nui.databinding.Binding;
 import org.terasology.nui.databinding.DefaultBinding;
 import org.terasology.nui.databinding.ReadOnlyBinding;
-import org.terasology.nui.util.RectUtility;
 
-import java.util.Collection;
-import java.util.Comparator;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
 import java.util.HashSet;
-import java.util.Optional;
-import java.util.PriorityQueue;
+import java.util.List;
+import java.util.Map;
 import java.util.Set;
-import java.util.function.IntFunction;
 
 /**
- * This is the actual minimap. All rendering-related code is located here.
+ * This is the actual minimap. It draws the tiles provided by a {@link MinimapTileService}, the overlays
+ * and the player arrows.
  */
 public class MinimapGrid extends CoreWidget {
     /**
      * The size of a cell (i.e. represents one block)
      */
-    private static final Vector2ic CELL_SIZE = new Vector2i(4, 4);
-    private static final Vector2ic BUFFER_SIZE = new Vector2i(
-            CELL_SIZE.x() * Chunks.SIZE_X, CELL_SIZE.y() * Chunks.SIZE_Z);
+    private static final Vector2ic CELL_SIZE = MinimapTileService.getCellSize();
+    private static final Vector2ic BUFFER_SIZE = MinimapTileService.getTileSize();
+
+    private static final int PREFERRED_WIDTH = 320;
+    private static final int PREFERRED_HEIGHT = 200;
+
+    /**
+     * Used for the player arrows - no offset, the position is defined by the screen area
+     */
+    private static final Vector3fc ARROW_OFFSET = new Vector3f();
 
     /**
      * The delta scale factor
      */
     private static final float ZOOM_DELTA = 0.25f;
 
+    /**
+     * The flat color (RGBA) that is shown for chunks whose tile has not been rendered yet
+     */
+    private static final int PLACEHOLDER_COLOR = 0x404040FF;
+
     private Binding<EntityRef> targetEntityBinding = new DefaultBinding<>(EntityRef.NULL);
     private Binding<Integer> zoomFactorBinding = new DefaultBinding<>(0);
 
     private final Set<EntityRef> alivePlayers = new HashSet<EntityRef>();
 
-    private Texture textureAtlas;
-    private TextureRegion questionMark;
-
-    private Multimap<Vector2ic, Vector3i> dirtyBlocks = LinkedHashMultimap.create();
+    private MinimapTileService tileService;
+    private TileViewport tileViewport;
+    private TileBuildScheduler tileScheduler;
 
-    private WorldProvider worldProvider;
+    private final MinimapTileService.TileListener tileListener = (chunkX, chunkZ) -> tileViewport.invalidate(chunkX, chunkZ);
 
-    private final Collection<MinimapOverlay> overlays =
-            new PriorityQueue<>(Comparator.comparingInt(MinimapOverlay::getZOrder));
-
-    private LoadingCache<Block, TextureRegion> cache =
-            CacheBuilder.newBuilder().build(new CacheLoader<Block, TextureRegion>() {
+    /**
+     * The overlays sorted by their z order (overlays with the same z order in the order they were added)
+     */
+    private final List<MinimapOverlay> overlays = new ArrayList<>();
 
-                @Override
-                public TextureRegion load(Block block) {
-                    BlockAppearance primaryAppearance = block.getPrimaryAppearance();
+    /**
+     * Offscreen layers of the cached overlays, <code>null</code> to render all overlays directly
+     */
+    private OverlayLayerCache overlayLayers;
 
-                    BlockPart blockPart = BlockPart.TOP;
+    /**
+     * The cached overlays that are rendered next to each other (re-used in every frame)
+     */
+    private final List<CachedMinimapOverlay> cachedOverlayGroup = new ArrayList<>();
 
-                    WorldAtlas worldAtlas = CoreRegistry.get(WorldAtlas.class);
-                    float tileSize = worldAtlas.getRelativeTileSize();
+    /**
+     * Objects that are re-used in every frame to avoid allocations
+     */
+    private final Vector3f centerPosition = new Vector3f();
+    private final Rectanglei screenRegion = new Rectanglei();
+    private final Rectanglei worldRect = new Rectanglei();
+    private final Vector3f playerPosition = new Vector3f();
+    private final Quaternionf playerRotation = new Quaternionf();
+    private final Quaternionf arrowRotation = new Quaternionf();
+    private final Rectanglei arrowArea = new Rectanglei();
 
-                    Vector2fc textureAtlasPos = primaryAppearance.getTextureAtlasPos(blockPart);
+    /**
+     * Assets and per-frame buffers of the player arrows
+     */
+    private Mesh arrowMesh;
+    private final Map<String, ArrowIcon> arrowIconsByUrn = new HashMap<>();
+    private final List<ArrowIcon> arrowIcons = new ArrayList<>();
 
-                    return new BasicTextureRegion(textureAtlas, textureAtlasPos, new Vector2f(tileSize, tileSize));
-                }
+    private final TileBuildScheduler.TileBuilder viewportBuilder = this::buildViewportTile;
+    private final TileBuildScheduler.TileBuilder placeholderBuilder =
+            (chunkX, chunkZ) -> tileViewport.putPlaceholder(chunkX, chunkZ, PLACEHOLDER_COLOR);
 
-            });
+    private final AllocationProbe allocationProbe = new AllocationProbe("Minimap onDraw", 600);
 
-    private IntFunction<Float> brightness;
+    /**
+     * True if the viewport is rendered with flat block colors instead of textures
+     */
+    private boolean flatViewport;
 
-    public MinimapGrid() {
-        textureAtlas = Assets.getTexture("engine:terrain").get();
-        questionMark = Assets.getTextureRegion("engine:items#questionMark").get();
+    /**
+     * Sets the service that provides the tiles. The grid is notified about outdated tiles from now on.
+     */
+    public void setTileService(MinimapTileService tileService) {
+        if (this.tileService != null) {
+            this.tileService.removeListener(tileListener);
+        }
+        this.tileService = tileService;
+        tileService.addListener(tileListener);
     }
 
+    /**
+     * @deprecated the shading is shared by all map widgets, use {@link MinimapTileService#setHeightRange(int, int)}
+     */
+    @Deprecated
     public void setHeightRange(int bottom, int top) {
         Preconditions.checkArgument(top > bottom);
-
-        float minBright = 0.5f;
-        float fac = (1 - minBright) / (top - bottom);
-        brightness = y -> TeraMath.clamp(minBright + (y - bottom) * fac);
+        if (tileService != null) {
+            tileService.setHeightRange(bottom, top);
+        }
     }
 
+    /**
+     * @deprecated the world is read by the surface scanner of the {@link MinimapTileService}, which is created
+     *             for the world of the current game, so this has no effect
+     */
+    @Deprecated
     public void setWorldProvider(WorldProvider worldProvider) {
-        this.worldProvider = worldProvider;
+        // the tile service always uses the world of the current game
+    }
+
+    public void setTileViewport(TileViewport tileViewport) {
+        this.tileViewport = tileViewport;
+    }
+
+    public void setTileScheduler(TileBuildScheduler tileScheduler) {
+        this.tileScheduler = tileScheduler;
+    }
+
+    public void setOverlayLayers(OverlayLayerCache overlayLayers) {
+        this.overlayLayers = overlayLayers;
+    }
+
+    /**
+     * Enables or disables logging of the heap memory allocated per {@link #onDraw(Canvas)} call.
+     *
+     * @param enabled true to enable
+     * @return true if the setting was applied, false if allocation tracking is not supported
+     */
+    public boolean setAllocationTracking(boolean enabled) {
+        allocationProbe.setEnabled(enabled);
+        return allocationProbe.isEnabled() == enabled;
+    }
+
+    public boolean isAllocationTracking() {
+        return allocationProbe.isEnabled();
+    }
+
+    /**
+     * @return the size of a chunk tile texture in pixels
+     */
+    public static Vector2ic getTileSize() {
+        return BUFFER_SIZE;
     }
 
     @Override
@@ -131,9 +201,11 @@ public class MinimapGrid extends CoreWidget {
     }
 
     public void updateLocation(Vector3ic worldLocation) {
-        Vector3i chunkPos = Chunks.toChunkPos(worldLocation, new Vector3i());
-        Vector3i blockPos = Chunks.toRelative(worldLocation, new Vector3i());
-        dirtyBlocks.put(new Vector2i(chunkPos.x(), chunkPos.z()), blockPos);
+        updateLocation(worldLocation.x(), worldLocation.y(), worldLocation.z());
+    }
+
+    public void updateLocation(int x, int y, int z) {
+        tileService.blockChanged(x, y, z);
     }
 
     @Override
@@ -145,7 +217,11 @@ public class MinimapGrid extends CoreWidget {
             return;
         }
 
-        Vector3f centerPosition = locationComponent.getWorldPosition(new Vector3f());
+        allocationProbe.begin();
+        MinimapTelemetry telemetry = tileService.getTelemetry();
+        long drawStart = telemetry.begin(MinimapTelemetry.Phase.DRAW);
+
+        locationComponent.getWorldPosition(centerPosition);
         // See what we're walking on, not what's at knee level
         // the location (0/0) is at the center of the block 0/0
         // we therefore add an offset of 0.5 to the map to reflect this fact
@@ -154,8 +230,8 @@ public class MinimapGrid extends CoreWidget {
         // define zoom factor
         int zoomLevel = getZoomFactor();
         float zoom = (float) Math.pow(2.0, zoomLevel * ZOOM_DELTA);
-        int width = getPreferredContentSize().x();
-        int height = getPreferredContentSize().y();
+        int width = PREFERRED_WIDTH;
+        int height = PREFERRED_HEIGHT;
         float numberOfRows = height / (zoom * CELL_SIZE.y());
         float numberOfCols = width / (zoom * CELL_SIZE.x());
 
@@ -165,151 +241,247 @@ public class MinimapGrid extends CoreWidget {
         int centerX = TeraMath.floorToInt(centerPosition.x());
         int centerY = TeraMath.floorToInt(centerPosition.y());
         int centerZ = TeraMath.floorToInt(centerPosition.z());
-        Vector3i minChunkPos = Chunks.toChunkPos(centerX - colCenter, 0, centerZ - rowCenter, new Vector3i());
-        Vector3i maxChunkPos = Chunks.toChunkPos(centerX + colCenter, 0, centerZ + rowCenter, new Vector3i());
+        int minChunkX = (centerX - colCenter) >> Chunks.POWER_X;
+        int minChunkZ = (centerZ - rowCenter) >> Chunks.POWER_Z;
+        int maxChunkX = (centerX + colCenter) >> Chunks.POWER_X;
+        int maxChunkZ = (centerZ + rowCenter) >> Chunks.POWER_Z;
+
+        int centerChunkX = centerX >> Chunks.POWER_X;
+        int centerChunkZ = centerZ >> Chunks.POWER_Z;
+        tileService.beginFrame(centerChunkX, centerChunkZ, centerY);
 
-        int screenWidth = TeraMath.ceilToInt(BUFFER_SIZE.x() * zoom);
-        int screenHeight = TeraMath.ceilToInt(BUFFER_SIZE.y() * zoom);
+        // pick the pyramid level whose tiles are drawn at roughly their native resolution
+        int lodLevel = TeraMath.clamp(TeraMath.floorToInt(-zoomLevel * ZOOM_DELTA), 0, tileService.getMaxLevel());
+        int chunksPerTile = 1 << lodLevel;
+
+        int screenWidth = TeraMath.ceilToInt(BUFFER_SIZE.x() * chunksPerTile * zoom);
+        int screenHeight = TeraMath.ceilToInt(BUFFER_SIZE.y() * chunksPerTile * zoom);
 
-        Vector2i chunkPos = new Vector2i();
-        Vector3i chunkDisc = new Vector3i(Chunks.SIZE_X, Chunks.SIZE_Y * 2, Chunks.SIZE_Z);
         float cellWidth = CELL_SIZE.x() * zoom;
         float cellHeight = CELL_SIZE.y() * zoom;
-        for (int chunkZ = minChunkPos.z(); chunkZ <= maxChunkPos.z(); chunkZ++) {
-            for (int chunkX = minChunkPos.x(); chunkX <= maxChunkPos.x(); chunkX++) {
-                chunkPos.set(chunkX, chunkZ);
-                ResourceUrn urn = new ResourceUrn("Minimap:gridcache" + chunkX + "x" + chunkZ);
-                Optional<? extends TextureRegion> opt = Assets.get(urn, Texture.class);
-
-                // create and render to FBO texture asset, if needed
-                if (!opt.isPresent()) {
-                    Vector3i worldPos = new Vector3i(chunkX * Chunks.SIZE_X, 0, chunkZ * Chunks.SIZE_Z);
-                    BlockRegion region = new BlockRegion(worldPos).setSize(chunkDisc);
-                    if (worldProvider.isRegionRelevant(region)) {
-                        try (SubRegion ignored = CanvasUtility.subRegionFBO(canvas, urn, BUFFER_SIZE)) {
-                            // use player's center Y pos to start searching for the surface layer
-                            renderFullChunk(canvas, chunkX, chunkZ, centerY);
-                        }
-                        dirtyBlocks.removeAll(chunkPos);
-                        opt = Assets.get(urn, Texture.class);
-                    }
+        try (SubRegion ignored = canvas.subRegion(canvas.getRegion(), true)) {
+            if (lodLevel == 0) {
+                // block textures are not recognizable when cells are smaller than their native size
+                boolean flat = zoom < 1f;
+                if (flat != flatViewport) {
+                    flatViewport = flat;
+                    tileViewport.invalidateAll();
                 }
-
-                // update dirty blocks in cache texture
-                Collection<Vector3i> chunkBlocks = dirtyBlocks.get(chunkPos);
-                if (!chunkBlocks.isEmpty()) {
-                    try (SubRegion ignored = CanvasUtility.subRegionFBO(canvas, urn, BUFFER_SIZE)) {
-                        for (Vector3i pos : chunkBlocks) {
-                            renderDirtyBlock(canvas, chunkX, chunkZ, pos);
-                        }
-                    }
-                    dirtyBlocks.removeAll(chunkPos);
+                // the ring buffer covers the visible chunks plus a margin, so it does not change with sub-chunk movement
+                tileViewport.resize(TeraMath.ceilToInt(numberOfCols / Chunks.SIZE_X) + 2,
+                        TeraMath.ceilToInt(numberOfRows / Chunks.SIZE_Z) + 2);
+                if (tileViewport.needsUpdate(minChunkX, minChunkZ, maxChunkX, maxChunkZ)) {
+                    composeViewport(minChunkX, minChunkZ, maxChunkX, maxChunkZ, centerY);
                 }
-
-                // render the actual chunk FBO texture
-                if (opt.isPresent()) {
-                    try (SubRegion ignored = canvas.subRegion(canvas.getRegion(), true)) {
-                        float tileX = numberOfCols * 0.5f + chunkX * Chunks.SIZE_X - centerPosition.x();
-                        float tileZ = numberOfRows * 0.5f + chunkZ * Chunks.SIZE_Z - centerPosition.z();
-
-                        int offX = TeraMath.floorToInt(tileX * cellWidth);
-                        int offZ = TeraMath.floorToInt(tileZ * cellHeight);
-
-                        Rectanglei screenRegion = RectUtility.createFromMinAndSize(offX, offZ, screenWidth, screenHeight);
-                        canvas.drawTextureRaw(opt.get(), screenRegion, ScaleMode.SCALE_FIT, 0f, 1f, 1f, -1f);
+                screenRegion.set(0, 0, width, height);
+                tileViewport.draw(canvas, screenRegion, centerPosition.x() - numberOfCols * 0.5f,
+                        centerPosition.z() - numberOfRows * 0.5f, numberOfCols, numberOfRows);
+                telemetry.add(MinimapTelemetry.Metric.DRAW_CALLS, 1);
+            } else {
+                tileService.beginBatch();
+                for (int tileZ = minChunkZ >> lodLevel; tileZ <= maxChunkZ >> lodLevel; tileZ++) {
+                    for (int tileX = minChunkX >> lodLevel; tileX <= maxChunkX >> lodLevel; tileX++) {
+                        Texture texture = tileService.getTile(canvas, lodLevel, tileX, tileZ);
+
+                        // render the actual tile texture
+                        if (texture != null) {
+                            float tileMinX = numberOfCols * 0.5f + tileX * chunksPerTile * Chunks.SIZE_X - centerPosition.x();
+                            float tileMinZ = numberOfRows * 0.5f + tileZ * chunksPerTile * Chunks.SIZE_Z - centerPosition.z();
+
+                            int offX = TeraMath.floorToInt(tileMinX * cellWidth);
+                            int offZ = TeraMath.floorToInt(tileMinZ * cellHeight);
+
+                            screenRegion.set(offX, offZ, offX + screenWidth, offZ + screenHeight);
+                            // FBO textures are upside down
+                            canvas.drawTextureRaw(texture, screenRegion, ScaleMode.SCALE_FIT, 0f, 1f, 1f, -1f);
+                            telemetry.add(MinimapTelemetry.Metric.DRAW_CALLS, 1);
+                        }
                     }
                 }
-
+                tileService.endBatch();
             }
         }
 
         // render overlays
-        Rectanglef worldRect = RectUtility.createFromCenterAndSize(
-                centerPosition.x(), centerPosition.z(),
-                (width / cellWidth), (height / cellHeight));
+        float worldWidth = width / cellWidth;
+        float worldHeight = height / cellHeight;
+        worldRect.set(
+                (int) (centerPosition.x() - worldWidth * 0.5f), (int) (centerPosition.z() - worldHeight * 0.5f),
+                (int) (centerPosition.x() + worldWidth * 0.5f), (int) (centerPosition.z() + worldHeight * 0.5f));
 
+        long overlayStart = telemetry.begin(MinimapTelemetry.Phase.OVERLAYS);
         try (SubRegion ignored = canvas.subRegion(canvas.getRegion(), true)) {
-            for (MinimapOverlay overlay : overlays) {
-                overlay.render(canvas, new Rectanglei((int) worldRect.minX, (int) worldRect.minY, (int) worldRect.maxX, (int) worldRect.maxY));
+            if (overlayLayers != null) {
+                overlayLayers.beginFrame();
+            }
+            for (int i = 0; i < overlays.size(); i++) {
+                MinimapOverlay overlay = overlays.get(i);
+                if (overlayLayers != null && overlay instanceof CachedMinimapOverlay) {
+                    cachedOverlayGroup.add((CachedMinimapOverlay) overlay);
+                } else {
+                    drawCachedOverlays(canvas);
+                    overlay.render(canvas, worldRect);
+                    telemetry.add(MinimapTelemetry.Metric.DRAW_CALLS, 1);
+                }
             }
+            drawCachedOverlays(canvas);
         }
+        telemetry.end(MinimapTelemetry.Phase.OVERLAYS, overlayStart);
 
+        long arrowStart = telemetry.begin(MinimapTelemetry.Phase.PLAYER_ARROWS);
         drawPlayerArrows(canvas, zoom, centerX, centerZ);
+        telemetry.end(MinimapTelemetry.Phase.PLAYER_ARROWS, arrowStart);
+
+        telemetry.end(MinimapTelemetry.Phase.DRAW, drawStart);
+        telemetry.set(MinimapTelemetry.Metric.BUILD_QUEUE_DEPTH, tileScheduler.getQueueDepth());
+        tileService.endFrame();
+
+        allocationProbe.end();
     }
 
-    private void renderFullChunk(Canvas canvas, int chunkX, int chunkZ, int startY) {
-        for (int row = 0; row < Chunks.SIZE_Z; row++) {
-            for (int column = 0; column < Chunks.SIZE_X; column++) {
-                int x = column * CELL_SIZE.x();
-                int y = row * CELL_SIZE.y();
-                Rectanglei rect = RectUtility.createFromMinAndSize(x, y, CELL_SIZE.x(), CELL_SIZE.y());
+    /**
+     * Draws the collected group of cached overlays from its layer, so the z order of all overlays is kept.
+     */
+    private void drawCachedOverlays(Canvas canvas) {
+        if (!cachedOverlayGroup.isEmpty()) {
+            overlayLayers.draw(canvas, worldRect, cachedOverlayGroup);
+            cachedOverlayGroup.clear();
+            tileService.getTelemetry().add(MinimapTelemetry.Metric.DRAW_CALLS, 1);
+        }
+    }
 
-                int blockX = chunkX * Chunks.SIZE_X + column;
-                int blockZ = chunkZ * Chunks.SIZE_Z + row;
-                Vector3i relLocation = new Vector3i(blockX, startY, blockZ);
-                renderCell(canvas, rect, relLocation); // the y component of relLocation is modified!
+    /**
+     * Renders the chunks of the given area that are missing or outdated into the viewport ring buffer.
+     * Chunks closer to the center are rendered first. Chunks that do not fit into the time budget of the
+     * build scheduler are shown as a placeholder and rendered in the next frames.
+     */
+    private void composeViewport(int minChunkX, int minChunkZ, int maxChunkX, int maxChunkZ, int centerY) {
+        tileScheduler.clear();
+        int pending = 0;
+        // missing chunks are scanned in parallel
+        tileService.beginBatch();
+        for (int chunkZ = minChunkZ; chunkZ <= maxChunkZ; chunkZ++) {
+            for (int chunkX = minChunkX; chunkX <= maxChunkX; chunkX++) {
+                if (tileViewport.contains(chunkX, chunkZ) && !tileService.isDirty(chunkX, chunkZ)) {
+                    continue;
+                }
+                ChunkSurface surface = tileService.getChunkSurface(chunkX, chunkZ, centerY);
+                if (surface != null) {
+                    tileScheduler.add(chunkX, chunkZ);
+                    pending++;
+                } else {
+                    // the chunk is rendered once its surface has been scanned or loaded, or its column becomes ready
+                    tileViewport.clear(chunkX, chunkZ);
+                }
             }
         }
+        tileService.endBatch();
+        int built = tileScheduler.run((minChunkX + maxChunkX) / 2, (minChunkZ + maxChunkZ) / 2, viewportBuilder, placeholderBuilder);
+        tileViewport.setComposed(minChunkX, minChunkZ, maxChunkX, maxChunkZ, built == pending);
     }
 
-    private void renderDirtyBlock(Canvas canvas, int chunkX, int chunkZ, Vector3i pos) {
-        int column = pos.x();
-        int row = pos.z();
-        int startY = pos.y();
-        int x = column * CELL_SIZE.x();
-        int y = row * CELL_SIZE.y();
-        Rectanglei rect = RectUtility.createFromMinAndSize(x, y, CELL_SIZE.x(), CELL_SIZE.y());
-
-        int blockX = chunkX * Chunks.SIZE_X + column;
-        int blockZ = chunkZ * Chunks.SIZE_Z + row;
-        Vector3i relLocation = new Vector3i(blockX, startY, blockZ);
-        renderCell(canvas, rect, relLocation); // the y component of relLocation is modified!
+    private void buildViewportTile(int chunkX, int chunkZ) {
+        ChunkSurface surface = tileService.getCachedSurface(chunkX, chunkZ);
+        if (surface != null) {
+            tileViewport.put(chunkX, chunkZ, flatViewport
+                    ? tileService.renderFlatChunk(surface) : tileService.renderFullChunk(surface));
+        }
     }
 
     private void drawPlayerArrows(Canvas canvas, float zoom, int centerX, int centerZ) {
 
-        int width = getPreferredContentSize().x();
-        int height = getPreferredContentSize().y();
+        int width = PREFERRED_WIDTH;
+        int height = PREFERRED_HEIGHT;
+
+        if (arrowMesh == null || arrowMesh.isDisposed()) {
+            arrowMesh = Assets.getMesh("engine:UIBillboard").orElse(null);
+            if (arrowMesh == null) {
+                return;
+            }
+        }
 
+        // collect the visible arrows first, so that no assets are resolved for players outside of the map
+        for (int i = 0; i < arrowIcons.size(); i++) {
+            arrowIcons.get(i).count = 0;
+        }
         for (EntityRef alivePlayer : alivePlayers) {
             LocationComponent playerLocationComponent = alivePlayer.getComponent(LocationComponent.class);
+            if (playerLocationComponent == null) {
+                continue;
+            }
+            playerLocationComponent.getWorldPosition(playerPosition);
+            int xOffset = TeraMath.floorToInt((playerPosition.x() - centerX) * CELL_SIZE.x() * zoom);
+            int zOffset = TeraMath.floorToInt((playerPosition.z() - centerZ) * CELL_SIZE.y() * zoom);
+            if (!isInBounds(width, height, xOffset, zOffset)) {
+                continue;
+            }
+
             MinimapIconComponent minimapIconComponent = alivePlayer.getComponent(MinimapIconComponent.class);
-            if (playerLocationComponent != null && minimapIconComponent != null) {
-
-                Assets.getTexture(minimapIconComponent.iconUrn).ifPresent(icon -> {
-                    //TODO UITexture should be used here, but it doesn't work
-                    Assets.getMaterial("engine:UILitMesh").ifPresent(material -> {
-                        material.setTexture("texture", icon);
-                        Assets.getMesh("engine:UIBillboard").ifPresent(mesh -> {
-                            // Drawing textures with rotation is not yet supported, see #1926
-                            // We therefore use a workaround based on mesh drawing
-                            // The width of the screenArea is doubled to avoid clipping issues when the texture is rotated
-                            int arrowWidth = icon.getWidth() * 2;
-                            int arrowHeight = icon.getHeight() * 2;
-                            int arrowX = (width - arrowWidth) / 2;
-                            int arrowY = (height - arrowHeight) / 2;
-                            //canvas.drawTexture(arrowhead, arrowX, arrowY, rotation);
-
-                            Vector3f playerPosition = playerLocationComponent.getWorldPosition(new Vector3f());
-                            int xOffset = TeraMath.floorToInt((playerPosition.x() - centerX) * CELL_SIZE.x() * zoom);
-                            int zOffset = TeraMath.floorToInt((playerPosition.z() - centerZ) * CELL_SIZE.y() * zoom);
-
-                            if (isInBounds(width, height, xOffset, zOffset)) {
-                                // The scaling seems to be completely wrong - 0.8f looks ok
-                                Quaternionf q = playerLocationComponent.getWorldRotation(new Quaternionf());
-                                // convert to Euler yaw angle
-                                // TODO: move into quaternion
-                                float rotation = -(float) Math.atan2(2.0 * (q.y * q.w + q.x * q.z), 1.0 - 2.0 * (q.y * q.y - q.z * q.z));
-                                Rectanglei screenArea = RectUtility.createFromMinAndSize(arrowX + xOffset, arrowY + zOffset, arrowWidth, arrowHeight);
-                                CanvasUtility.drawMesh(canvas, mesh, icon, screenArea, new Quaternionf().rotationYXZ(0, 0, rotation), new Vector3f(), 0.8f);
-                            }
-                        });
-                    });
-                });
+            if (minimapIconComponent == null) {
+                continue;
+            }
+            ArrowIcon icon = getArrowIcon(minimapIconComponent.iconUrn);
+            if (icon == null) {
+                continue;
+            }
+
+            // The scaling seems to be completely wrong - 0.8f looks ok
+            Quaternionf q = playerLocationComponent.getWorldRotation(playerRotation);
+            // convert to Euler yaw angle
+            // TODO: move into quaternion
+            float rotation = -(float) Math.atan2(2.0 * (q.y * q.w + q.x * q.z), 1.0 - 2.0 * (q.y * q.y - q.z * q.z));
+            icon.add(xOffset, zOffset, rotation);
+        }
+
+        // draw the arrows grouped by icon, so every icon texture is bound only once
+        for (int iconIndex = 0; iconIndex < arrowIcons.size(); iconIndex++) {
+            ArrowIcon arrows = arrowIcons.get(iconIndex);
+            if (arrows.count == 0) {
+                continue;
+            }
+            Texture icon = arrows.texture;
+
+            // Drawing textures with rotation is not yet supported, see #1926
+            // We therefore use a workaround based on mesh drawing
+            // The width of the screenArea is doubled to avoid clipping issues when the texture is rotated
+            int arrowWidth = icon.getWidth() * 2;
+            int arrowHeight = icon.getHeight() * 2;
+            int arrowX = (width - arrowWidth) / 2;
+            int arrowY = (height - arrowHeight) / 2;
+
+            for (int i = 0; i < arrows.count; i++) {
+                int xOffset = arrows.offsets[i * 2];
+                int zOffset = arrows.offsets[i * 2 + 1];
+                arrowArea.set(arrowX + xOffset, arrowY + zOffset, arrowX + xOffset + arrowWidth, arrowY + zOffset + arrowHeight);
+                CanvasUtility.drawMesh(canvas, arrowMesh, icon, arrowArea,
+                        arrowRotation.rotationYXZ(0, 0, arrows.rotations[i]), ARROW_OFFSET, 0.8f);
+                tileService.getTelemetry().add(MinimapTelemetry.Metric.DRAW_CALLS, 1);
             }
         }
     }
 
+    /**
+     * Resolves the icon texture of a player arrow. Textures are resolved once and re-used in later frames.
+     *
+     * @return the icon with the arrows of the current frame or <code>null</code> if the texture is not available
+     */
+    private ArrowIcon getArrowIcon(String iconUrn) {
+        ArrowIcon icon = arrowIconsByUrn.get(iconUrn);
+        if (icon == null || icon.texture.isDisposed()) {
+            Texture texture = Assets.getTexture(iconUrn).orElse(null);
+            if (texture == null) {
+                return null;
+            }
+            if (icon == null) {
+                icon = new ArrowIcon();
+                arrowIconsByUrn.put(iconUrn, icon);
+                arrowIcons.add(icon);
+            }
+            icon.texture = texture;
+        }
+        return icon;
+    }
+
     /**
      * Determine whether a coordinate is still in bounds given by `width` x `height` after applying an offset.
      *
@@ -330,7 +502,7 @@ public class MinimapGrid extends CoreWidget {
     }
 
     public Vector2i getPreferredContentSize() {
-        return new Vector2i(320, 200);
+        return new Vector2i(PREFERRED_WIDTH, PREFERRED_HEIGHT);
     }
 
     public void bindTargetEntity(Binding<EntityRef> binding) {
@@ -357,48 +529,6 @@ public class MinimapGrid extends CoreWidget {
         zoomFactorBinding = offsetBinding;
     }
 
-    private void renderCell(Canvas canvas, Rectanglei rect, Vector3i pos) {
-        Block block = worldProvider.getBlock(pos);
-        if (isIgnored(block)) {
-            do {
-                pos.y -= 1;
-                if (!worldProvider.isBlockRelevant(pos)) {
-                    canvas.drawTexture(questionMark, rect);
-                    return;
-                }
-                block = worldProvider.getBlock(pos);
-            } while (isIgnored(block));
-        } else {
-            do {
-                pos.y += 1;
-                if (!worldProvider.isBlockRelevant(pos)) {
-                    canvas.drawTexture(questionMark, rect);
-                    return;
-                }
-                block = worldProvider.getBlock(pos);
-            } while (!isIgnored(block));
-            pos.y -= 1;
-        }
-
-        float g = brightness.apply(pos.y());
-        Color color = new Color(g, g, g);
-
-        TextureRegion reg = cache.getUnchecked(worldProvider.getBlock(pos));
-        canvas.drawTexture(reg, rect, color);
-
-        pos.y += 1;
-        Block top = worldProvider.getBlock(pos);
-
-        if (top.isDestructible()) {
-            reg = cache.getUnchecked(top);
-            canvas.drawTexture(reg, rect);
-        }
-    }
-
-    private static boolean isIgnored(Block block) {
-        return block.isPenetrable() && !block.isWater();
-    }
-
     public void updateAlivePlayerList(Iterable<EntityRef> alivePlayersIterable) {
         for (EntityRef player : alivePlayersIterable) {
             alivePlayers.add(player);
@@ -417,7 +547,11 @@ public class MinimapGrid extends CoreWidget {
      * @param overlay the overlay to add
      */
     public void addOverlay(MinimapOverlay overlay) {
-        overlays.add(overlay);
+        int idx = overlays.size();
+        while (idx > 0 && overlays.get(idx - 1).getZOrder() > overlay.getZOrder()) {
+            idx--;
+        }
+        overlays.add(idx, overlay);
     }
 
     /**
@@ -427,4 +561,24 @@ public class MinimapGrid extends CoreWidget {
         overlays.remove(overlay);
     }
 
+    /**
+     * An arrow icon and the positions and rotations of the arrows that are drawn with it in the current frame
+     */
+    private static final class ArrowIcon {
+        private Texture texture;
+        private int[] offsets = new int[8];
+        private float[] rotations = new float[4];
+        private int count;
+
+        void add(int xOffset, int zOffset, float rotation) {
+            if (count == rotations.length) {
+                offsets = Arrays.copyOf(offsets, count * 4);
+                rotations = Arrays.copyOf(rotations, count * 2);
+            }
+            offsets[count * 2] = xOffset;
+            offsets[count * 2 + 1] = zOffset;
+            rotations[count] = rotation;
+            count++;
+        }
+    }
 }
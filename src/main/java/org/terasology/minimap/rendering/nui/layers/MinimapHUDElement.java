@@ -8,6 +8,10 @@ import org.terasology.engine.rendering.nui.layers.hud.CoreHudWidget;
 import org.terasology.engine.world.WorldProvider;
 import org.terasology.math.TeraMath;
 import org.terasology.minimap.overlays.MinimapOverlay;
+import org.terasology.minimap.rendering.MinimapTileService;
+import org.terasology.minimap.rendering.OverlayLayerCache;
+import org.terasology.minimap.rendering.TileBuildScheduler;
+import org.terasology.minimap.rendering.TileViewport;
 import org.terasology.nui.databinding.ReadOnlyBinding;
 import org.terasology.nui.widgets.UISlider;
 
@@ -55,6 +59,10 @@ public class MinimapHUDElement extends CoreHudWidget {
         minimapGrid.updateLocation(worldLocation);
     }
 
+    public void updateLocation(int x, int y, int z) {
+        minimapGrid.updateLocation(x, y, z);
+    }
+
     public EntityRef getTargetEntity() {
         return minimapGrid.getTargetEntity();
     }
@@ -79,14 +87,49 @@ public class MinimapHUDElement extends CoreHudWidget {
         minimapGrid.removeAlivePlayer(player);
     }
 
+    /**
+     * @deprecated use {@link MinimapTileService#setHeightRange(int, int)}
+     */
+    @Deprecated
     public void setHeightRange(int bottom, int top) {
         minimapGrid.setHeightRange(bottom, top);
     }
 
+    /**
+     * @deprecated see {@link MinimapGrid#setWorldProvider(WorldProvider)}
+     */
+    @Deprecated
     public void setWorldProvider(WorldProvider worldProvider) {
         minimapGrid.setWorldProvider(worldProvider);
     }
 
+    public void setTileService(MinimapTileService tileService) {
+        minimapGrid.setTileService(tileService);
+    }
+
+    public void setOverlayLayers(OverlayLayerCache overlayLayers) {
+        minimapGrid.setOverlayLayers(overlayLayers);
+    }
+
+    public void setTileViewport(TileViewport tileViewport) {
+        minimapGrid.setTileViewport(tileViewport);
+    }
+
+    public void setTileScheduler(TileBuildScheduler tileScheduler) {
+        minimapGrid.setTileScheduler(tileScheduler);
+    }
+
+    /**
+     * @see MinimapGrid#setAllocationTracking(boolean)
+     */
+    public boolean setAllocationTracking(boolean enabled) {
+        return minimapGrid.setAllocationTracking(enabled);
+    }
+
+    public boolean isAllocationTracking() {
+        return minimapGrid.isAllocationTracking();
+    }
+
     /**
      * @param overlay the overlay to add
      */
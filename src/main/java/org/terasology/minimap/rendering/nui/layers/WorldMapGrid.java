@@ -0,0 +1,246 @@
+// Copyright 2021 The Terasology Foundation
+// SPDX-License-Identifier: Apache-2.0
+
+package org.terasology.minimap.rendering.nui.layers;
+
+import org.joml.Vector2i;
+import org.joml.Vector2ic;
+import org.joml.Vector3f;
+import org.terasology.engine.entitySystem.entity.EntityRef;
+import org.terasology.engine.logic.location.LocationComponent;
+import org.terasology.engine.rendering.assets.texture.Texture;
+import org.terasology.engine.world.chunks.Chunks;
+import org.terasology.input.MouseInput;
+import org.terasology.joml.geom.Rectanglei;
+import org.terasology.math.TeraMath;
+import org.terasology.minimap.rendering.MinimapTelemetry;
+import org.terasology.minimap.rendering.MinimapTileService;
+import org.terasology.nui.BaseInteractionListener;
+import org.terasology.nui.Canvas;
+import org.terasology.nui.Color;
+import org.terasology.nui.CoreWidget;
+import org.terasology.nui.ScaleMode;
+import org.terasology.nui.SubRegion;
+import org.terasology.nui.databinding.Binding;
+import org.terasology.nui.databinding.DefaultBinding;
+import org.terasology.nui.events.InteractionListener;
+import org.terasology.nui.events.NUIMouseClickEvent;
+import org.terasology.nui.events.NUIMouseDragEvent;
+import org.terasology.nui.events.NUIMouseWheelEvent;
+
+/**
+ * A map that fills its region and can be panned by dragging it and zoomed with the mouse wheel.
+ * A right click centers the map on the target entity again.
+ * <p>
+ * Only the visible tiles are drawn. The level of detail is chosen so that tiles are never drawn smaller than
+ * their native size, so the number of tile textures depends on the size of the widget, not on the explored area.
+ * Tiles that are not available yet are requested from the {@link MinimapTileService} and drawn once they are ready.
+ */
+public class WorldMapGrid extends CoreWidget {
+
+    /**
+     * The maximum zoom in pixels per block
+     */
+    private static final float MAX_ZOOM = 16f;
+
+    /**
+     * The zoom factor per mouse wheel turn
+     */
+    private static final float ZOOM_STEP = (float) Math.pow(2.0, 0.25);
+
+    private static final Color BACKGROUND_COLOR = new Color(0x202020FF);
+    private static final Color MARKER_COLOR = new Color(0xFF3030FF);
+    private static final int MARKER_SIZE = 6;
+
+    private Binding<EntityRef> targetEntityBinding = new DefaultBinding<>(EntityRef.NULL);
+
+    private MinimapTileService tileService;
+
+    /**
+     * The world position of the view center and the zoom in pixels per block
+     */
+    private float centerX;
+    private float centerZ;
+    private float zoom = MinimapTileService.getCellSize().x();
+    private boolean centered;
+
+    /**
+     * The size of the widget in the latest frame
+     */
+    private int width;
+    private int height;
+
+    private final Vector2i dragPosition = new Vector2i();
+    private final Vector3f targetPosition = new Vector3f();
+    private final Rectanglei screenRegion = new Rectanglei();
+
+    private final InteractionListener interactionListener = new BaseInteractionListener() {
+
+        @Override
+        public boolean onMouseClick(NUIMouseClickEvent event) {
+            if (event.getMouseButton() == MouseInput.MOUSE_LEFT) {
+                dragPosition.set(event.getRelativeMousePosition());
+                return true;
+            }
+            if (event.getMouseButton() == MouseInput.MOUSE_RIGHT) {
+                centerOnTarget();
+                return true;
+            }
+            return false;
+        }
+
+        @Override
+        public void onMouseDrag(NUIMouseDragEvent event) {
+            Vector2i position = event.getRelativeMousePosition();
+            centerX -= (position.x() - dragPosition.x()) / zoom;
+            centerZ -= (position.y() - dragPosition.y()) / zoom;
+            dragPosition.set(position);
+        }
+
+        @Override
+        public boolean onMouseWheel(NUIMouseWheelEvent event) {
+            zoomAt(event.getRelativeMousePosition(), event.getWheelTurns());
+            return true;
+        }
+    };
+
+    public void setTileService(MinimapTileService tileService) {
+        this.tileService = tileService;
+    }
+
+    /**
+     * Centers the map on the target entity in the next frame.
+     */
+    public void centerOnTarget() {
+        centered = false;
+    }
+
+    @Override
+    public void onDraw(Canvas canvas) {
+        width = canvas.getRegion().lengthX();
+        height = canvas.getRegion().lengthY();
+        canvas.addInteractionRegion(interactionListener);
+
+        int centerY = 0;
+        LocationComponent locationComponent = getTargetEntity().getComponent(LocationComponent.class);
+        if (locationComponent != null) {
+            locationComponent.getWorldPosition(targetPosition);
+            centerY = TeraMath.floorToInt(targetPosition.y());
+            if (!centered) {
+                centerX = targetPosition.x();
+                centerZ = targetPosition.z();
+                centered = true;
+            }
+        }
+
+        screenRegion.set(0, 0, width, height);
+        canvas.drawFilledRectangle(screenRegion, BACKGROUND_COLOR);
+        if (tileService == null) {
+            return;
+        }
+
+        zoom = TeraMath.clamp(zoom, getMinZoom(), MAX_ZOOM);
+        int level = getLevel();
+        int tileBlocksX = Chunks.SIZE_X << level;
+        int tileBlocksZ = Chunks.SIZE_Z << level;
+
+        float worldMinX = centerX - width * 0.5f / zoom;
+        float worldMinZ = centerZ - height * 0.5f / zoom;
+        int minTileX = TeraMath.floorToInt(worldMinX / tileBlocksX);
+        int minTileZ = TeraMath.floorToInt(worldMinZ / tileBlocksZ);
+        int maxTileX = TeraMath.floorToInt((worldMinX + width / zoom) / tileBlocksX);
+        int maxTileZ = TeraMath.floorToInt((worldMinZ + height / zoom) / tileBlocksZ);
+
+        tileService.beginFrame(TeraMath.floorToInt(centerX) >> Chunks.POWER_X,
+                TeraMath.floorToInt(centerZ) >> Chunks.POWER_Z, centerY);
+        // block textures are not recognizable when cells are smaller than their native size
+        boolean detailed = zoom >= MinimapTileService.getCellSize().x();
+        try (SubRegion ignored = canvas.subRegion(canvas.getRegion(), true)) {
+            tileService.beginBatch();
+            for (int tileZ = minTileZ; tileZ <= maxTileZ; tileZ++) {
+                for (int tileX = minTileX; tileX <= maxTileX; tileX++) {
+                    Texture texture = tileService.getTile(canvas, level, tileX, tileZ, detailed);
+                    if (texture == null) {
+                        continue;
+                    }
+                    // derive both edges from the world grid, so neighboring tiles do not leave gaps
+                    int minX = TeraMath.floorToInt((tileX * tileBlocksX - worldMinX) * zoom);
+                    int minZ = TeraMath.floorToInt((tileZ * tileBlocksZ - worldMinZ) * zoom);
+                    int maxX = TeraMath.floorToInt(((tileX + 1) * tileBlocksX - worldMinX) * zoom);
+                    int maxZ = TeraMath.floorToInt(((tileZ + 1) * tileBlocksZ - worldMinZ) * zoom);
+                    screenRegion.set(minX, minZ, maxX, maxZ);
+                    if (level == 0) {
+                        canvas.drawTextureRaw(texture, screenRegion, ScaleMode.STRETCH, 0f, 0f, 1f, 1f);
+                    } else {
+                        // FBO textures are upside down
+                        canvas.drawTextureRaw(texture, screenRegion, ScaleMode.STRETCH, 0f, 1f, 1f, -1f);
+                    }
+                    tileService.getTelemetry().add(MinimapTelemetry.Metric.DRAW_CALLS, 1);
+                }
+            }
+            tileService.endBatch();
+
+            if (locationComponent != null) {
+                int markerX = TeraMath.floorToInt((targetPosition.x() - worldMinX) * zoom);
+                int markerZ = TeraMath.floorToInt((targetPosition.z() - worldMinZ) * zoom);
+                screenRegion.set(markerX - MARKER_SIZE / 2, markerZ - MARKER_SIZE / 2,
+                        markerX + MARKER_SIZE / 2, markerZ + MARKER_SIZE / 2);
+                canvas.drawFilledRectangle(screenRegion, MARKER_COLOR);
+            }
+        }
+        tileService.endFrame();
+    }
+
+    /**
+     * @return the finest level of detail whose tiles are not drawn smaller than their native size
+     */
+    private int getLevel() {
+        float cellsPerPixel = MinimapTileService.getCellSize().x() / zoom;
+        int level = TeraMath.ceilToInt((float) (Math.log(cellsPerPixel) / Math.log(2)) - 1e-4f);
+        return TeraMath.clamp(level, 0, tileService.getMaxLevel());
+    }
+
+    /**
+     * @return the zoom at which the tiles of the coarsest level are drawn at their native size
+     */
+    private float getMinZoom() {
+        return (float) MinimapTileService.getCellSize().x() / (1 << tileService.getMaxLevel());
+    }
+
+    /**
+     * Changes the zoom, keeping the world position under the given point in place.
+     *
+     * @param position the position relative to the widget
+     * @param turns the number of mouse wheel turns, positive to zoom in
+     */
+    private void zoomAt(Vector2ic position, int turns) {
+        float offsetX = position.x() - width * 0.5f;
+        float offsetZ = position.y() - height * 0.5f;
+        float worldX = centerX + offsetX / zoom;
+        float worldZ = centerZ + offsetZ / zoom;
+        zoom *= (float) Math.pow(ZOOM_STEP, turns);
+        if (tileService != null) {
+            zoom = TeraMath.clamp(zoom, getMinZoom(), MAX_ZOOM);
+        }
+        centerX = worldX - offsetX / zoom;
+        centerZ = worldZ - offsetZ / zoom;
+    }
+
+    @Override
+    public Vector2i getPreferredContentSize(Canvas canvas, Vector2i sizeHint) {
+        // the map takes all the space it gets
+        return new Vector2i(sizeHint);
+    }
+
+    public void bindTargetEntity(Binding<EntityRef> binding) {
+        targetEntityBinding = binding;
+    }
+
+    public EntityRef getTargetEntity() {
+        return targetEntityBinding.get();
+    }
+
+    public void setTargetEntity(EntityRef val) {
+        targetEntityBinding.set(val);
+    }
+}
@@ -0,0 +1,54 @@
+// Copyright 2021 The Terasology Foundation
+// SPDX-License-Identifier: Apache-2.0
+
+package org.terasology.minimap.rendering.nui.layers;
+
+import org.terasology.engine.entitySystem.entity.EntityRef;
+import org.terasology.engine.logic.players.LocalPlayer;
+import org.terasology.engine.registry.In;
+import org.terasology.engine.rendering.nui.CoreScreenLayer;
+import org.terasology.logic.players.DefaultMinimapSystem;
+import org.terasology.logic.players.MinimapSystem;
+import org.terasology.nui.databinding.ReadOnlyBinding;
+
+/**
+ * The full-screen world map. It draws the tiles of the shared tile service, so opening it does not scan
+ * any chunks that the minimap has already scanned.
+ */
+public class WorldMapScreen extends CoreScreenLayer {
+
+    private static final String WORLD_MAP_GRID_WIDGET_ID = "worldMapGrid";
+
+    @In
+    private MinimapSystem minimapSystem;
+
+    @In
+    private LocalPlayer localPlayer;
+
+    private WorldMapGrid worldMapGrid;
+
+    @Override
+    public void initialise() {
+        worldMapGrid = find(WORLD_MAP_GRID_WIDGET_ID, WorldMapGrid.class);
+        worldMapGrid.bindTargetEntity(new ReadOnlyBinding<EntityRef>() {
+            @Override
+            public EntityRef get() {
+                return localPlayer.getCharacterEntity();
+            }
+        });
+    }
+
+    @Override
+    public void onOpened() {
+        super.onOpened();
+        if (minimapSystem instanceof DefaultMinimapSystem) {
+            worldMapGrid.setTileService(((DefaultMinimapSystem) minimapSystem).getTileService());
+        }
+        worldMapGrid.centerOnTarget();
+    }
+
+    @Override
+    public boolean isLowerLayerVisible() {
+        return false;
+    }
+}
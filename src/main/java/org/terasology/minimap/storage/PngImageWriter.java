@@ -0,0 +1,213 @@
+// Copyright 2021 The Terasology Foundation
+// SPDX-License-Identifier: Apache-2.0
+
+package org.terasology.minimap.storage;
+
+import com.google.common.base.Preconditions;
+
+import java.io.Closeable;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+
+/**
+ * Encodes an 8-bit RGBA PNG image row by row, so images of any height can be written with the memory of two rows.
+ * The compressed data is split into IDAT chunks of a fixed size as it is produced.
+ * <p>
+ * Every row is filtered with the Paeth predictor, which suits the large areas of similar color in map images.
+ * This class is not thread-safe.
+ */
+public class PngImageWriter implements Closeable {
+
+    private static final byte[] SIGNATURE = {(byte) 0x89, 'P', 'N', 'G', '\r', '\n', 0x1A, '\n'};
+
+    private static final int COLOR_TYPE_RGBA = 6;
+    private static final int FILTER_PAETH = 4;
+    private static final int BYTES_PER_PIXEL = 4;
+
+    /**
+     * The maximum size of the data of an IDAT chunk
+     */
+    private static final int IDAT_BYTES = 64 * 1024;
+
+    private final DataOutputStream out;
+    private final int width;
+    private final int height;
+    private final Deflater deflater = new Deflater(Deflater.DEFAULT_COMPRESSION);
+    private final IdatOutputStream idat = new IdatOutputStream();
+    private final DeflaterOutputStream compressed;
+
+    private byte[] previousRow;
+    private byte[] filteredRow;
+    private int rows;
+    private boolean closed;
+
+    /**
+     * Writes the PNG header. The given stream is closed by {@link #close()}.
+     *
+     * @param out the stream to write to
+     * @param width the width of the image in pixels
+     * @param height the height of the image in pixels
+     * @throws IOException if the header cannot be written
+     */
+    public PngImageWriter(OutputStream out, int width, int height) throws IOException {
+        Preconditions.checkArgument(width > 0 && height > 0, "Invalid image size %sx%s", width, height);
+        Preconditions.checkArgument((long) width * BYTES_PER_PIXEL < Integer.MAX_VALUE, "Image too wide: %s", width);
+        this.out = new DataOutputStream(out);
+        this.width = width;
+        this.height = height;
+        previousRow = new byte[width * BYTES_PER_PIXEL];
+        filteredRow = new byte[1 + width * BYTES_PER_PIXEL];
+        compressed = new DeflaterOutputStream(idat, deflater, IDAT_BYTES);
+
+        this.out.write(SIGNATURE);
+        byte[] header = new byte[13];
+        putInt(header, 0, width);
+        putInt(header, 4, height);
+        header[8] = 8; // bits per channel
+        header[9] = COLOR_TYPE_RGBA;
+        // compression, filter and interlace method 0
+        writeChunk("IHDR", header, 0, header.length);
+    }
+
+    /**
+     * Writes the next row of the image.
+     *
+     * @param rgba the pixels of the row in RGBA order (4 bytes per pixel)
+     * @param offset the index of the first byte of the row
+     * @throws IOException if the row cannot be written
+     * @throws IllegalStateException if all rows have been written already
+     */
+    public void writeRow(byte[] rgba, int offset) throws IOException {
+        Preconditions.checkState(rows < height, "All %s rows have been written", height);
+        filteredRow[0] = FILTER_PAETH;
+        int length = width * BYTES_PER_PIXEL;
+        for (int i = 0; i < length; i++) {
+            int left = i >= BYTES_PER_PIXEL ? rgba[offset + i - BYTES_PER_PIXEL] & 0xFF : 0;
+            int up = previousRow[i] & 0xFF;
+            int upLeft = i >= BYTES_PER_PIXEL ? previousRow[i - BYTES_PER_PIXEL] & 0xFF : 0;
+            filteredRow[1 + i] = (byte) (rgba[offset + i] - paeth(left, up, upLeft));
+        }
+        System.arraycopy(rgba, offset, previousRow, 0, length);
+        compressed.write(filteredRow);
+        rows++;
+    }
+
+    /**
+     * Finishes the image and closes the underlying stream. Missing rows are written as transparent pixels.
+     * Does nothing if the writer has been closed or aborted already.
+     */
+    @Override
+    public void close() throws IOException {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        try {
+            if (rows < height) {
+                byte[] empty = new byte[width * BYTES_PER_PIXEL];
+                while (rows < height) {
+                    writeRow(empty, 0);
+                }
+            }
+            compressed.finish();
+            idat.flush();
+            writeChunk("IEND", new byte[0], 0, 0);
+        } finally {
+            deflater.end();
+            out.close();
+        }
+    }
+
+    /**
+     * Closes the underlying stream without finishing the image, e.g. after an error or when the export
+     * has been cancelled. The written data is not a valid image. Errors on closing the stream are ignored.
+     */
+    public void abort() {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        deflater.end();
+        try {
+            out.close();
+        } catch (IOException e) {
+            // the incomplete data is discarded anyway
+        }
+    }
+
+    private static int paeth(int left, int up, int upLeft) {
+        int estimate = left + up - upLeft;
+        int distLeft = Math.abs(estimate - left);
+        int distUp = Math.abs(estimate - up);
+        int distUpLeft = Math.abs(estimate - upLeft);
+        if (distLeft <= distUp && distLeft <= distUpLeft) {
+            return left;
+        }
+        return distUp <= distUpLeft ? up : upLeft;
+    }
+
+    private void writeChunk(String type, byte[] data, int offset, int length) throws IOException {
+        byte[] typeBytes = type.getBytes(StandardCharsets.US_ASCII);
+        CRC32 crc = new CRC32();
+        crc.update(typeBytes);
+        crc.update(data, offset, length);
+        out.writeInt(length);
+        out.write(typeBytes);
+        out.write(data, offset, length);
+        out.writeInt((int) crc.getValue());
+    }
+
+    private static void putInt(byte[] target, int offset, int value) {
+        target[offset] = (byte) (value >>> 24);
+        target[offset + 1] = (byte) (value >>> 16);
+        target[offset + 2] = (byte) (value >>> 8);
+        target[offset + 3] = (byte) value;
+    }
+
+    /**
+     * Collects the compressed data and writes it as IDAT chunks.
+     */
+    private final class IdatOutputStream extends OutputStream {
+        private final byte[] buffer = new byte[IDAT_BYTES];
+        private int length;
+
+        @Override
+        public void write(int b) throws IOException {
+            if (length == buffer.length) {
+                flushChunk();
+            }
+            buffer[length++] = (byte) b;
+        }
+
+        @Override
+        public void write(byte[] data, int offset, int count) throws IOException {
+            while (count > 0) {
+                if (length == buffer.length) {
+                    flushChunk();
+                }
+                int n = Math.min(count, buffer.length - length);
+                System.arraycopy(data, offset, buffer, length, n);
+                length += n;
+                offset += n;
+                count -= n;
+            }
+        }
+
+        @Override
+        public void flush() throws IOException {
+            flushChunk();
+        }
+
+        private void flushChunk() throws IOException {
+            if (length > 0) {
+                writeChunk("IDAT", buffer, 0, length);
+                length = 0;
+            }
+        }
+    }
+}
@@ -0,0 +1,39 @@
+// Copyright 2021 The Terasology Foundation
+// SPDX-License-Identifier: Apache-2.0
+
+package org.terasology.minimap.storage;
+
+/**
+ * Creates the names of the files that the minimap stores in the engine's sandbox directory.
+ * All files are stored directly in the sandbox directory, so the names must not contain path separators.
+ */
+public final class SandboxFileNames {
+
+    private static final int MAX_LENGTH = 64;
+
+    private SandboxFileNames() {
+        // no instances
+    }
+
+    /**
+     * Turns any text (e.g. the name of a game or a file name entered by a player) into a file name without
+     * directories. Characters other than letters, digits, '-', '_' and '.' are replaced by '_' and leading
+     * dots are removed, so the name cannot refer to another directory or a hidden file.
+     *
+     * @param text the text to derive the name from
+     * @param fallback the name to use if nothing of the text remains
+     * @return a file name of at most 64 characters
+     */
+    public static String sanitize(String text, String fallback) {
+        StringBuilder result = new StringBuilder();
+        for (int i = 0; i < text.length() && result.length() < MAX_LENGTH; i++) {
+            char c = text.charAt(i);
+            if (c == '.' && result.length() == 0) {
+                continue;
+            }
+            boolean valid = c < 128 && (Character.isLetterOrDigit(c) || c == '-' || c == '_' || c == '.');
+            result.append(valid ? c : '_');
+        }
+        return result.length() > 0 ? result.toString() : fallback;
+    }
+}
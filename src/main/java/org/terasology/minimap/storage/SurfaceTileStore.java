@@ -0,0 +1,422 @@
+// Copyright 2021 The Terasology Foundation
+// SPDX-License-Identifier: Apache-2.0
+
+package org.terasology.minimap.storage;
+
+import gnu.trove.set.TLongSet;
+import gnu.trove.set.hash.TLongHashSet;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.terasology.engine.core.module.SandboxFileManager;
+import org.terasology.joml.geom.Rectanglei;
+import org.terasology.minimap.surface.ChunkKeys;
+import org.terasology.minimap.surface.ChunkSurface;
+import org.terasology.minimap.surface.ChunkSurfaceCodec;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Persists explored chunk surfaces in region files, so they are still available after the chunks have been
+ * unloaded or the game has been restarted. All files are accessed through the engine's {@link SandboxFileManager}.
+ * <p>
+ * A region file contains up to 32 x 32 chunks. It starts with a header (magic number, version and number of
+ * records), followed by an index with the slot, offset and length of every stored chunk and the records
+ * themselves, which are encoded by {@link ChunkSurfaceCodec}. So a region file only grows with the number of
+ * explored chunks. Since the sandbox cannot list files, the coordinates of all region files are kept in a
+ * separate region list.
+ * <p>
+ * Region files are read as a whole when one of their chunks is accessed and a bounded number of them is kept
+ * in memory. Writes are collected (only the latest version of a chunk is kept) and written in batches on a
+ * background thread, which rewrites the changed region files.
+ * Block ids are stored as they are, since they do not change for a given world.
+ * <p>
+ * All public methods are thread-safe.
+ */
+public class SurfaceTileStore {
+
+    private static final Logger logger = LoggerFactory.getLogger(SurfaceTileStore.class);
+
+    private static final int MAGIC = 0x4d4d5346; // "MMSF"
+    private static final int VERSION = 2;
+    private static final int LIST_MAGIC = 0x4d4d534c; // "MMSL"
+
+    private static final int REGION_POWER = 5;
+    private static final int REGION_MASK = (1 << REGION_POWER) - 1;
+    private static final int SLOTS = 1 << (2 * REGION_POWER);
+    private static final int HEADER_BYTES = 3 * Integer.BYTES;
+    private static final int INDEX_ENTRY_BYTES = Short.BYTES + 2 * Integer.BYTES;
+
+    /**
+     * The number of regions that are kept in memory (unless they have pending changes)
+     */
+    private static final int MAX_CACHED_REGIONS = 64;
+
+    private static final long FLUSH_INTERVAL_MS = 5000;
+    private static final int FLUSH_BATCH_SIZE = 64;
+
+    private final SandboxFileManager files;
+    private final String name;
+
+    private final Map<Long, Region> regions = new LinkedHashMap<Long, Region>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<Long, Region> eldest) {
+            return size() > MAX_CACHED_REGIONS && !eldest.getValue().dirty;
+        }
+    };
+
+    /**
+     * The keys of all regions that have a file, <code>null</code> until the region list has been read
+     */
+    private TLongSet storedRegions;
+    private boolean regionListChanged;
+
+    private final Map<Long, ChunkSurface> pendingWrites = new ConcurrentHashMap<>();
+    private final ScheduledExecutorService writer;
+
+    /**
+     * @param files the sandboxed file access
+     * @param name the common prefix of the file names of this store, see {@link SandboxFileNames#sanitize}
+     */
+    public SurfaceTileStore(SandboxFileManager files, String name) {
+        this.files = files;
+        this.name = name;
+        this.writer = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "Minimap-Store-Writer");
+            thread.setDaemon(true);
+            return thread;
+        });
+        writer.scheduleWithFixedDelay(this::flushSafely, FLUSH_INTERVAL_MS, FLUSH_INTERVAL_MS, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * @return true if the surface of the chunk has been stored
+     */
+    public boolean contains(int chunkX, int chunkZ) {
+        if (!pendingWrites.isEmpty() && pendingWrites.containsKey(ChunkKeys.pack(chunkX, chunkZ))) {
+            return true;
+        }
+        synchronized (this) {
+            Region region = getRegion(chunkX, chunkZ, false);
+            return region != null && region.records[slotIndex(chunkX, chunkZ)] != null;
+        }
+    }
+
+    /**
+     * Reads a chunk surface from the store.
+     *
+     * @return the stored surface or <code>null</code> if it is not available
+     */
+    public ChunkSurface load(int chunkX, int chunkZ) {
+        ChunkSurface pending = pendingWrites.get(ChunkKeys.pack(chunkX, chunkZ));
+        if (pending != null) {
+            return pending.copy();
+        }
+        byte[] record;
+        synchronized (this) {
+            Region region = getRegion(chunkX, chunkZ, false);
+            record = region != null ? region.records[slotIndex(chunkX, chunkZ)] : null;
+        }
+        if (record == null) {
+            return null;
+        }
+        try {
+            return ChunkSurfaceCodec.decode(chunkX, chunkZ, record);
+        } catch (IllegalArgumentException e) {
+            logger.warn("Ignoring invalid minimap surface of chunk ({}, {})", chunkX, chunkZ, e);
+            return null;
+        }
+    }
+
+    /**
+     * Finds the area that contains all stored chunks, including the pending writes.
+     *
+     * @return the chunk area (the maximum is exclusive) or <code>null</code> if no chunk is stored
+     */
+    public Rectanglei getChunkBounds() {
+        Rectanglei bounds = null;
+        synchronized (this) {
+            long[] keys = getStoredRegions().toArray();
+            for (long key : keys) {
+                int regionX = ChunkKeys.unpackX(key);
+                int regionZ = ChunkKeys.unpackZ(key);
+                Region region = getRegion(regionX << REGION_POWER, regionZ << REGION_POWER, false);
+                for (int slot = 0; region != null && slot < SLOTS; slot++) {
+                    if (region.records[slot] != null) {
+                        bounds = include(bounds, (regionX << REGION_POWER) + (slot & REGION_MASK),
+                                (regionZ << REGION_POWER) + (slot >> REGION_POWER));
+                    }
+                }
+            }
+        }
+        for (Long key : pendingWrites.keySet()) {
+            bounds = include(bounds, ChunkKeys.unpackX(key), ChunkKeys.unpackZ(key));
+        }
+        return bounds;
+    }
+
+    private static Rectanglei include(Rectanglei bounds, int chunkX, int chunkZ) {
+        if (bounds == null) {
+            return new Rectanglei(chunkX, chunkZ, chunkX + 1, chunkZ + 1);
+        }
+        return bounds.set(Math.min(bounds.minX, chunkX), Math.min(bounds.minY, chunkZ),
+                Math.max(bounds.maxX, chunkX + 1), Math.max(bounds.maxY, chunkZ + 1));
+    }
+
+    /**
+     * Schedules a chunk surface to be written. A copy of the surface is taken, so the given instance can be
+     * modified afterwards. Earlier pending versions of the same chunk are replaced.
+     *
+     * @param surface the surface to store
+     */
+    public void save(ChunkSurface surface) {
+        pendingWrites.put(ChunkKeys.pack(surface.getChunkX(), surface.getChunkZ()), surface.copy());
+        if (pendingWrites.size() >= FLUSH_BATCH_SIZE) {
+            writer.execute(this::flushSafely);
+        }
+    }
+
+    /**
+     * Writes all pending surfaces to disk. Called periodically on the writer thread.
+     * <p>
+     * A surface stays pending until it has been added to its region, so it can be loaded at any time. If it is
+     * replaced in the meantime, the newer version is kept for the next flush.
+     */
+    public void flush() {
+        for (Map.Entry<Long, ChunkSurface> entry : pendingWrites.entrySet()) {
+            ChunkSurface surface = entry.getValue();
+            byte[] record = ChunkSurfaceCodec.encode(surface);
+            synchronized (this) {
+                Region region = getRegion(surface.getChunkX(), surface.getChunkZ(), true);
+                region.records[slotIndex(surface.getChunkX(), surface.getChunkZ())] = record;
+                region.dirty = true;
+            }
+            pendingWrites.remove(entry.getKey(), surface);
+        }
+
+        // serialize the changed regions while holding the lock, but write them without it
+        List<String> fileNames = new ArrayList<>();
+        List<byte[]> contents = new ArrayList<>();
+        synchronized (this) {
+            for (Map.Entry<Long, Region> entry : regions.entrySet()) {
+                Region region = entry.getValue();
+                if (region.dirty) {
+                    fileNames.add(regionFileName(ChunkKeys.unpackX(entry.getKey()), ChunkKeys.unpackZ(entry.getKey())));
+                    contents.add(region.serialize());
+                    region.dirty = false;
+                }
+            }
+            if (regionListChanged) {
+                fileNames.add(name + ".regions");
+                contents.add(serializeRegionList(storedRegions));
+                regionListChanged = false;
+            }
+        }
+        for (int i = 0; i < fileNames.size(); i++) {
+            byte[] content = contents.get(i);
+            files.writeFile(fileNames.get(i), out -> {
+                try {
+                    out.write(content);
+                } catch (IOException e) {
+                    throw new IllegalStateException("Could not write minimap surfaces", e);
+                }
+            });
+        }
+    }
+
+    private void flushSafely() {
+        try {
+            flush();
+        } catch (RuntimeException e) {
+            // an exception would cancel the periodic flush
+            logger.error("Failed to write minimap surfaces", e);
+        }
+    }
+
+    /**
+     * Writes all pending surfaces, stops the writer thread and releases the cached regions.
+     */
+    public void close() {
+        writer.shutdown();
+        try {
+            writer.awaitTermination(FLUSH_INTERVAL_MS, TimeUnit.MILLISECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        flush();
+        synchronized (this) {
+            regions.clear();
+        }
+    }
+
+    private static int slotIndex(int chunkX, int chunkZ) {
+        return ((chunkZ & REGION_MASK) << REGION_POWER) | (chunkX & REGION_MASK);
+    }
+
+    private String regionFileName(int regionX, int regionZ) {
+        return name + ".r." + regionX + "." + regionZ + ".mmr";
+    }
+
+    /**
+     * Must be called while holding the lock of the store.
+     *
+     * @param create whether a missing region should be created
+     * @return the region that contains the chunk or <code>null</code> if it does not exist
+     */
+    private Region getRegion(int chunkX, int chunkZ, boolean create) {
+        int regionX = chunkX >> REGION_POWER;
+        int regionZ = chunkZ >> REGION_POWER;
+        long key = ChunkKeys.pack(regionX, regionZ);
+        Region region = regions.get(key);
+        if (region != null) {
+            return region;
+        }
+
+        TLongSet stored = getStoredRegions();
+        if (stored.contains(key)) {
+            region = readRegion(regionFileName(regionX, regionZ));
+        } else if (create) {
+            region = new Region();
+            stored.add(key);
+            regionListChanged = true;
+        } else {
+            return null;
+        }
+        regions.put(key, region);
+        return region;
+    }
+
+    private TLongSet getStoredRegions() {
+        if (storedRegions == null) {
+            storedRegions = new TLongHashSet();
+            byte[] data = readFile(name + ".regions");
+            if (data != null) {
+                try {
+                    ByteBuffer buffer = ByteBuffer.wrap(data);
+                    if (buffer.getInt() != LIST_MAGIC) {
+                        throw new IllegalArgumentException("Invalid magic number");
+                    }
+                    int count = buffer.getInt();
+                    for (int i = 0; i < count; i++) {
+                        storedRegions.add(ChunkKeys.pack(buffer.getInt(), buffer.getInt()));
+                    }
+                } catch (IllegalArgumentException | BufferUnderflowException e) {
+                    logger.warn("Invalid minimap region list {}, stored surfaces are ignored", name, e);
+                    storedRegions.clear();
+                }
+            }
+        }
+        return storedRegions;
+    }
+
+    private static byte[] serializeRegionList(TLongSet keys) {
+        ByteBuffer buffer = ByteBuffer.allocate(2 * Integer.BYTES + keys.size() * 2 * Integer.BYTES);
+        buffer.putInt(LIST_MAGIC);
+        buffer.putInt(keys.size());
+        keys.forEach(key -> {
+            buffer.putInt(ChunkKeys.unpackX(key));
+            buffer.putInt(ChunkKeys.unpackZ(key));
+            return true;
+        });
+        return buffer.array();
+    }
+
+    private Region readRegion(String fileName) {
+        Region region = new Region();
+        byte[] data = readFile(fileName);
+        if (data == null) {
+            return region;
+        }
+        try {
+            ByteBuffer buffer = ByteBuffer.wrap(data);
+            if (buffer.getInt() != MAGIC || buffer.getInt() != VERSION) {
+                throw new IllegalArgumentException("Unknown format");
+            }
+            int count = buffer.getInt();
+            if (count < 0 || count > SLOTS) {
+                throw new IllegalArgumentException("Invalid number of records " + count);
+            }
+            int dataStart = HEADER_BYTES + count * INDEX_ENTRY_BYTES;
+            int dataLength = data.length - dataStart;
+            for (int i = 0; i < count; i++) {
+                int slot = buffer.getShort() & 0xFFFF;
+                int offset = buffer.getInt();
+                int length = buffer.getInt();
+                if (slot >= SLOTS || offset < 0 || length <= 0 || offset > dataLength - length) {
+                    throw new IllegalArgumentException("Invalid record of slot " + slot);
+                }
+                region.records[slot] = new byte[length];
+                System.arraycopy(data, dataStart + offset, region.records[slot], 0, length);
+            }
+        } catch (IllegalArgumentException | BufferUnderflowException e) {
+            logger.warn("Invalid minimap region file {}, its surfaces are ignored", fileName, e);
+            return new Region();
+        }
+        return region;
+    }
+
+    /**
+     * @return the content of the file or <code>null</code> if it cannot be read
+     */
+    private byte[] readFile(String fileName) {
+        byte[][] result = new byte[1][];
+        files.readFile(fileName, in -> {
+            try {
+                result[0] = in.readAllBytes();
+            } catch (IOException e) {
+                logger.warn("Could not read minimap file {}", fileName, e);
+            }
+        });
+        return result[0];
+    }
+
+    /**
+     * The encoded surfaces of the chunks of a region. Guarded by the lock of the store.
+     */
+    private static final class Region {
+        private final byte[][] records = new byte[SLOTS][];
+        private boolean dirty;
+
+        byte[] serialize() {
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            try (DataOutputStream out = new DataOutputStream(bytes)) {
+                out.writeInt(MAGIC);
+                out.writeInt(VERSION);
+                int count = 0;
+                for (byte[] record : records) {
+                    count += record != null ? 1 : 0;
+                }
+                out.writeInt(count);
+                int offset = 0;
+                for (int slot = 0; slot < SLOTS; slot++) {
+                    if (records[slot] != null) {
+                        out.writeShort(slot);
+                        out.writeInt(offset);
+                        out.writeInt(records[slot].length);
+                        offset += records[slot].length;
+                    }
+                }
+                for (byte[] record : records) {
+                    if (record != null) {
+                        out.write(record);
+                    }
+                }
+            } catch (IOException e) {
+                // cannot happen when writing to memory
+                throw new IllegalStateException(e);
+            }
+            return bytes.toByteArray();
+        }
+    }
+}
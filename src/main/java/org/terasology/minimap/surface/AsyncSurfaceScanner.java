@@ -0,0 +1,247 @@
+// Copyright 2021 The Terasology Foundation
+// SPDX-License-Identifier: Apache-2.0
+
+package org.terasology.minimap.surface;
+
+import gnu.trove.list.TIntList;
+import gnu.trove.list.TLongList;
+import gnu.trove.list.array.TIntArrayList;
+import gnu.trove.list.array.TLongArrayList;
+import gnu.trove.set.TLongSet;
+import gnu.trove.set.hash.TLongHashSet;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.terasology.minimap.storage.SurfaceTileStore;
+
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinWorkerThread;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Scans chunk surfaces on background threads. Finished results are collected
+ * and can be fetched from the render thread through {@link #poll()}.
+ * <p>
+ * Scans that are requested between {@link #beginBatch()} and {@link #endBatch()} are split across all
+ * threads of the pool and published together once the entire batch is done.
+ * <p>
+ * All methods are meant to be called from the render thread only.
+ */
+public class AsyncSurfaceScanner {
+
+    private static final Logger logger = LoggerFactory.getLogger(AsyncSurfaceScanner.class);
+
+    private final SurfaceScanner scanner;
+    private final ForkJoinPool executor;
+
+    private final TLongSet pending = new TLongHashSet();
+    private final Queue<ChunkSurface> completed = new ConcurrentLinkedQueue<>();
+    private final Queue<Long> failed = new ConcurrentLinkedQueue<>();
+
+    private boolean batching;
+    private final TLongList batchKeys = new TLongArrayList();
+    private final TIntList batchStartYs = new TIntArrayList();
+
+    /**
+     * @param scanner the scanner to use
+     * @param parallelism the number of worker threads
+     */
+    public AsyncSurfaceScanner(SurfaceScanner scanner, int parallelism) {
+        this(scanner, new ForkJoinPool(parallelism, new ScannerThreadFactory(), null, false));
+    }
+
+    /**
+     * @param scanner the scanner to use
+     * @param executor the pool that runs the scans (it is shut down by {@link #shutdown()})
+     */
+    public AsyncSurfaceScanner(SurfaceScanner scanner, ForkJoinPool executor) {
+        this.scanner = scanner;
+        this.executor = executor;
+    }
+
+    /**
+     * @return the underlying (synchronous) scanner
+     */
+    public SurfaceScanner getScanner() {
+        return scanner;
+    }
+
+    /**
+     * Queues a chunk for scanning, unless it is already queued.
+     *
+     * @param chunkX the chunk x coordinate
+     * @param chunkZ the chunk z coordinate
+     * @param startY the height to start searching for the surface layer
+     * @return true if the chunk was queued, false if it was already pending
+     */
+    public boolean request(int chunkX, int chunkZ, int startY) {
+        long key = ChunkKeys.pack(chunkX, chunkZ);
+        if (!pending.add(key)) {
+            return false;
+        }
+        if (batching) {
+            batchKeys.add(key);
+            batchStartYs.add(startY);
+            return true;
+        }
+        executor.execute(() -> {
+            ChunkSurface surface = scan(key, startY);
+            if (surface != null) {
+                completed.add(surface);
+            }
+        });
+        return true;
+    }
+
+    /**
+     * Starts collecting scan requests into a batch.
+     */
+    public void beginBatch() {
+        batching = true;
+    }
+
+    /**
+     * Submits all scan requests since {@link #beginBatch()} as a single batch.
+     */
+    public void endBatch() {
+        batching = false;
+        if (batchKeys.isEmpty()) {
+            return;
+        }
+        long[] keys = batchKeys.toArray();
+        int[] startYs = batchStartYs.toArray();
+        batchKeys.clear();
+        batchStartYs.clear();
+
+        executor.execute(() -> {
+            ChunkSurface[] results = new ChunkSurface[keys.length];
+            new BatchScan(keys, startYs, results, 0, keys.length).invoke();
+            for (ChunkSurface surface : results) {
+                if (surface != null) {
+                    completed.add(surface);
+                }
+            }
+        });
+    }
+
+    private ChunkSurface scan(long key, int startY) {
+        int chunkX = ChunkKeys.unpackX(key);
+        int chunkZ = ChunkKeys.unpackZ(key);
+        try {
+            return scanner.scan(chunkX, chunkZ, startY);
+        } catch (RuntimeException e) {
+            logger.warn("Could not scan chunk {}/{}", chunkX, chunkZ, e);
+            failed.add(key);
+            return null;
+        }
+    }
+
+    /**
+     * Queues a chunk to be loaded from a store, unless it is already queued.
+     *
+     * @param chunkX the chunk x coordinate
+     * @param chunkZ the chunk z coordinate
+     * @param store the store that contains the chunk surface
+     * @return true if the chunk was queued, false if it was already pending
+     */
+    public boolean requestStored(int chunkX, int chunkZ, SurfaceTileStore store) {
+        long key = ChunkKeys.pack(chunkX, chunkZ);
+        if (!pending.add(key)) {
+            return false;
+        }
+        executor.execute(() -> {
+            ChunkSurface surface = null;
+            try {
+                surface = store.load(chunkX, chunkZ);
+            } catch (RuntimeException e) {
+                logger.warn("Could not load chunk {}/{}", chunkX, chunkZ, e);
+            }
+            if (surface != null) {
+                completed.add(surface);
+            } else {
+                failed.add(key);
+            }
+        });
+        return true;
+    }
+
+    /**
+     * @return true if the chunk is queued or currently being scanned
+     */
+    public boolean isPending(int chunkX, int chunkZ) {
+        return pending.contains(ChunkKeys.pack(chunkX, chunkZ));
+    }
+
+    /**
+     * @return the next finished surface or <code>null</code> if there is none
+     */
+    public ChunkSurface poll() {
+        Long failedKey;
+        while ((failedKey = failed.poll()) != null) {
+            pending.remove(failedKey);
+        }
+
+        ChunkSurface surface = completed.poll();
+        if (surface != null) {
+            pending.remove(ChunkKeys.pack(surface.getChunkX(), surface.getChunkZ()));
+        }
+        return surface;
+    }
+
+    /**
+     * Stops all worker threads and discards all pending requests.
+     */
+    public void shutdown() {
+        executor.shutdownNow();
+        batching = false;
+        batchKeys.clear();
+        batchStartYs.clear();
+        pending.clear();
+        completed.clear();
+        failed.clear();
+    }
+
+    /**
+     * Scans a range of a batch by splitting it in halves until single chunks remain.
+     */
+    private final class BatchScan extends RecursiveAction {
+        private final long[] keys;
+        private final int[] startYs;
+        private final ChunkSurface[] results;
+        private final int from;
+        private final int to;
+
+        BatchScan(long[] keys, int[] startYs, ChunkSurface[] results, int from, int to) {
+            this.keys = keys;
+            this.startYs = startYs;
+            this.results = results;
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected void compute() {
+            if (to - from == 1) {
+                results[from] = scan(keys[from], startYs[from]);
+            } else {
+                int mid = (from + to) >>> 1;
+                invokeAll(new BatchScan(keys, startYs, results, from, mid), new BatchScan(keys, startYs, results, mid, to));
+            }
+        }
+    }
+
+    private static final class ScannerThreadFactory implements ForkJoinPool.ForkJoinWorkerThreadFactory {
+        private final AtomicInteger count = new AtomicInteger();
+
+        @Override
+        public ForkJoinWorkerThread newThread(ForkJoinPool pool) {
+            ForkJoinWorkerThread thread = ForkJoinPool.defaultForkJoinWorkerThreadFactory.newThread(pool);
+            thread.setName("Minimap-Scanner-" + count.incrementAndGet());
+            thread.setDaemon(true);
+            thread.setPriority(Thread.MIN_PRIORITY);
+            return thread;
+        }
+    }
+}
@@ -0,0 +1,109 @@
+// Copyright 2021 The Terasology Foundation
+// SPDX-License-Identifier: Apache-2.0
+
+package org.terasology.minimap.surface;
+
+import org.terasology.engine.world.WorldProvider;
+import org.terasology.engine.world.block.Block;
+import org.terasology.engine.world.chunks.Chunk;
+import org.terasology.engine.world.chunks.ChunkProvider;
+
+/**
+ * The block access that is required to scan the surface of the world.
+ * <p>
+ * Sources can optionally provide direct access to the blocks of a chunk through {@link #getChunk(int, int, int)},
+ * which saves the chunk lookup for every single block.
+ */
+public interface BlockSource {
+
+    /**
+     * @return the block at the given world position
+     */
+    Block getBlock(int x, int y, int z);
+
+    /**
+     * @return true if the block at the given world position is loaded
+     */
+    boolean isBlockRelevant(int x, int y, int z);
+
+    /**
+     * @param chunkX the chunk x coordinate
+     * @param chunkY the chunk y coordinate
+     * @param chunkZ the chunk z coordinate
+     * @return the blocks of the chunk or <code>null</code> if the chunk is not loaded or chunk access is not supported.
+     *         The returned instance is only used for a single scan.
+     */
+    default ChunkBlocks getChunk(int chunkX, int chunkY, int chunkZ) {
+        return null;
+    }
+
+    /**
+     * @param worldProvider the world provider to read from
+     * @return a block source that delegates to the given world provider
+     */
+    static BlockSource of(WorldProvider worldProvider) {
+        return new BlockSource() {
+            @Override
+            public Block getBlock(int x, int y, int z) {
+                return worldProvider.getBlock(x, y, z);
+            }
+
+            @Override
+            public boolean isBlockRelevant(int x, int y, int z) {
+                return worldProvider.isBlockRelevant(x, y, z);
+            }
+        };
+    }
+
+    /**
+     * @param worldProvider the world provider to read from
+     * @param chunkProvider the chunk provider that gives direct access to loaded chunks
+     * @return a block source that reads from the chunks and falls back to the world provider
+     */
+    static BlockSource of(WorldProvider worldProvider, ChunkProvider chunkProvider) {
+        BlockSource world = of(worldProvider);
+        return new BlockSource() {
+            @Override
+            public Block getBlock(int x, int y, int z) {
+                return world.getBlock(x, y, z);
+            }
+
+            @Override
+            public boolean isBlockRelevant(int x, int y, int z) {
+                return world.isBlockRelevant(x, y, z);
+            }
+
+            @Override
+            public ChunkBlocks getChunk(int chunkX, int chunkY, int chunkZ) {
+                Chunk chunk = chunkProvider.getChunk(chunkX, chunkY, chunkZ);
+                return chunk == null ? null : new LoadedChunkBlocks(chunk);
+            }
+        };
+    }
+
+    /**
+     * Direct access to the blocks of a loaded chunk.
+     */
+    interface ChunkBlocks {
+
+        /**
+         * @param x the x coordinate relative to the chunk
+         * @param y the y coordinate relative to the chunk
+         * @param z the z coordinate relative to the chunk
+         * @return the block at the given position
+         */
+        Block getBlock(int x, int y, int z);
+
+        /**
+         * @return the lowest relative y coordinate that may contain a block other than air
+         * (greater than {@link #getMaxNonAirY()} if the chunk contains only air)
+         */
+        int getMinNonAirY();
+
+        /**
+         * @return the highest relative y coordinate that may contain a block other than air
+         * (less than {@link #getMinNonAirY()} if the chunk contains only air)
+         */
+        int getMaxNonAirY();
+    }
+}
@@ -0,0 +1,39 @@
+// Copyright 2021 The Terasology Foundation
+// SPDX-License-Identifier: Apache-2.0
+
+package org.terasology.minimap.surface;
+
+/**
+ * Packs a horizontal chunk position (x/z) into a single long, so it can be used as key in primitive collections.
+ */
+public final class ChunkKeys {
+
+    private ChunkKeys() {
+        // no instances
+    }
+
+    /**
+     * @param chunkX the chunk x coordinate
+     * @param chunkZ the chunk z coordinate
+     * @return the packed key
+     */
+    public static long pack(int chunkX, int chunkZ) {
+        return ((long) chunkX << 32) | (chunkZ & 0xFFFFFFFFL);
+    }
+
+    /**
+     * @param key a key created by {@link #pack(int, int)}
+     * @return the chunk x coordinate
+     */
+    public static int unpackX(long key) {
+        return (int) (key >> 32);
+    }
+
+    /**
+     * @param key a key created by {@link #pack(int, int)}
+     * @return the chunk z coordinate
+     */
+    public static int unpackZ(long key) {
+        return (int) key;
+    }
+}
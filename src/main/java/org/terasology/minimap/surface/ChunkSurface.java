@@ -0,0 +1,144 @@
+// Copyright 2021 The Terasology Foundation
+// SPDX-License-Identifier: Apache-2.0
+
+package org.terasology.minimap.surface;
+
+import org.terasology.engine.world.chunks.Chunks;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+/**
+ * The visible surface of a chunk column as seen from above. For every block column it stores the height
+ * of the surface block, its block id and the id of a decoration block (e.g. a plant) on top of it.
+ */
+public final class ChunkSurface {
+
+    /**
+     * Marks a column whose surface could not be determined (e.g. because the chunk is not loaded).
+     */
+    public static final short UNKNOWN_HEIGHT = Short.MIN_VALUE;
+
+    /**
+     * The number of block columns in a chunk
+     */
+    public static final int COLUMNS = Chunks.SIZE_X * Chunks.SIZE_Z;
+
+    /**
+     * The approximate memory footprint of a single instance in bytes
+     */
+    public static final int BYTES = 3 * COLUMNS * Short.BYTES + 64;
+
+    /**
+     * The number of bytes written by {@link #writeTo(ByteBuffer)}
+     */
+    public static final int SERIALIZED_BYTES = 3 * COLUMNS * Short.BYTES;
+
+    private final int chunkX;
+    private final int chunkZ;
+
+    private final short[] heights = new short[COLUMNS];
+    private final short[] blockIds = new short[COLUMNS];
+    private final short[] topIds = new short[COLUMNS];
+
+    public ChunkSurface(int chunkX, int chunkZ) {
+        this.chunkX = chunkX;
+        this.chunkZ = chunkZ;
+        Arrays.fill(heights, UNKNOWN_HEIGHT);
+    }
+
+    /**
+     * @param column the x coordinate relative to the chunk
+     * @param row the z coordinate relative to the chunk
+     * @return the index of the column in the data arrays
+     */
+    public static int index(int column, int row) {
+        return row * Chunks.SIZE_X + column;
+    }
+
+    public int getChunkX() {
+        return chunkX;
+    }
+
+    public int getChunkZ() {
+        return chunkZ;
+    }
+
+    public boolean isKnown(int column, int row) {
+        return heights[index(column, row)] != UNKNOWN_HEIGHT;
+    }
+
+    /**
+     * @return the y coordinate of the surface block or {@link #UNKNOWN_HEIGHT}
+     */
+    public int getHeight(int column, int row) {
+        return heights[index(column, row)];
+    }
+
+    /**
+     * @return the id of the surface block
+     */
+    public short getBlockId(int column, int row) {
+        return blockIds[index(column, row)];
+    }
+
+    /**
+     * @return the id of the decoration block on top of the surface or 0 (air) if there is none
+     */
+    public short getTopId(int column, int row) {
+        return topIds[index(column, row)];
+    }
+
+    /**
+     * @param column the x coordinate relative to the chunk
+     * @param row the z coordinate relative to the chunk
+     * @param height the y coordinate of the surface block
+     * @param blockId the id of the surface block
+     * @param topId the id of the decoration block or 0 (air)
+     */
+    public void set(int column, int row, int height, short blockId, short topId) {
+        int idx = index(column, row);
+        heights[idx] = (short) height;
+        blockIds[idx] = blockId;
+        topIds[idx] = topId;
+    }
+
+    /**
+     * @return a deep copy of this surface
+     */
+    public ChunkSurface copy() {
+        ChunkSurface copy = new ChunkSurface(chunkX, chunkZ);
+        System.arraycopy(heights, 0, copy.heights, 0, COLUMNS);
+        System.arraycopy(blockIds, 0, copy.blockIds, 0, COLUMNS);
+        System.arraycopy(topIds, 0, copy.topIds, 0, COLUMNS);
+        return copy;
+    }
+
+    /**
+     * Writes all columns to the buffer, starting at its current position.
+     * Exactly {@link #SERIALIZED_BYTES} bytes are written.
+     */
+    public void writeTo(ByteBuffer buffer) {
+        buffer.asShortBuffer().put(heights).put(blockIds).put(topIds);
+        buffer.position(buffer.position() + SERIALIZED_BYTES);
+    }
+
+    /**
+     * Reads all columns from the buffer, starting at its current position.
+     * Exactly {@link #SERIALIZED_BYTES} bytes are read.
+     */
+    public void readFrom(ByteBuffer buffer) {
+        buffer.asShortBuffer().get(heights).get(blockIds).get(topIds);
+        buffer.position(buffer.position() + SERIALIZED_BYTES);
+    }
+
+    /**
+     * Marks the given column as unknown.
+     */
+    public void setUnknown(int column, int row) {
+        int idx = index(column, row);
+        heights[idx] = UNKNOWN_HEIGHT;
+        blockIds[idx] = 0;
+        topIds[idx] = 0;
+    }
+}
@@ -0,0 +1,165 @@
+// Copyright 2021 The Terasology Foundation
+// SPDX-License-Identifier: Apache-2.0
+
+package org.terasology.minimap.surface;
+
+import gnu.trove.map.TLongObjectMap;
+import gnu.trove.map.hash.TLongObjectHashMap;
+import org.terasology.engine.world.chunks.Chunks;
+
+/**
+ * Keeps the surfaces of recently seen chunks in memory, keyed by the (packed) horizontal chunk position.
+ * The total memory is bounded; the least recently used surfaces are evicted first.
+ * <p>
+ * This class is not thread-safe and is meant to be used from the render thread only.
+ */
+public class ChunkSurfaceCache {
+
+    private final TLongObjectMap<Entry> entries = new TLongObjectHashMap<>();
+
+    /**
+     * Sentinel of the doubly-linked LRU list: <code>head.next</code> is the most recently used entry,
+     * <code>head.prev</code> the least recently used one.
+     */
+    private final Entry head = new Entry(0, null);
+
+    private final int capacity;
+
+    /**
+     * @param maxBytes the maximum memory in bytes that the cached surfaces may occupy
+     */
+    public ChunkSurfaceCache(long maxBytes) {
+        this.capacity = (int) Math.max(1, maxBytes / ChunkSurface.BYTES);
+        head.prev = head;
+        head.next = head;
+    }
+
+    /**
+     * Returns the cached surface and marks it as recently used.
+     *
+     * @return the surface or <code>null</code> if not cached
+     */
+    public ChunkSurface get(int chunkX, int chunkZ) {
+        Entry entry = entries.get(ChunkKeys.pack(chunkX, chunkZ));
+        if (entry == null) {
+            return null;
+        }
+        unlink(entry);
+        linkFirst(entry);
+        return entry.surface;
+    }
+
+    /**
+     * Adds or replaces the surface of a chunk. If the cache is full, the least recently used surface is evicted.
+     *
+     * @param surface the surface to add
+     */
+    public void put(ChunkSurface surface) {
+        long key = ChunkKeys.pack(surface.getChunkX(), surface.getChunkZ());
+        Entry entry = entries.get(key);
+        if (entry != null) {
+            entry.surface = surface;
+            unlink(entry);
+        } else {
+            if (entries.size() >= capacity) {
+                Entry eldest = head.prev;
+                unlink(eldest);
+                entries.remove(eldest.key);
+            }
+            entry = new Entry(key, surface);
+            entries.put(key, entry);
+        }
+        linkFirst(entry);
+    }
+
+    /**
+     * @return the removed surface or <code>null</code> if it was not cached
+     */
+    public ChunkSurface remove(int chunkX, int chunkZ) {
+        Entry entry = entries.remove(ChunkKeys.pack(chunkX, chunkZ));
+        if (entry == null) {
+            return null;
+        }
+        unlink(entry);
+        return entry.surface;
+    }
+
+    /**
+     * @param worldX the world x coordinate of the block column
+     * @param worldZ the world z coordinate of the block column
+     * @return the surface height or {@link ChunkSurface#UNKNOWN_HEIGHT} if not cached
+     */
+    public int getHeight(int worldX, int worldZ) {
+        Entry entry = entries.get(ChunkKeys.pack(worldX >> Chunks.POWER_X, worldZ >> Chunks.POWER_Z));
+        if (entry == null) {
+            return ChunkSurface.UNKNOWN_HEIGHT;
+        }
+        return entry.surface.getHeight(worldX & Chunks.INNER_CHUNK_POS_FILTER_X, worldZ & Chunks.INNER_CHUNK_POS_FILTER_Z);
+    }
+
+    /**
+     * @param worldX the world x coordinate of the block column
+     * @param worldZ the world z coordinate of the block column
+     * @return the id of the surface block or 0 (air) if not cached
+     */
+    public short getBlockId(int worldX, int worldZ) {
+        Entry entry = entries.get(ChunkKeys.pack(worldX >> Chunks.POWER_X, worldZ >> Chunks.POWER_Z));
+        if (entry == null) {
+            return 0;
+        }
+        return entry.surface.getBlockId(worldX & Chunks.INNER_CHUNK_POS_FILTER_X, worldZ & Chunks.INNER_CHUNK_POS_FILTER_Z);
+    }
+
+    /**
+     * @return the number of cached surfaces
+     */
+    public int size() {
+        return entries.size();
+    }
+
+    /**
+     * @return the maximum number of cached surfaces
+     */
+    public int getCapacity() {
+        return capacity;
+    }
+
+    /**
+     * @return the approximate memory occupied by the cached surfaces in bytes
+     */
+    public long getMemoryUsage() {
+        return (long) entries.size() * ChunkSurface.BYTES;
+    }
+
+    public void clear() {
+        entries.clear();
+        head.prev = head;
+        head.next = head;
+    }
+
+    private void linkFirst(Entry entry) {
+        entry.prev = head;
+        entry.next = head.next;
+        head.next.prev = entry;
+        head.next = entry;
+    }
+
+    private static void unlink(Entry entry) {
+        entry.prev.next = entry.next;
+        entry.next.prev = entry.prev;
+        entry.prev = null;
+        entry.next = null;
+    }
+
+    private static final class Entry {
+        private final long key;
+        private ChunkSurface surface;
+        private Entry prev;
+        private Entry next;
+
+        Entry(long key, ChunkSurface surface) {
+            this.key = key;
+            this.surface = surface;
+        }
+    }
+}
@@ -0,0 +1,452 @@
+// Copyright 2021 The Terasology Foundation
+// SPDX-License-Identifier: Apache-2.0
+
+package org.terasology.minimap.surface;
+
+import org.terasology.engine.world.chunks.Chunks;
+
+import java.util.Arrays;
+
+/**
+ * Compresses chunk surfaces and column changes for transfer over the network.
+ * <p>
+ * Every encoded surface starts with a format version byte. The format ({@link #VERSION_PACKED}) consists of
+ * <ul>
+ *     <li>a bitmap of the unknown columns (only if there are any)</li>
+ *     <li>the heights of all known columns, as the difference to a value predicted from the left, upper and
+ *     upper-left neighbours. The zig-zag encoded residuals are bit-packed with a fixed width; larger values
+ *     are escaped and appended as variable-length integers.</li>
+ *     <li>a palette of the block ids, followed by the bit-packed palette index of every column</li>
+ *     <li>the same for the decoration ids</li>
+ * </ul>
+ * A typical surface takes a few hundred bytes instead of {@link ChunkSurface#SERIALIZED_BYTES}.
+ * <p>
+ * Column patches contain the new values of single columns, e.g. after blocks have been placed or destroyed.
+ * <p>
+ * This class is thread-safe.
+ */
+public final class ChunkSurfaceCodec {
+
+    /**
+     * Predicted heights and palette indices, both bit-packed
+     */
+    public static final byte VERSION_PACKED = 2;
+
+    private static final byte PATCH_VERSION = 1;
+
+    private static final int FLAG_UNKNOWN_COLUMNS = 1;
+
+    /**
+     * The largest bit width that is considered for the height residuals
+     */
+    private static final int MAX_RESIDUAL_BITS = 8;
+
+    private ChunkSurfaceCodec() {
+        // no instances
+    }
+
+    /**
+     * @param surface the surface to encode
+     * @return the encoded surface
+     */
+    public static byte[] encode(ChunkSurface surface) {
+        Output out = new Output(ChunkSurface.COLUMNS / 2);
+        out.writeByte(VERSION_PACKED);
+
+        boolean[] known = new boolean[ChunkSurface.COLUMNS];
+        int[] heights = new int[ChunkSurface.COLUMNS];
+        boolean allKnown = true;
+        for (int i = 0; i < ChunkSurface.COLUMNS; i++) {
+            heights[i] = surface.getHeight(i % Chunks.SIZE_X, i / Chunks.SIZE_X);
+            known[i] = heights[i] != ChunkSurface.UNKNOWN_HEIGHT;
+            allKnown &= known[i];
+        }
+        out.writeByte(allKnown ? 0 : FLAG_UNKNOWN_COLUMNS);
+        if (!allKnown) {
+            for (int i = 0; i < ChunkSurface.COLUMNS; i++) {
+                out.writeBits(known[i] ? 0 : 1, 1);
+            }
+            out.alignToByte();
+        }
+        writeHeights(out, heights, known);
+
+        short[] ids = new short[ChunkSurface.COLUMNS];
+        for (int i = 0; i < ChunkSurface.COLUMNS; i++) {
+            ids[i] = surface.getBlockId(i % Chunks.SIZE_X, i / Chunks.SIZE_X);
+        }
+        writeIndexed(out, ids);
+        for (int i = 0; i < ChunkSurface.COLUMNS; i++) {
+            ids[i] = surface.getTopId(i % Chunks.SIZE_X, i / Chunks.SIZE_X);
+        }
+        writeIndexed(out, ids);
+        return out.toByteArray();
+    }
+
+    /**
+     * @param chunkX the chunk x coordinate of the surface
+     * @param chunkZ the chunk z coordinate of the surface
+     * @param data the data created by {@link #encode(ChunkSurface)}
+     * @return the decoded surface
+     * @throws IllegalArgumentException if the data is malformed or has an unknown version
+     */
+    public static ChunkSurface decode(int chunkX, int chunkZ, byte[] data) {
+        Input in = new Input(data);
+        int version = in.readByte();
+        if (version != VERSION_PACKED) {
+            throw new IllegalArgumentException("Unknown minimap surface format version " + version);
+        }
+        boolean[] known = new boolean[ChunkSurface.COLUMNS];
+        if ((in.readByte() & FLAG_UNKNOWN_COLUMNS) != 0) {
+            for (int i = 0; i < ChunkSurface.COLUMNS; i++) {
+                known[i] = in.readBits(1) == 0;
+            }
+            in.alignToByte();
+        } else {
+            Arrays.fill(known, true);
+        }
+        int[] heights = new int[ChunkSurface.COLUMNS];
+        readHeights(in, heights, known);
+        short[] blockIds = readIndexed(in);
+        short[] topIds = readIndexed(in);
+
+        ChunkSurface surface = new ChunkSurface(chunkX, chunkZ);
+        for (int i = 0; i < ChunkSurface.COLUMNS; i++) {
+            surface.set(i % Chunks.SIZE_X, i / Chunks.SIZE_X, heights[i], blockIds[i], topIds[i]);
+        }
+        return surface;
+    }
+
+    /**
+     * Encodes the current values of some columns of a surface.
+     *
+     * @param surface the surface that contains the changed columns
+     * @param columns the indices of the changed columns (see {@link ChunkSurface#index(int, int)}) in ascending order
+     * @param count the number of valid entries in <code>columns</code>
+     * @return the encoded patch
+     */
+    public static byte[] encodePatch(ChunkSurface surface, int[] columns, int count) {
+        Output out = new Output(2 + count * 6);
+        out.writeByte(PATCH_VERSION);
+        out.writeVarInt(count);
+        int previousIndex = 0;
+        int previousHeight = 0;
+        for (int i = 0; i < count; i++) {
+            int idx = columns[i];
+            int column = idx % Chunks.SIZE_X;
+            int row = idx / Chunks.SIZE_X;
+            int height = surface.getHeight(column, row);
+            out.writeVarInt(idx - previousIndex);
+            out.writeVarInt(zigZag(height - previousHeight));
+            out.writeVarInt(surface.getBlockId(column, row) & 0xFFFF);
+            out.writeVarInt(surface.getTopId(column, row) & 0xFFFF);
+            previousIndex = idx;
+            previousHeight = height;
+        }
+        return out.toByteArray();
+    }
+
+    /**
+     * Applies a patch created by {@link #encodePatch(ChunkSurface, int[], int)} to a surface.
+     *
+     * @return the number of changed columns
+     * @throws IllegalArgumentException if the patch is malformed
+     */
+    public static int applyPatch(ChunkSurface surface, byte[] patch) {
+        Input in = new Input(patch);
+        int version = in.readByte();
+        if (version != PATCH_VERSION) {
+            throw new IllegalArgumentException("Unknown minimap patch format version " + version);
+        }
+        int count = in.readVarInt();
+        int idx = 0;
+        int height = 0;
+        for (int i = 0; i < count; i++) {
+            idx += in.readVarInt();
+            height += unZigZag(in.readVarInt());
+            short blockId = (short) in.readVarInt();
+            short topId = (short) in.readVarInt();
+            if (idx < 0 || idx >= ChunkSurface.COLUMNS) {
+                throw new IllegalArgumentException("Invalid column index " + idx);
+            }
+            surface.set(idx % Chunks.SIZE_X, idx / Chunks.SIZE_X, height, blockId, topId);
+        }
+        return count;
+    }
+
+    private static void writeHeights(Output out, int[] heights, boolean[] known) {
+        int[] residuals = new int[ChunkSurface.COLUMNS];
+        int count = 0;
+        int previous = 0;
+        for (int i = 0; i < ChunkSurface.COLUMNS; i++) {
+            if (known[i]) {
+                int predicted = predict(heights, known, i, previous);
+                residuals[count++] = zigZag(heights[i] - predicted);
+                previous = heights[i];
+            }
+        }
+
+        int bits = selectResidualBits(residuals, count);
+        int escape = (1 << bits) - 1;
+        out.writeByte(bits);
+        for (int i = 0; i < count; i++) {
+            out.writeBits(Math.min(residuals[i], escape), bits);
+        }
+        out.alignToByte();
+        for (int i = 0; i < count; i++) {
+            if (residuals[i] >= escape) {
+                out.writeVarInt(residuals[i] - escape);
+            }
+        }
+    }
+
+    private static void readHeights(Input in, int[] heights, boolean[] known) {
+        int bits = in.readByte();
+        if (bits < 0 || bits > MAX_RESIDUAL_BITS) {
+            throw new IllegalArgumentException("Invalid residual width " + bits);
+        }
+        int escape = (1 << bits) - 1;
+        for (int i = 0; i < ChunkSurface.COLUMNS; i++) {
+            heights[i] = known[i] ? in.readBits(bits) : ChunkSurface.UNKNOWN_HEIGHT;
+        }
+        in.alignToByte();
+        int previous = 0;
+        for (int i = 0; i < ChunkSurface.COLUMNS; i++) {
+            if (known[i]) {
+                int residual = heights[i] >= escape ? escape + in.readVarInt() : heights[i];
+                heights[i] = predict(heights, known, i, previous) + unZigZag(residual);
+                previous = heights[i];
+            }
+        }
+    }
+
+    /**
+     * Predicts the height of a column from its already coded neighbours (median edge detector).
+     *
+     * @param previous the height of the last known column, used if no neighbour is known
+     */
+    private static int predict(int[] heights, boolean[] known, int idx, int previous) {
+        int column = idx % Chunks.SIZE_X;
+        boolean hasLeft = column > 0 && known[idx - 1];
+        boolean hasUp = idx >= Chunks.SIZE_X && known[idx - Chunks.SIZE_X];
+        if (hasLeft && hasUp && known[idx - Chunks.SIZE_X - 1]) {
+            int left = heights[idx - 1];
+            int up = heights[idx - Chunks.SIZE_X];
+            int upLeft = heights[idx - Chunks.SIZE_X - 1];
+            if (upLeft >= Math.max(left, up)) {
+                return Math.min(left, up);
+            }
+            if (upLeft <= Math.min(left, up)) {
+                return Math.max(left, up);
+            }
+            return left + up - upLeft;
+        }
+        if (hasLeft) {
+            return heights[idx - 1];
+        }
+        if (hasUp) {
+            return heights[idx - Chunks.SIZE_X];
+        }
+        return previous;
+    }
+
+    /**
+     * @return the bit width that results in the smallest output for the given residuals
+     */
+    private static int selectResidualBits(int[] residuals, int count) {
+        int bestBits = MAX_RESIDUAL_BITS;
+        long bestSize = Long.MAX_VALUE;
+        for (int bits = 0; bits <= MAX_RESIDUAL_BITS; bits++) {
+            int escape = (1 << bits) - 1;
+            long size = (long) count * bits;
+            for (int i = 0; i < count; i++) {
+                if (residuals[i] >= escape) {
+                    size += 8L * varIntBytes(residuals[i] - escape);
+                }
+            }
+            if (size < bestSize) {
+                bestSize = size;
+                bestBits = bits;
+            }
+        }
+        return bestBits;
+    }
+
+    private static void writeIndexed(Output out, short[] ids) {
+        short[] palette = new short[ChunkSurface.COLUMNS];
+        int[] indices = new int[ChunkSurface.COLUMNS];
+        int size = 0;
+        int last = 0;
+        for (int i = 0; i < ChunkSurface.COLUMNS; i++) {
+            // neighbouring columns mostly share their block, so the last match is checked first
+            if (size == 0 || palette[last] != ids[i]) {
+                last = 0;
+                while (last < size && palette[last] != ids[i]) {
+                    last++;
+                }
+                if (last == size) {
+                    palette[size++] = ids[i];
+                }
+            }
+            indices[i] = last;
+        }
+
+        out.writeVarInt(size);
+        for (int i = 0; i < size; i++) {
+            out.writeVarInt(palette[i] & 0xFFFF);
+        }
+        int bits = bitsFor(size);
+        for (int i = 0; i < ChunkSurface.COLUMNS; i++) {
+            out.writeBits(indices[i], bits);
+        }
+        out.alignToByte();
+    }
+
+    private static short[] readIndexed(Input in) {
+        int size = in.readVarInt();
+        if (size <= 0 || size > ChunkSurface.COLUMNS) {
+            throw new IllegalArgumentException("Invalid palette size " + size);
+        }
+        short[] palette = new short[size];
+        for (int i = 0; i < size; i++) {
+            palette[i] = (short) in.readVarInt();
+        }
+        int bits = bitsFor(size);
+        short[] ids = new short[ChunkSurface.COLUMNS];
+        for (int i = 0; i < ChunkSurface.COLUMNS; i++) {
+            int index = in.readBits(bits);
+            if (index >= size) {
+                throw new IllegalArgumentException("Invalid palette index " + index);
+            }
+            ids[i] = palette[index];
+        }
+        in.alignToByte();
+        return ids;
+    }
+
+    /**
+     * @return the number of bits needed to store the indices of a palette with the given size
+     */
+    private static int bitsFor(int size) {
+        return size <= 1 ? 0 : Integer.SIZE - Integer.numberOfLeadingZeros(size - 1);
+    }
+
+    private static int varIntBytes(int value) {
+        int bytes = 1;
+        while ((value & ~0x7F) != 0) {
+            value >>>= 7;
+            bytes++;
+        }
+        return bytes;
+    }
+
+    private static int zigZag(int value) {
+        return (value << 1) ^ (value >> 31);
+    }
+
+    private static int unZigZag(int value) {
+        return (value >>> 1) ^ -(value & 1);
+    }
+
+    private static final class Output {
+        private byte[] bytes;
+        private int length;
+        private long bitBuffer;
+        private int bitCount;
+
+        Output(int capacity) {
+            bytes = new byte[capacity];
+        }
+
+        void writeByte(int value) {
+            if (length == bytes.length) {
+                bytes = Arrays.copyOf(bytes, bytes.length * 2);
+            }
+            bytes[length++] = (byte) value;
+        }
+
+        void writeVarInt(int value) {
+            while ((value & ~0x7F) != 0) {
+                writeByte((value & 0x7F) | 0x80);
+                value >>>= 7;
+            }
+            writeByte(value);
+        }
+
+        /**
+         * Appends the lowest bits of a value, least significant bit first.
+         */
+        void writeBits(int value, int bits) {
+            bitBuffer |= (long) (value & ((1 << bits) - 1)) << bitCount;
+            bitCount += bits;
+            while (bitCount >= Byte.SIZE) {
+                writeByte((int) bitBuffer);
+                bitBuffer >>>= Byte.SIZE;
+                bitCount -= Byte.SIZE;
+            }
+        }
+
+        /**
+         * Writes the remaining bits, padded with zeros to a full byte.
+         */
+        void alignToByte() {
+            if (bitCount > 0) {
+                writeByte((int) bitBuffer);
+            }
+            bitBuffer = 0;
+            bitCount = 0;
+        }
+
+        byte[] toByteArray() {
+            return Arrays.copyOf(bytes, length);
+        }
+    }
+
+    private static final class Input {
+        private final byte[] bytes;
+        private int position;
+        private long bitBuffer;
+        private int bitCount;
+
+        Input(byte[] bytes) {
+            this.bytes = bytes;
+        }
+
+        int readByte() {
+            if (position >= bytes.length) {
+                throw new IllegalArgumentException("Unexpected end of minimap surface data");
+            }
+            return bytes[position++];
+        }
+
+        int readVarInt() {
+            int value = 0;
+            for (int shift = 0; shift < Integer.SIZE; shift += 7) {
+                int b = readByte();
+                value |= (b & 0x7F) << shift;
+                if ((b & 0x80) == 0) {
+                    return value;
+                }
+            }
+            throw new IllegalArgumentException("Malformed variable-length integer");
+        }
+
+        int readBits(int bits) {
+            while (bitCount < bits) {
+                bitBuffer |= (long) (readByte() & 0xFF) << bitCount;
+                bitCount += Byte.SIZE;
+            }
+            int value = (int) (bitBuffer & ((1L << bits) - 1));
+            bitBuffer >>>= bits;
+            bitCount -= bits;
+            return value;
+        }
+
+        /**
+         * Skips the padding bits of the current byte.
+         */
+        void alignToByte() {
+            bitBuffer = 0;
+            bitCount = 0;
+        }
+    }
+}
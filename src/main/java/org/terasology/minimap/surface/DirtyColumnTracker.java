@@ -0,0 +1,136 @@
+// Copyright 2021 The Terasology Foundation
+// SPDX-License-Identifier: Apache-2.0
+
+package org.terasology.minimap.surface;
+
+import gnu.trove.map.TLongObjectMap;
+import gnu.trove.map.hash.TLongObjectHashMap;
+import org.terasology.engine.world.chunks.Chunks;
+
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.Deque;
+
+/**
+ * Tracks block columns that need to be re-scanned, using one bitset per chunk.
+ * Repeated changes in the same column are collapsed into a single entry that remembers
+ * the highest changed block.
+ * <p>
+ * Marking a column does not allocate (apart from the first dirty column of a chunk when the internal pool
+ * is empty). This class is not thread-safe.
+ */
+public class DirtyColumnTracker {
+
+    private static final int WORDS = ChunkSurface.COLUMNS / Long.SIZE;
+
+    private final TLongObjectMap<DirtyChunk> chunks = new TLongObjectHashMap<>();
+    private final Deque<DirtyChunk> pool = new ArrayDeque<>();
+
+    /**
+     * Marks the column that contains the given block as dirty.
+     *
+     * @param x the world x coordinate of the changed block
+     * @param y the world y coordinate of the changed block
+     * @param z the world z coordinate of the changed block
+     */
+    public void markDirty(int x, int y, int z) {
+        long key = ChunkKeys.pack(x >> Chunks.POWER_X, z >> Chunks.POWER_Z);
+        DirtyChunk chunk = chunks.get(key);
+        if (chunk == null) {
+            chunk = pool.isEmpty() ? new DirtyChunk() : pool.pop();
+            chunks.put(key, chunk);
+        }
+        int idx = ChunkSurface.index(x & Chunks.INNER_CHUNK_POS_FILTER_X, z & Chunks.INNER_CHUNK_POS_FILTER_Z);
+        long mask = 1L << idx;
+        int word = idx >>> 6;
+        short height = (short) Math.max(Short.MIN_VALUE + 1, Math.min(Short.MAX_VALUE, y));
+        if ((chunk.bits[word] & mask) == 0) {
+            chunk.bits[word] |= mask;
+            chunk.count++;
+            chunk.maxY[idx] = height;
+        } else if (height > chunk.maxY[idx]) {
+            chunk.maxY[idx] = height;
+        }
+    }
+
+    /**
+     * @return true if at least one column of the chunk is dirty
+     */
+    public boolean isDirty(int chunkX, int chunkZ) {
+        return chunks.containsKey(ChunkKeys.pack(chunkX, chunkZ));
+    }
+
+    /**
+     * @return the number of dirty columns in the chunk
+     */
+    public int getDirtyCount(int chunkX, int chunkZ) {
+        DirtyChunk chunk = chunks.get(ChunkKeys.pack(chunkX, chunkZ));
+        return chunk == null ? 0 : chunk.count;
+    }
+
+    /**
+     * @return the number of chunks that contain dirty columns
+     */
+    public int getDirtyChunkCount() {
+        return chunks.size();
+    }
+
+    /**
+     * Visits all dirty columns of a chunk and clears them afterwards.
+     *
+     * @param chunkX the chunk x coordinate
+     * @param chunkZ the chunk z coordinate
+     * @param visitor the visitor that is called for every dirty column
+     */
+    public void drain(int chunkX, int chunkZ, ColumnVisitor visitor) {
+        DirtyChunk chunk = chunks.remove(ChunkKeys.pack(chunkX, chunkZ));
+        if (chunk == null) {
+            return;
+        }
+        for (int word = 0; word < WORDS; word++) {
+            long bits = chunk.bits[word];
+            while (bits != 0) {
+                int idx = (word << 6) + Long.numberOfTrailingZeros(bits);
+                bits &= bits - 1;
+                visitor.visit(idx % Chunks.SIZE_X, idx / Chunks.SIZE_X, chunk.maxY[idx]);
+            }
+        }
+        release(chunk);
+    }
+
+    /**
+     * Clears all dirty columns of a chunk.
+     */
+    public void clear(int chunkX, int chunkZ) {
+        DirtyChunk chunk = chunks.remove(ChunkKeys.pack(chunkX, chunkZ));
+        if (chunk != null) {
+            release(chunk);
+        }
+    }
+
+    private void release(DirtyChunk chunk) {
+        Arrays.fill(chunk.bits, 0);
+        chunk.count = 0;
+        pool.push(chunk);
+    }
+
+    /**
+     * Receives dirty columns.
+     */
+    @FunctionalInterface
+    public interface ColumnVisitor {
+
+        /**
+         * @param column the x coordinate relative to the chunk
+         * @param row the z coordinate relative to the chunk
+         * @param maxY the highest y coordinate of all changed blocks in this column
+         */
+        void visit(int column, int row, int maxY);
+    }
+
+    private static final class DirtyChunk {
+        private final long[] bits = new long[WORDS];
+        private final short[] maxY = new short[ChunkSurface.COLUMNS];
+        private int count;
+    }
+}
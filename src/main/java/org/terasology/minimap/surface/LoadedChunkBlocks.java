@@ -0,0 +1,81 @@
+// Copyright 2021 The Terasology Foundation
+// SPDX-License-Identifier: Apache-2.0
+
+package org.terasology.minimap.surface;
+
+import org.terasology.engine.world.block.Block;
+import org.terasology.engine.world.chunks.Chunk;
+import org.terasology.engine.world.chunks.Chunks;
+
+/**
+ * Direct access to the blocks of a chunk of the engine.
+ * <p>
+ * The engine does not track which layers of a chunk contain blocks, so the height bounds are derived from the
+ * block ids when they are first needed. This only compares ids, which is much cheaper than resolving the blocks,
+ * and the bounds are then shared by all columns of a scan. The bounds are not updated when blocks change, so an
+ * instance should only be used for a single scan.
+ */
+final class LoadedChunkBlocks implements BlockSource.ChunkBlocks {
+
+    /**
+     * The id of air, which the engine always registers first
+     */
+    private static final short AIR_ID = 0;
+
+    private final Chunk chunk;
+    private boolean boundsKnown;
+    private int minNonAirY;
+    private int maxNonAirY;
+
+    LoadedChunkBlocks(Chunk chunk) {
+        this.chunk = chunk;
+    }
+
+    @Override
+    public Block getBlock(int x, int y, int z) {
+        return chunk.getBlock(x, y, z);
+    }
+
+    @Override
+    public int getMinNonAirY() {
+        computeBounds();
+        return minNonAirY;
+    }
+
+    @Override
+    public int getMaxNonAirY() {
+        computeBounds();
+        return maxNonAirY;
+    }
+
+    private void computeBounds() {
+        if (boundsKnown) {
+            return;
+        }
+        boundsKnown = true;
+        maxNonAirY = Chunks.SIZE_Y - 1;
+        while (maxNonAirY >= 0 && isAirLayer(maxNonAirY)) {
+            maxNonAirY--;
+        }
+        if (maxNonAirY < 0) {
+            // the chunk contains only air
+            minNonAirY = Chunks.SIZE_Y;
+            return;
+        }
+        minNonAirY = 0;
+        while (isAirLayer(minNonAirY)) {
+            minNonAirY++;
+        }
+    }
+
+    private boolean isAirLayer(int y) {
+        for (int z = 0; z < Chunks.SIZE_Z; z++) {
+            for (int x = 0; x < Chunks.SIZE_X; x++) {
+                if (chunk.getBlockId(x, y, z) != AIR_ID) {
+                    return false;
+                }
+            }
+        }
+        return true;
+    }
+}
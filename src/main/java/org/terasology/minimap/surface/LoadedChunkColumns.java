@@ -0,0 +1,80 @@
+// Copyright 2021 The Terasology Foundation
+// SPDX-License-Identifier: Apache-2.0
+
+package org.terasology.minimap.surface;
+
+import gnu.trove.map.TLongIntMap;
+import gnu.trove.map.hash.TLongIntHashMap;
+
+/**
+ * Tracks the chunk columns that can be scanned, based on chunk load and unload events.
+ * A column is ready when its lowest {@link #REQUIRED_CHUNKS_Y} vertical chunks are loaded.
+ * <p>
+ * This class is not thread-safe.
+ */
+public class LoadedChunkColumns {
+
+    /**
+     * The number of vertical chunks (starting at y = 0) that must be loaded before a column is scanned
+     */
+    public static final int REQUIRED_CHUNKS_Y = 2;
+
+    private static final int READY_MASK = (1 << REQUIRED_CHUNKS_Y) - 1;
+
+    /**
+     * A bitmask of the loaded vertical chunks per chunk column
+     */
+    private final TLongIntMap loaded = new TLongIntHashMap();
+
+    /**
+     * @param chunkX the chunk x coordinate
+     * @param chunkY the chunk y coordinate
+     * @param chunkZ the chunk z coordinate
+     * @return true if the column became ready
+     */
+    public boolean chunkLoaded(int chunkX, int chunkY, int chunkZ) {
+        if (chunkY < 0 || chunkY >= REQUIRED_CHUNKS_Y) {
+            return false;
+        }
+        long key = ChunkKeys.pack(chunkX, chunkZ);
+        int before = loaded.get(key);
+        int after = before | (1 << chunkY);
+        loaded.put(key, after);
+        return before != READY_MASK && after == READY_MASK;
+    }
+
+    /**
+     * @param chunkX the chunk x coordinate
+     * @param chunkY the chunk y coordinate
+     * @param chunkZ the chunk z coordinate
+     * @return true if the column was ready before
+     */
+    public boolean chunkUnloaded(int chunkX, int chunkY, int chunkZ) {
+        if (chunkY < 0 || chunkY >= REQUIRED_CHUNKS_Y) {
+            return false;
+        }
+        long key = ChunkKeys.pack(chunkX, chunkZ);
+        int before = loaded.get(key);
+        int after = before & ~(1 << chunkY);
+        if (after == 0) {
+            loaded.remove(key);
+        } else {
+            loaded.put(key, after);
+        }
+        return before == READY_MASK;
+    }
+
+    /**
+     * @return true if the chunk column can be scanned
+     */
+    public boolean isReady(int chunkX, int chunkZ) {
+        return loaded.get(ChunkKeys.pack(chunkX, chunkZ)) == READY_MASK;
+    }
+
+    /**
+     * Forgets all loaded chunks.
+     */
+    public void clear() {
+        loaded.clear();
+    }
+}
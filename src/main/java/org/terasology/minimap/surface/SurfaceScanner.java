@@ -0,0 +1,212 @@
+// Copyright 2021 The Terasology Foundation
+// SPDX-License-Identifier: Apache-2.0
+
+package org.terasology.minimap.surface;
+
+import gnu.trove.map.TIntObjectMap;
+import gnu.trove.map.hash.TIntObjectHashMap;
+import gnu.trove.set.TIntSet;
+import gnu.trove.set.hash.TIntHashSet;
+import org.terasology.engine.world.WorldProvider;
+import org.terasology.engine.world.block.Block;
+import org.terasology.engine.world.chunks.Chunks;
+
+/**
+ * Finds the surface of block columns by walking up or down from a start height.
+ * Does not keep any state apart from the world reference, so it can be used from any thread.
+ * <p>
+ * If the block source provides direct chunk access, every chunk is looked up once per scan and blocks are read
+ * by their position relative to the chunk. The block source is only asked for blocks of chunks it cannot provide.
+ * When a whole chunk is scanned, empty space above and below the blocks of a chunk is skipped, using the height
+ * bounds of the chunk blocks. Single columns are walked block by block, as computing the bounds can cost more
+ * than the walk itself.
+ */
+public class SurfaceScanner {
+
+    private final BlockSource blockSource;
+
+    /**
+     * The chunk lookups of the current scan, re-used by every scan of a thread
+     */
+    private final ThreadLocal<ChunkColumn> chunkColumns = ThreadLocal.withInitial(ChunkColumn::new);
+
+    public SurfaceScanner(WorldProvider worldProvider) {
+        this(BlockSource.of(worldProvider));
+    }
+
+    /**
+     * @param blockSource provides the blocks of the world
+     */
+    public SurfaceScanner(BlockSource blockSource) {
+        this.blockSource = blockSource;
+    }
+
+    /**
+     * Scans all block columns of a chunk.
+     *
+     * @param chunkX the chunk x coordinate
+     * @param chunkZ the chunk z coordinate
+     * @param startY the height to start searching for the surface layer
+     * @return a new surface instance that contains the results
+     */
+    public ChunkSurface scan(int chunkX, int chunkZ, int startY) {
+        ChunkSurface surface = new ChunkSurface(chunkX, chunkZ);
+        ChunkColumn chunks = chunkColumns.get();
+        chunks.begin(chunkX, chunkZ, true);
+        try {
+            for (int row = 0; row < Chunks.SIZE_Z; row++) {
+                for (int column = 0; column < Chunks.SIZE_X; column++) {
+                    scanColumn(surface, column, row, startY, chunks);
+                }
+            }
+        } finally {
+            chunks.end();
+        }
+        return surface;
+    }
+
+    /**
+     * Scans a single block column and stores the result in the given surface.
+     *
+     * @param surface the surface to update
+     * @param column the x coordinate relative to the chunk
+     * @param row the z coordinate relative to the chunk
+     * @param startY the height to start searching for the surface layer
+     */
+    public void scanColumn(ChunkSurface surface, int column, int row, int startY) {
+        ChunkColumn chunks = chunkColumns.get();
+        chunks.begin(surface.getChunkX(), surface.getChunkZ(), false);
+        try {
+            scanColumn(surface, column, row, startY, chunks);
+        } finally {
+            chunks.end();
+        }
+    }
+
+    private void scanColumn(ChunkSurface surface, int column, int row, int startY, ChunkColumn chunks) {
+        int y = startY;
+
+        // blocks that are not loaded are treated as air at the start position
+        Block block = chunks.getBlock(column, y, row);
+        if (block == null || isIgnored(block)) {
+            do {
+                y = chunks.skipAir(y - 1);
+                block = chunks.getBlock(column, y, row);
+                if (block == null) {
+                    surface.setUnknown(column, row);
+                    return;
+                }
+            } while (isIgnored(block));
+        } else {
+            Block below;
+            do {
+                below = block;
+                y += 1;
+                if (chunks.isAir(y)) {
+                    break;
+                }
+                block = chunks.getBlock(column, y, row);
+                if (block == null) {
+                    surface.setUnknown(column, row);
+                    return;
+                }
+            } while (!isIgnored(block));
+            y -= 1;
+            block = below;
+        }
+
+        Block top = chunks.isAir(y + 1) ? null : chunks.getBlock(column, y + 1, row);
+        short topId = top != null && top.isDestructible() ? top.getId() : 0;
+        surface.set(column, row, y, block.getId(), topId);
+    }
+
+    private static boolean isIgnored(Block block) {
+        return block.isPenetrable() && !block.isWater();
+    }
+
+    /**
+     * The vertical chunks of a chunk column, looked up once per scan.
+     */
+    private final class ChunkColumn {
+        private final TIntObjectMap<BlockSource.ChunkBlocks> chunks = new TIntObjectHashMap<>();
+        private final TIntSet unavailable = new TIntHashSet();
+        private int chunkX;
+        private int chunkZ;
+        private boolean useBounds;
+
+        /**
+         * @param withBounds true to skip empty space using the height bounds of the chunks
+         */
+        void begin(int newChunkX, int newChunkZ, boolean withBounds) {
+            chunkX = newChunkX;
+            chunkZ = newChunkZ;
+            useBounds = withBounds;
+        }
+
+        /**
+         * Releases the chunks, so they are not kept in memory until the next scan.
+         */
+        void end() {
+            chunks.clear();
+            unavailable.clear();
+        }
+
+        private BlockSource.ChunkBlocks get(int chunkY) {
+            BlockSource.ChunkBlocks chunk = chunks.get(chunkY);
+            if (chunk == null && !unavailable.contains(chunkY)) {
+                chunk = blockSource.getChunk(chunkX, chunkY, chunkZ);
+                if (chunk == null) {
+                    unavailable.add(chunkY);
+                } else {
+                    chunks.put(chunkY, chunk);
+                }
+            }
+            return chunk;
+        }
+
+        /**
+         * @return the block or <code>null</code> if it is not loaded
+         */
+        Block getBlock(int column, int y, int row) {
+            BlockSource.ChunkBlocks chunk = get(y >> Chunks.POWER_Y);
+            if (chunk != null) {
+                return chunk.getBlock(column, y & Chunks.INNER_CHUNK_POS_FILTER_Y, row);
+            }
+            int x = chunkX * Chunks.SIZE_X + column;
+            int z = chunkZ * Chunks.SIZE_Z + row;
+            return blockSource.isBlockRelevant(x, y, z) ? blockSource.getBlock(x, y, z) : null;
+        }
+
+        /**
+         * @return true if the block at the given height is known to be air in all columns
+         */
+        boolean isAir(int y) {
+            if (!useBounds) {
+                return false;
+            }
+            BlockSource.ChunkBlocks chunk = get(y >> Chunks.POWER_Y);
+            if (chunk == null) {
+                return false;
+            }
+            int relativeY = y & Chunks.INNER_CHUNK_POS_FILTER_Y;
+            return relativeY > chunk.getMaxNonAirY() || relativeY < chunk.getMinNonAirY();
+        }
+
+        /**
+         * @return the highest height at or below the given one that is not known to be air
+         */
+        int skipAir(int y) {
+            while (isAir(y)) {
+                BlockSource.ChunkBlocks chunk = get(y >> Chunks.POWER_Y);
+                int chunkMinY = y & ~Chunks.INNER_CHUNK_POS_FILTER_Y;
+                int relativeY = y & Chunks.INNER_CHUNK_POS_FILTER_Y;
+                if (relativeY > chunk.getMaxNonAirY() && chunk.getMaxNonAirY() >= chunk.getMinNonAirY()) {
+                    return chunkMinY + chunk.getMaxNonAirY();
+                }
+                // the rest of the chunk is empty
+                y = chunkMinY - 1;
+            }
+            return y;
+        }
+    }
+}
@@ -0,0 +1,146 @@
+// Copyright 2021 The Terasology Foundation
+// SPDX-License-Identifier: Apache-2.0
+
+package org.terasology.minimap.overlays;
+
+import org.joml.Vector2i;
+import org.junit.jupiter.api.Test;
+import org.terasology.joml.geom.Rectanglei;
+import org.terasology.nui.Canvas;
+
+import java.lang.reflect.Proxy;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class MinimapMarkerOverlayTest {
+
+    private static final int ICON_SIZE = 8;
+    private static final int CLUSTER_SIZE = 2 * ICON_SIZE;
+
+    /**
+     * The canvas and the world area have the same size, so one block is one pixel
+     */
+    private final Rectanglei region = new Rectanglei(0, 0, 128, 128);
+    private final Rectanglei worldRect = new Rectanglei(1000, 2000, 1128, 2128);
+
+    /**
+     * The areas of all drawn textures
+     */
+    private final List<Rectanglei> drawn = new ArrayList<>();
+
+    private final Canvas canvas = (Canvas) Proxy.newProxyInstance(Canvas.class.getClassLoader(), new Class<?>[]{Canvas.class},
+            (proxy, method, args) -> {
+                switch (method.getName()) {
+                    case "getRegion":
+                        return region;
+                    case "drawTexture":
+                        drawn.add(new Rectanglei((Rectanglei) args[1]));
+                        return null;
+                    default:
+                        return null;
+                }
+            });
+
+    private MinimapMarkerOverlay createOverlay() {
+        MinimapMarkerOverlay overlay = new MinimapMarkerOverlay(null, new Vector2i(ICON_SIZE, ICON_SIZE));
+        overlay.setClusterCellSize(16);
+        overlay.setClusterThreshold(4);
+        return overlay;
+    }
+
+    @Test
+    public void testMarkersBelowThresholdAreDrawnIndividually() {
+        MinimapMarkerOverlay overlay = createOverlay();
+        for (int i = 0; i < 4; i++) {
+            overlay.add(worldRect.minX + 2 + i * 3, worldRect.minY + 4);
+        }
+
+        overlay.render(canvas, worldRect);
+
+        assertEquals(4, drawn.size());
+        for (int i = 0; i < 4; i++) {
+            assertTrue(containsIconAt(2 + i * 3, 4, ICON_SIZE), "marker " + i);
+        }
+    }
+
+    @Test
+    public void testMarkersAboveThresholdAreClustered() {
+        MinimapMarkerOverlay overlay = createOverlay();
+        // five markers in the screen cell (32, 32) - (48, 48), centered at (40, 40)
+        overlay.add(worldRect.minX + 36, worldRect.minY + 36);
+        overlay.add(worldRect.minX + 44, worldRect.minY + 36);
+        overlay.add(worldRect.minX + 36, worldRect.minY + 44);
+        overlay.add(worldRect.minX + 44, worldRect.minY + 44);
+        overlay.add(worldRect.minX + 40, worldRect.minY + 40);
+        // a single marker in another cell
+        overlay.add(worldRect.minX + 100, worldRect.minY + 8);
+
+        overlay.render(canvas, worldRect);
+
+        assertEquals(2, drawn.size());
+        assertTrue(containsIconAt(40, 40, CLUSTER_SIZE));
+        assertTrue(containsIconAt(100, 8, ICON_SIZE));
+    }
+
+    @Test
+    public void testMarkersOutsideTheViewAreSkipped() {
+        MinimapMarkerOverlay overlay = createOverlay();
+        overlay.add(worldRect.minX - 1000, worldRect.minY);
+        overlay.add(worldRect.maxX + 1000, worldRect.maxY + 1000);
+        overlay.add(worldRect.minX + 64, worldRect.minY + 64);
+
+        overlay.render(canvas, worldRect);
+
+        assertEquals(1, drawn.size());
+        assertTrue(containsIconAt(64, 64, ICON_SIZE));
+    }
+
+    @Test
+    public void testMovedAndRemovedMarkers() {
+        MinimapMarkerOverlay overlay = createOverlay();
+        int moved = overlay.add(worldRect.minX - 1000, worldRect.minY - 1000);
+        int removed = overlay.add(worldRect.minX + 10, worldRect.minY + 10);
+
+        assertTrue(overlay.move(moved, worldRect.minX + 90, worldRect.minY + 20));
+        assertTrue(overlay.remove(removed));
+        assertFalse(overlay.remove(removed));
+        assertFalse(overlay.move(removed, 0, 0));
+        assertEquals(1, overlay.size());
+
+        overlay.render(canvas, worldRect);
+
+        assertEquals(1, drawn.size());
+        assertTrue(containsIconAt(90, 20, ICON_SIZE));
+    }
+
+    @Test
+    public void testIdsAreReused() {
+        MinimapMarkerOverlay overlay = createOverlay();
+        int first = overlay.add(0, 0);
+        overlay.add(1, 1);
+        overlay.remove(first);
+
+        assertEquals(first, overlay.add(2, 2));
+        assertEquals(2, overlay.size());
+
+        overlay.clear();
+        assertEquals(0, overlay.size());
+        assertFalse(overlay.contains(first));
+    }
+
+    /**
+     * @return whether an icon of the given size has been drawn centered at the given position
+     */
+    private boolean containsIconAt(int x, int y, int size) {
+        for (Rectanglei area : drawn) {
+            if (area.minX == x - size / 2 && area.minY == y - size / 2 && area.lengthX() == size && area.lengthY() == size) {
+                return true;
+            }
+        }
+        return false;
+    }
+}
@@ -0,0 +1,92 @@
+// Copyright 2021 The Terasology Foundation
+// SPDX-License-Identifier: Apache-2.0
+
+package org.terasology.minimap.rendering;
+
+import org.terasology.joml.geom.Rectanglei;
+import org.terasology.nui.Canvas;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+
+/**
+ * A canvas that does not render anything, but counts the draw calls.
+ * It is implemented as a dynamic proxy, so that it does not depend on a specific version of the canvas interface.
+ */
+final class RecordingCanvas implements InvocationHandler {
+
+    private final Rectanglei region;
+    private final Canvas canvas;
+    private long drawCalls;
+
+    /**
+     * @param region the region of the canvas
+     */
+    RecordingCanvas(Rectanglei region) {
+        this.region = region;
+        this.canvas = (Canvas) Proxy.newProxyInstance(Canvas.class.getClassLoader(), new Class<?>[]{Canvas.class}, this);
+    }
+
+    /**
+     * @return the canvas instance
+     */
+    Canvas getCanvas() {
+        return canvas;
+    }
+
+    /**
+     * @return the number of draw calls since the creation of the canvas
+     */
+    long getDrawCalls() {
+        return drawCalls;
+    }
+
+    @Override
+    public Object invoke(Object proxy, Method method, Object[] args) {
+        String name = method.getName();
+        if (name.startsWith("draw")) {
+            drawCalls++;
+        }
+        switch (name) {
+            case "getRegion":
+                return region;
+            case "hashCode":
+                return System.identityHashCode(proxy);
+            case "equals":
+                return proxy == args[0];
+            case "toString":
+                return "RecordingCanvas" + region;
+            default:
+                return defaultValue(method.getReturnType());
+        }
+    }
+
+    private static Object defaultValue(Class<?> type) {
+        if (!type.isPrimitive() || type == void.class) {
+            return null;
+        }
+        if (type == boolean.class) {
+            return false;
+        }
+        if (type == char.class) {
+            return '\0';
+        }
+        if (type == float.class) {
+            return 0f;
+        }
+        if (type == double.class) {
+            return 0d;
+        }
+        if (type == long.class) {
+            return 0L;
+        }
+        if (type == byte.class) {
+            return (byte) 0;
+        }
+        if (type == short.class) {
+            return (short) 0;
+        }
+        return 0;
+    }
+}
@@ -0,0 +1,79 @@
+// Copyright 2021 The Terasology Foundation
+// SPDX-License-Identifier: Apache-2.0
+
+package org.terasology.minimap.rendering;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+public class RollingHistogramTest {
+
+    @Test
+    public void testEmptyHistogram() {
+        RollingHistogram histogram = new RollingHistogram(8);
+
+        assertEquals(0, histogram.getCount());
+        assertEquals(0, histogram.getPercentile(50));
+        assertEquals(0, histogram.getMax());
+        assertEquals(0.0, histogram.getMean(), 0.0);
+    }
+
+    @Test
+    public void testPercentiles() {
+        RollingHistogram histogram = new RollingHistogram(100);
+        // added in reverse order, so the percentiles cannot depend on the insertion order
+        for (int i = 100; i >= 1; i--) {
+            histogram.add(i);
+        }
+
+        assertEquals(100, histogram.getCount());
+        assertEquals(1, histogram.getPercentile(0));
+        assertEquals(1, histogram.getPercentile(1));
+        assertEquals(50, histogram.getPercentile(50));
+        assertEquals(90, histogram.getPercentile(90));
+        assertEquals(99, histogram.getPercentile(99));
+        assertEquals(100, histogram.getPercentile(99.5));
+        assertEquals(100, histogram.getMax());
+        assertEquals(50.5, histogram.getMean(), 1e-9);
+    }
+
+    @Test
+    public void testOnlyKeepsTheMostRecentSamples() {
+        RollingHistogram histogram = new RollingHistogram(4);
+        for (int i = 1; i <= 10; i++) {
+            histogram.add(i);
+        }
+
+        // the window contains 7, 8, 9 and 10
+        assertEquals(4, histogram.getCount());
+        assertEquals(7, histogram.getPercentile(0));
+        assertEquals(8, histogram.getPercentile(50));
+        assertEquals(10, histogram.getMax());
+        assertEquals(8.5, histogram.getMean(), 1e-9);
+    }
+
+    @Test
+    public void testPercentilesAreUpdatedAfterAdd() {
+        RollingHistogram histogram = new RollingHistogram(4);
+        histogram.add(5);
+        assertEquals(5, histogram.getMax());
+
+        histogram.add(20);
+        assertEquals(20, histogram.getMax());
+        assertEquals(5, histogram.getPercentile(50));
+    }
+
+    @Test
+    public void testClear() {
+        RollingHistogram histogram = new RollingHistogram(4);
+        histogram.add(3);
+        histogram.add(4);
+        histogram.clear();
+        histogram.add(10);
+
+        assertEquals(1, histogram.getCount());
+        assertEquals(10, histogram.getPercentile(0));
+        assertEquals(10.0, histogram.getMean(), 0.0);
+    }
+}
@@ -0,0 +1,109 @@
+// Copyright 2021 The Terasology Foundation
+// SPDX-License-Identifier: Apache-2.0
+
+package org.terasology.minimap.rendering;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class TileBuildSchedulerTest {
+
+    /**
+     * Large enough for any number of builds in a test
+     */
+    private static final long UNLIMITED_MICROS = 60_000_000L;
+
+    @Test
+    public void testBuildsClosestChunksFirst() {
+        TileBuildScheduler scheduler = new TileBuildScheduler(UNLIMITED_MICROS);
+        scheduler.add(13, 10);
+        scheduler.add(10, 10);
+        scheduler.add(8, 9);
+        scheduler.add(10, 11);
+
+        List<String> built = new ArrayList<>();
+        List<String> deferred = new ArrayList<>();
+        int count = scheduler.run(10, 10, (x, z) -> built.add(x + "," + z), (x, z) -> deferred.add(x + "," + z));
+
+        assertEquals(4, count);
+        assertEquals(Arrays.asList("10,10", "10,11", "8,9", "13,10"), built);
+        assertTrue(deferred.isEmpty());
+        assertEquals(0, scheduler.getQueueDepth());
+        assertEquals(4, scheduler.getBuildCount());
+    }
+
+    @Test
+    public void testEqualDistancesKeepTheirOrder() {
+        TileBuildScheduler scheduler = new TileBuildScheduler(UNLIMITED_MICROS);
+        scheduler.add(1, 0);
+        scheduler.add(0, -1);
+        scheduler.add(-1, 0);
+        scheduler.add(0, 1);
+
+        List<String> built = new ArrayList<>();
+        scheduler.run(0, 0, (x, z) -> built.add(x + "," + z), (x, z) -> { });
+
+        assertEquals(Arrays.asList("1,0", "0,-1", "-1,0", "0,1"), built);
+    }
+
+    @Test
+    public void testRunsAtLeastOneBuildWithoutBudget() {
+        TileBuildScheduler scheduler = new TileBuildScheduler(0);
+        scheduler.add(5, 5);
+        scheduler.add(1, 1);
+        scheduler.add(3, 3);
+
+        List<String> built = new ArrayList<>();
+        List<String> deferred = new ArrayList<>();
+        int count = scheduler.run(0, 0, (x, z) -> built.add(x + "," + z), (x, z) -> deferred.add(x + "," + z));
+
+        assertEquals(1, count);
+        assertEquals(Arrays.asList("1,1"), built);
+        // deferred builds are reported in order of priority
+        assertEquals(Arrays.asList("3,3", "5,5"), deferred);
+        assertEquals(2, scheduler.getQueueDepth());
+    }
+
+    @Test
+    public void testStopsWhenBudgetIsUsedUp() {
+        TileBuildScheduler scheduler = new TileBuildScheduler(1000);
+        for (int i = 0; i < 10; i++) {
+            scheduler.add(i, 0);
+        }
+
+        int count = scheduler.run(0, 0, (x, z) -> busyWait(2_000_000), (x, z) -> { });
+
+        // the first build already exceeds the budget of 1 ms
+        assertEquals(1, count);
+        assertEquals(9, scheduler.getQueueDepth());
+        assertTrue(scheduler.getMaxBuildMicros() >= 2000);
+    }
+
+    @Test
+    public void testQueueIsEmptyAfterRun() {
+        TileBuildScheduler scheduler = new TileBuildScheduler(0);
+        for (int i = 0; i < 100; i++) {
+            scheduler.add(i, i);
+        }
+        scheduler.run(0, 0, (x, z) -> { }, (x, z) -> { });
+
+        List<String> built = new ArrayList<>();
+        int count = scheduler.run(0, 0, (x, z) -> built.add(x + "," + z), (x, z) -> built.add(x + "," + z));
+
+        assertEquals(0, count);
+        assertTrue(built.isEmpty());
+    }
+
+    private static void busyWait(long nanos) {
+        long end = System.nanoTime() + nanos;
+        while (System.nanoTime() < end) {
+            Thread.onSpinWait();
+        }
+    }
+}
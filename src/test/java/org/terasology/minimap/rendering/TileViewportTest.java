@@ -0,0 +1,100 @@
+// Copyright 2021 The Terasology Foundation
+// SPDX-License-Identifier: Apache-2.0
+
+package org.terasology.minimap.rendering;
+
+import org.joml.Vector2i;
+import org.junit.jupiter.api.Test;
+import org.terasology.engine.rendering.assets.texture.Texture;
+import org.terasology.engine.rendering.assets.texture.TextureData;
+import org.terasology.joml.geom.Rectanglei;
+
+import java.nio.ByteBuffer;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class TileViewportTest {
+
+    private static final int TILE_SIZE = 4;
+    private static final int CHUNK_SIZE = 32;
+
+    private final Rectanglei region = new Rectanglei(0, 0, 320, 200);
+    private final TextureData tile = new TextureData(TILE_SIZE, TILE_SIZE,
+            new ByteBuffer[]{ByteBuffer.allocateDirect(TILE_SIZE * TILE_SIZE * 4)}, Texture.WrapMode.CLAMP, Texture.FilterMode.NEAREST);
+
+    /**
+     * The texture is only passed through to the canvas, so no graphics context is needed
+     */
+    private TileViewport createViewport() {
+        return new TileViewport(new Vector2i(TILE_SIZE, TILE_SIZE), data -> null);
+    }
+
+    @Test
+    public void testDrawCallsPerChunk() {
+        int[][] views = {{3, 3}, {8, 6}, {16, 16}, {40, 25}};
+        for (int[] view : views) {
+            int columns = view[0];
+            int rows = view[1];
+            TileViewport viewport = createViewport();
+            RecordingCanvas canvas = new RecordingCanvas(region);
+            viewport.resize(columns + 2, rows + 2);
+            compose(viewport, 0, 0, columns, rows);
+
+            int frames = 10;
+            for (int i = 0; i < frames; i++) {
+                viewport.draw(canvas.getCanvas(), region, i, i, columns * CHUNK_SIZE, rows * CHUNK_SIZE);
+            }
+
+            // all visible chunks are drawn with a single call per frame, no matter how many there are
+            double drawCallsPerChunk = (double) canvas.getDrawCalls() / (frames * columns * rows);
+            assertEquals(1.0 / (columns * rows), drawCallsPerChunk, 1e-9, columns + "x" + rows + " chunks");
+        }
+    }
+
+    @Test
+    public void testOnlyEnteringChunksAreBuiltWhenPanning() {
+        TileViewport viewport = createViewport();
+        viewport.resize(10, 10);
+        compose(viewport, 0, 0, 8, 8);
+
+        // one chunk to the east: only the new column of 8 chunks is missing
+        assertTrue(viewport.needsUpdate(1, 0, 8, 7));
+        int missing = 0;
+        for (int z = 0; z < 8; z++) {
+            for (int x = 1; x <= 8; x++) {
+                if (!viewport.contains(x, z)) {
+                    missing++;
+                }
+            }
+        }
+        assertEquals(8, missing);
+    }
+
+    @Test
+    public void testInvalidatedChunksAreRebuilt() {
+        TileViewport viewport = createViewport();
+        viewport.resize(6, 6);
+        compose(viewport, 0, 0, 4, 4);
+        assertFalse(viewport.needsUpdate(0, 0, 3, 3));
+
+        viewport.invalidate(2, 1);
+
+        assertTrue(viewport.needsUpdate(0, 0, 3, 3));
+        assertFalse(viewport.contains(2, 1));
+        assertTrue(viewport.contains(1, 1));
+    }
+
+    /**
+     * Puts the tiles of all chunks of the given area into the viewport.
+     */
+    private void compose(TileViewport viewport, int minX, int minZ, int columns, int rows) {
+        for (int z = minZ; z < minZ + rows; z++) {
+            for (int x = minX; x < minX + columns; x++) {
+                viewport.put(x, z, tile);
+            }
+        }
+        viewport.setComposed(minX, minZ, minX + columns - 1, minZ + rows - 1, true);
+    }
+}
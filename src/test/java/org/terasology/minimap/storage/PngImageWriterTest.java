@@ -0,0 +1,133 @@
+// Copyright 2021 The Terasology Foundation
+// SPDX-License-Identifier: Apache-2.0
+
+package org.terasology.minimap.storage;
+
+import org.junit.jupiter.api.Test;
+
+import javax.imageio.ImageIO;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+public class PngImageWriterTest {
+
+    @Test
+    public void testSmallImage() throws IOException {
+        int[][] pixels = {
+                {0xFF0000FF, 0x00FF00FF, 0x0000FFFF},
+                {0xFFFFFF00, 0x12345678, 0x00000000}
+        };
+
+        BufferedImage image = writeAndRead(pixels);
+
+        assertPixels(pixels, image);
+    }
+
+    @Test
+    public void testLargeImageSpansSeveralDataChunks() throws IOException {
+        // random pixels hardly compress, so the data is split into several IDAT chunks
+        Random random = new Random(7);
+        int[][] pixels = new int[200][300];
+        for (int[] row : pixels) {
+            for (int x = 0; x < row.length; x++) {
+                row[x] = random.nextInt();
+            }
+        }
+
+        BufferedImage image = writeAndRead(pixels);
+
+        assertPixels(pixels, image);
+    }
+
+    @Test
+    public void testMissingRowsAreTransparent() throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        PngImageWriter writer = new PngImageWriter(out, 2, 3);
+        writer.writeRow(toBytes(new int[]{0x112233FF, 0x445566FF}), 0);
+        writer.close();
+        // closing again does nothing
+        writer.close();
+
+        BufferedImage image = read(out.toByteArray());
+
+        assertPixels(new int[][]{{0x112233FF, 0x445566FF}, {0, 0}, {0, 0}}, image);
+    }
+
+    @Test
+    public void testRowOffset() throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        PngImageWriter writer = new PngImageWriter(out, 1, 2);
+        byte[] rows = toBytes(new int[]{0x01020304, 0x05060708, 0x090A0B0C});
+        writer.writeRow(rows, 4);
+        writer.writeRow(rows, 8);
+        writer.close();
+
+        assertPixels(new int[][]{{0x05060708}, {0x090A0B0C}}, read(out.toByteArray()));
+    }
+
+    @Test
+    public void testTooManyRows() throws IOException {
+        PngImageWriter writer = new PngImageWriter(new ByteArrayOutputStream(), 1, 1);
+        byte[] row = new byte[4];
+        writer.writeRow(row, 0);
+
+        assertThrows(IllegalStateException.class, () -> writer.writeRow(row, 0));
+        writer.abort();
+    }
+
+    @Test
+    public void testInvalidSize() {
+        assertThrows(IllegalArgumentException.class, () -> new PngImageWriter(new ByteArrayOutputStream(), 0, 1));
+        assertThrows(IllegalArgumentException.class, () -> new PngImageWriter(new ByteArrayOutputStream(), 1, -1));
+    }
+
+    private static BufferedImage writeAndRead(int[][] pixels) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        try (PngImageWriter writer = new PngImageWriter(out, pixels[0].length, pixels.length)) {
+            for (int[] row : pixels) {
+                writer.writeRow(toBytes(row), 0);
+            }
+        }
+        return read(out.toByteArray());
+    }
+
+    private static BufferedImage read(byte[] png) throws IOException {
+        BufferedImage image = ImageIO.read(new ByteArrayInputStream(png));
+        assertNotNull(image, "not a valid PNG image");
+        return image;
+    }
+
+    /**
+     * @param rgba the pixels in RGBA format
+     */
+    private static byte[] toBytes(int[] rgba) {
+        byte[] bytes = new byte[rgba.length * 4];
+        for (int i = 0; i < rgba.length; i++) {
+            bytes[i * 4] = (byte) (rgba[i] >>> 24);
+            bytes[i * 4 + 1] = (byte) (rgba[i] >>> 16);
+            bytes[i * 4 + 2] = (byte) (rgba[i] >>> 8);
+            bytes[i * 4 + 3] = (byte) rgba[i];
+        }
+        return bytes;
+    }
+
+    private static void assertPixels(int[][] expected, BufferedImage image) {
+        assertEquals(expected[0].length, image.getWidth());
+        assertEquals(expected.length, image.getHeight());
+        for (int y = 0; y < expected.length; y++) {
+            for (int x = 0; x < expected[y].length; x++) {
+                int rgba = expected[y][x];
+                // BufferedImage uses ARGB
+                int argb = (rgba >>> 8) | (rgba << 24);
+                assertEquals(Integer.toHexString(argb), Integer.toHexString(image.getRGB(x, y)), "pixel " + x + ", " + y);
+            }
+        }
+    }
+}
@@ -0,0 +1,103 @@
+// Copyright 2021 The Terasology Foundation
+// SPDX-License-Identifier: Apache-2.0
+
+package org.terasology.minimap.surface;
+
+import org.junit.jupiter.api.Test;
+import org.terasology.engine.world.chunks.Chunks;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+
+public class ChunkSurfaceCacheTest {
+
+    @Test
+    public void testCapacityIsDerivedFromMemoryLimit() {
+        assertEquals(3, new ChunkSurfaceCache(3L * ChunkSurface.BYTES + 1).getCapacity());
+        assertEquals(1, new ChunkSurfaceCache(0).getCapacity());
+    }
+
+    @Test
+    public void testEvictsLeastRecentlyUsedSurface() {
+        ChunkSurfaceCache cache = new ChunkSurfaceCache(3L * ChunkSurface.BYTES);
+        cache.put(new ChunkSurface(0, 0));
+        cache.put(new ChunkSurface(1, 0));
+        cache.put(new ChunkSurface(2, 0));
+
+        // (0, 0) becomes the most recently used surface, so (1, 0) is the eldest
+        assertNotNull(cache.get(0, 0));
+        cache.put(new ChunkSurface(3, 0));
+
+        assertEquals(3, cache.size());
+        assertNull(cache.get(1, 0));
+        assertNotNull(cache.get(0, 0));
+        assertNotNull(cache.get(2, 0));
+        assertNotNull(cache.get(3, 0));
+        assertEquals(3L * ChunkSurface.BYTES, cache.getMemoryUsage());
+    }
+
+    @Test
+    public void testReplacingSurfaceDoesNotEvict() {
+        ChunkSurfaceCache cache = new ChunkSurfaceCache(2L * ChunkSurface.BYTES);
+        cache.put(new ChunkSurface(0, 0));
+        cache.put(new ChunkSurface(1, 0));
+
+        ChunkSurface replacement = new ChunkSurface(0, 0);
+        cache.put(replacement);
+        // the replaced surface is the most recently used one now
+        cache.put(new ChunkSurface(2, 0));
+
+        assertEquals(2, cache.size());
+        assertSame(replacement, cache.get(0, 0));
+        assertNull(cache.get(1, 0));
+    }
+
+    @Test
+    public void testRemove() {
+        ChunkSurfaceCache cache = new ChunkSurfaceCache(2L * ChunkSurface.BYTES);
+        ChunkSurface surface = new ChunkSurface(-1, 5);
+        cache.put(surface);
+        cache.put(new ChunkSurface(0, 0));
+
+        assertSame(surface, cache.remove(-1, 5));
+        assertNull(cache.remove(-1, 5));
+        assertNull(cache.get(-1, 5));
+
+        // the freed space is used before anything is evicted
+        cache.put(new ChunkSurface(1, 1));
+        assertEquals(2, cache.size());
+        assertNotNull(cache.get(0, 0));
+    }
+
+    @Test
+    public void testClear() {
+        ChunkSurfaceCache cache = new ChunkSurfaceCache(2L * ChunkSurface.BYTES);
+        cache.put(new ChunkSurface(0, 0));
+        cache.put(new ChunkSurface(1, 0));
+
+        cache.clear();
+        cache.put(new ChunkSurface(2, 0));
+
+        assertEquals(1, cache.size());
+        assertNull(cache.get(0, 0));
+        assertNotNull(cache.get(2, 0));
+    }
+
+    @Test
+    public void testWorldCoordinateLookup() {
+        ChunkSurfaceCache cache = new ChunkSurfaceCache(4L * ChunkSurface.BYTES);
+        ChunkSurface surface = new ChunkSurface(-1, 2);
+        surface.set(Chunks.SIZE_X - 1, 3, 42, (short) 7, (short) 0);
+        cache.put(surface);
+
+        int worldX = -1;
+        int worldZ = 2 * Chunks.SIZE_Z + 3;
+        assertEquals(42, cache.getHeight(worldX, worldZ));
+        assertEquals(7, cache.getBlockId(worldX, worldZ));
+        assertEquals(ChunkSurface.UNKNOWN_HEIGHT, cache.getHeight(worldX - 1, worldZ));
+        assertEquals(ChunkSurface.UNKNOWN_HEIGHT, cache.getHeight(0, worldZ));
+        assertEquals(0, cache.getBlockId(0, worldZ));
+    }
+}
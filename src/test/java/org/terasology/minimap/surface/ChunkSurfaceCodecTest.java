@@ -0,0 +1,180 @@
+// Copyright 2021 The Terasology Foundation
+// SPDX-License-Identifier: Apache-2.0
+
+package org.terasology.minimap.surface;
+
+import org.junit.jupiter.api.Test;
+import org.terasology.engine.world.chunks.Chunks;
+
+import java.util.Arrays;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class ChunkSurfaceCodecTest {
+
+    @Test
+    public void testRoundTripOfFlatSurface() {
+        ChunkSurface surface = new ChunkSurface(3, -7);
+        for (int row = 0; row < Chunks.SIZE_Z; row++) {
+            for (int column = 0; column < Chunks.SIZE_X; column++) {
+                surface.set(column, row, 12, (short) 5, (short) 0);
+            }
+        }
+
+        byte[] data = ChunkSurfaceCodec.encode(surface);
+        ChunkSurface decoded = ChunkSurfaceCodec.decode(3, -7, data);
+
+        assertSameColumns(surface, decoded);
+        assertEquals(3, decoded.getChunkX());
+        assertEquals(-7, decoded.getChunkZ());
+        assertTrue(data.length < ChunkSurface.SERIALIZED_BYTES / 32, "a flat surface took " + data.length + " bytes");
+    }
+
+    @Test
+    public void testRoundTripOfUnknownSurface() {
+        ChunkSurface surface = new ChunkSurface(0, 0);
+
+        ChunkSurface decoded = ChunkSurfaceCodec.decode(0, 0, ChunkSurfaceCodec.encode(surface));
+
+        assertSameColumns(surface, decoded);
+    }
+
+    @Test
+    public void testRoundTripOfRandomSurface() {
+        ChunkSurface surface = createRandomSurface(new Random(42));
+
+        ChunkSurface decoded = ChunkSurfaceCodec.decode(1, 2, ChunkSurfaceCodec.encode(surface));
+
+        assertSameColumns(surface, decoded);
+    }
+
+    @Test
+    public void testRoundTripOfExtremeHeights() {
+        ChunkSurface surface = new ChunkSurface(0, 0);
+        for (int i = 0; i < ChunkSurface.COLUMNS; i++) {
+            // alternate between the extremes, so every residual has to be escaped
+            int height = i % 2 == 0 ? Short.MAX_VALUE : Short.MIN_VALUE + 1;
+            surface.set(i % Chunks.SIZE_X, i / Chunks.SIZE_X, height, (short) 0xFFFF, (short) 0x8000);
+        }
+
+        ChunkSurface decoded = ChunkSurfaceCodec.decode(0, 0, ChunkSurfaceCodec.encode(surface));
+
+        assertSameColumns(surface, decoded);
+    }
+
+    @Test
+    public void testDecodeRejectsUnknownVersion() {
+        byte[] data = ChunkSurfaceCodec.encode(createRandomSurface(new Random(1)));
+        data[0] = 99;
+
+        assertThrows(IllegalArgumentException.class, () -> ChunkSurfaceCodec.decode(0, 0, data));
+    }
+
+    @Test
+    public void testDecodeRejectsTruncatedData() {
+        byte[] data = ChunkSurfaceCodec.encode(createRandomSurface(new Random(2)));
+
+        for (int length = 0; length < data.length; length++) {
+            byte[] truncated = Arrays.copyOf(data, length);
+            assertThrows(IllegalArgumentException.class, () -> ChunkSurfaceCodec.decode(0, 0, truncated));
+        }
+    }
+
+    @Test
+    public void testDecodeRejectsInvalidResidualWidth() {
+        byte[] data = {ChunkSurfaceCodec.VERSION_PACKED, 0, 33, 0, 0};
+
+        assertThrows(IllegalArgumentException.class, () -> ChunkSurfaceCodec.decode(0, 0, data));
+    }
+
+    @Test
+    public void testDecodeRejectsMalformedVarInt() {
+        // all columns known, 1 bit residuals that are all escaped, followed by a variable-length integer
+        // that does not end
+        byte[] data = new byte[3 + ChunkSurface.COLUMNS / Byte.SIZE + 8];
+        data[0] = ChunkSurfaceCodec.VERSION_PACKED;
+        data[2] = 1;
+        Arrays.fill(data, 3, data.length, (byte) 0xFF);
+
+        IllegalArgumentException e = assertThrows(IllegalArgumentException.class, () -> ChunkSurfaceCodec.decode(0, 0, data));
+        assertTrue(e.getMessage().contains("variable-length"), e.getMessage());
+    }
+
+    @Test
+    public void testPatchUpdatesChangedColumns() {
+        ChunkSurface original = createRandomSurface(new Random(3));
+        ChunkSurface changed = original.copy();
+        int[] columns = {0, 17, 18, ChunkSurface.COLUMNS - 1};
+        for (int idx : columns) {
+            changed.set(idx % Chunks.SIZE_X, idx / Chunks.SIZE_X, -40 + idx, (short) (1000 + idx), (short) idx);
+        }
+
+        byte[] patch = ChunkSurfaceCodec.encodePatch(changed, columns, columns.length);
+        ChunkSurface patched = original.copy();
+        int count = ChunkSurfaceCodec.applyPatch(patched, patch);
+
+        assertEquals(columns.length, count);
+        assertSameColumns(changed, patched);
+    }
+
+    @Test
+    public void testPatchOnlyUsesValidColumns() {
+        ChunkSurface surface = createRandomSurface(new Random(4));
+        ChunkSurface changed = surface.copy();
+        changed.set(5, 0, 100, (short) 7, (short) 8);
+        changed.set(6, 0, 101, (short) 9, (short) 10);
+
+        // the second entry of the array is not part of the patch
+        byte[] patch = ChunkSurfaceCodec.encodePatch(changed, new int[]{5, 6}, 1);
+        ChunkSurface patched = surface.copy();
+        ChunkSurfaceCodec.applyPatch(patched, patch);
+
+        assertEquals(100, patched.getHeight(5, 0));
+        assertEquals(surface.getHeight(6, 0), patched.getHeight(6, 0));
+    }
+
+    @Test
+    public void testApplyPatchRejectsMalformedPatches() {
+        ChunkSurface surface = new ChunkSurface(0, 0);
+
+        // unknown version
+        assertThrows(IllegalArgumentException.class, () -> ChunkSurfaceCodec.applyPatch(surface, new byte[]{99, 0}));
+        // column index out of range: version 1, one entry, index COLUMNS (as variable-length integer), height 0, ids 0
+        int outOfRange = ChunkSurface.COLUMNS;
+        byte[] patch = {1, 1, (byte) (0x80 | (outOfRange & 0x7F)), (byte) (outOfRange >>> 7), 0, 0, 0};
+        assertThrows(IllegalArgumentException.class, () -> ChunkSurfaceCodec.applyPatch(surface, patch));
+        // truncated entry
+        assertThrows(IllegalArgumentException.class, () -> ChunkSurfaceCodec.applyPatch(surface, new byte[]{1, 1, 0}));
+    }
+
+    private static ChunkSurface createRandomSurface(Random random) {
+        ChunkSurface surface = new ChunkSurface(1, 2);
+        int height = 20;
+        for (int i = 0; i < ChunkSurface.COLUMNS; i++) {
+            if (random.nextInt(10) == 0) {
+                // leave some columns unknown
+                continue;
+            }
+            // mostly small steps with some cliffs
+            height += random.nextInt(20) == 0 ? random.nextInt(200) - 100 : random.nextInt(3) - 1;
+            short blockId = (short) (1 + random.nextInt(random.nextBoolean() ? 4 : 300));
+            short topId = random.nextInt(5) == 0 ? (short) (1 + random.nextInt(10)) : 0;
+            surface.set(i % Chunks.SIZE_X, i / Chunks.SIZE_X, height, blockId, topId);
+        }
+        return surface;
+    }
+
+    private static void assertSameColumns(ChunkSurface expected, ChunkSurface actual) {
+        for (int row = 0; row < Chunks.SIZE_Z; row++) {
+            for (int column = 0; column < Chunks.SIZE_X; column++) {
+                String position = "column " + column + ", row " + row;
+                assertEquals(expected.getHeight(column, row), actual.getHeight(column, row), position);
+                assertEquals(expected.getBlockId(column, row), actual.getBlockId(column, row), position);
+                assertEquals(expected.getTopId(column, row), actual.getTopId(column, row), position);
+            }
+        }
+    }
+}
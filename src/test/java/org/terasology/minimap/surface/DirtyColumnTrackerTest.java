@@ -0,0 +1,97 @@
+// Copyright 2021 The Terasology Foundation
+// SPDX-License-Identifier: Apache-2.0
+
+package org.terasology.minimap.surface;
+
+import org.junit.jupiter.api.Test;
+import org.terasology.engine.world.chunks.Chunks;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class DirtyColumnTrackerTest {
+
+    @Test
+    public void testRepeatedChangesAreCollapsed() {
+        DirtyColumnTracker tracker = new DirtyColumnTracker();
+        tracker.markDirty(3, 10, 4);
+        tracker.markDirty(3, 25, 4);
+        tracker.markDirty(3, 12, 4);
+
+        assertTrue(tracker.isDirty(0, 0));
+        assertEquals(1, tracker.getDirtyCount(0, 0));
+        assertEquals(Arrays.asList(column(3, 4, 25)), drain(tracker, 0, 0));
+    }
+
+    @Test
+    public void testColumnsAreAssignedToTheirChunk() {
+        DirtyColumnTracker tracker = new DirtyColumnTracker();
+        tracker.markDirty(-1, 0, -1);
+        tracker.markDirty(Chunks.SIZE_X, 0, 0);
+        tracker.markDirty(Chunks.SIZE_X + 1, 0, 0);
+
+        assertEquals(2, tracker.getDirtyChunkCount());
+        assertEquals(1, tracker.getDirtyCount(-1, -1));
+        assertEquals(2, tracker.getDirtyCount(1, 0));
+        assertFalse(tracker.isDirty(0, 0));
+        assertEquals(Arrays.asList(column(Chunks.SIZE_X - 1, Chunks.SIZE_Z - 1, 0)), drain(tracker, -1, -1));
+    }
+
+    @Test
+    public void testDrainVisitsColumnsInIndexOrderAndClears() {
+        DirtyColumnTracker tracker = new DirtyColumnTracker();
+        tracker.markDirty(5, 1, 7);
+        tracker.markDirty(Chunks.SIZE_X - 1, 2, Chunks.SIZE_Z - 1);
+        tracker.markDirty(0, 3, 0);
+        tracker.markDirty(6, 4, 2);
+
+        List<List<Integer>> columns = drain(tracker, 0, 0);
+
+        assertEquals(Arrays.asList(column(0, 0, 3), column(6, 2, 4), column(5, 7, 1),
+                column(Chunks.SIZE_X - 1, Chunks.SIZE_Z - 1, 2)), columns);
+        assertFalse(tracker.isDirty(0, 0));
+        assertEquals(0, tracker.getDirtyCount(0, 0));
+        assertEquals(0, tracker.getDirtyChunkCount());
+        assertTrue(drain(tracker, 0, 0).isEmpty());
+    }
+
+    @Test
+    public void testClearedChunksStartEmpty() {
+        DirtyColumnTracker tracker = new DirtyColumnTracker();
+        tracker.markDirty(1, 50, 1);
+        tracker.markDirty(2, 50, 1);
+        tracker.clear(0, 0);
+
+        assertFalse(tracker.isDirty(0, 0));
+
+        // the pooled chunk must not keep the columns or heights of its previous use
+        tracker.markDirty(Chunks.SIZE_X + 2, 5, 1);
+        assertEquals(1, tracker.getDirtyCount(1, 0));
+        assertEquals(Arrays.asList(column(2, 1, 5)), drain(tracker, 1, 0));
+    }
+
+    @Test
+    public void testHeightsAreClamped() {
+        DirtyColumnTracker tracker = new DirtyColumnTracker();
+        tracker.markDirty(0, 100000, 0);
+        tracker.markDirty(1, -100000, 0);
+
+        assertEquals(Arrays.asList(column(0, 0, Short.MAX_VALUE), column(1, 0, Short.MIN_VALUE + 1)),
+                drain(tracker, 0, 0));
+    }
+
+    private static List<List<Integer>> drain(DirtyColumnTracker tracker, int chunkX, int chunkZ) {
+        List<List<Integer>> columns = new ArrayList<>();
+        tracker.drain(chunkX, chunkZ, (column, row, maxY) -> columns.add(column(column, row, maxY)));
+        return columns;
+    }
+
+    private static List<Integer> column(int column, int row, int maxY) {
+        return Arrays.asList(column, row, maxY);
+    }
+}